@@ -0,0 +1,43 @@
+package org.paper.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * Pool de workers compartido que ejecuta los jobs de generación 3D fuera del hilo HTTP.
+     * El encolado y el orden (fair-share por usuario) lo maneja FairShareScheduler,
+     * por eso el pool tiene tamaño fijo y casi sin cola propia.
+     */
+    @Bean(name = "iaJobExecutor")
+    public ThreadPoolTaskExecutor iaJobExecutor(@Value("${ia.jobs.workers:4}") int workers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(workers);
+        executor.setThreadNamePrefix("ia-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Hilos para las llamadas hedged al modelo (pedido original + pedido de respaldo).
+     * Sin cola: si no hay hilos libres se llama al modelo sin hedging.
+     */
+    @Bean(name = "iaHedgeExecutor")
+    public ThreadPoolTaskExecutor iaHedgeExecutor(@Value("${ia.resilience.hedge.pool-size:8}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("ia-hedge-");
+        executor.initialize();
+        return executor;
+    }
+}
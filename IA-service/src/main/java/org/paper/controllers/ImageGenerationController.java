@@ -9,12 +9,27 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.paper.dto.BatchGenerateRequestDTO;
+import org.paper.dto.BatchStatusDTO;
 import org.paper.dto.ErrorResponse;
 import org.paper.dto.GenerateImageRequestDTO;
 import org.paper.dto.GenerateImageResponseDTO;
+import org.paper.dto.GenerationJobDTO;
+import org.paper.dto.ModelHealthDTO;
+import org.paper.exception.ImageGenerationException;
+import org.paper.exception.QuotaExceededException;
 import org.paper.services.GeminiImageService;
+import org.paper.services.GenerationBatchService;
+import org.paper.services.GenerationJobService;
+import org.paper.services.UsageAccountingService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.net.URI;
 
 /**
  * Controlador para generación de vistas 3D usando Gemini 2.5 Flash Image
@@ -27,9 +42,18 @@ import org.springframework.web.bind.annotation.*;
 public class ImageGenerationController {
 
     private final GeminiImageService geminiImageService;
+    private final GenerationJobService generationJobService;
+    private final GenerationBatchService generationBatchService;
+    private final UsageAccountingService usageAccountingService;
 
-    public ImageGenerationController(GeminiImageService geminiImageService) {
+    public ImageGenerationController(GeminiImageService geminiImageService,
+                                     GenerationJobService generationJobService,
+                                     GenerationBatchService generationBatchService,
+                                     UsageAccountingService usageAccountingService) {
         this.geminiImageService = geminiImageService;
+        this.generationJobService = generationJobService;
+        this.generationBatchService = generationBatchService;
+        this.usageAccountingService = usageAccountingService;
     }
 
     @PostMapping("/generate-3d")
@@ -77,6 +101,11 @@ public class ImageGenerationController {
                     description = "Diseño no encontrado",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))
             ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "El dueño del diseño agotó su cuota diaria de IA",
+                    content = @Content(schema = @Schema(implementation = GenerateImageResponseDTO.class))
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Error al generar la imagen con Gemini 2.5 Flash Image",
@@ -95,6 +124,13 @@ public class ImageGenerationController {
 
         log.info("📥 Solicitud de generación 3D recibida para diseño ID: {}", request.getDisenoId());
 
+        try {
+            usageAccountingService.checkQuotaForDiseno(request.getDisenoId());
+        } catch (QuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(GenerateImageResponseDTO.error(request.getDisenoId(), "Cuota diaria agotada", e.getMessage()));
+        }
+
         GenerateImageResponseDTO response = geminiImageService.generate3DView(request.getDisenoId());
 
         if (response.isSuccess()) {
@@ -106,41 +142,201 @@ public class ImageGenerationController {
         }
     }
 
+    @PostMapping("/jobs")
+    @Operation(
+            summary = "Encolar generación 3D (asíncrona)",
+            description = """
+            Encola la generación 3D de un diseño y responde al instante con un **jobId**.
+            
+            El progreso se sigue con `GET /api/ia/jobs/{jobId}/events` (Server-Sent Events),
+            que emite los eventos `QUEUED`, `STARTED`, `MODEL_RESPONDED`, `PERSISTED` o `FAILED`.
+            
+            Evita mantener abierto un POST bloqueante mientras responde Gemini,
+            y con eso los reintentos duplicados por timeout.
+            """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Job encolado"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Datos de entrada inválidos",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "El dueño del diseño agotó su cuota diaria de IA"
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Cola de generación llena"
+            )
+    })
+    public ResponseEntity<GenerationJobDTO> submitJob(
+            @Valid @RequestBody
+            @Parameter(description = "ID del diseño a convertir a 3D", required = true)
+            GenerateImageRequestDTO request,
+            @RequestHeader(value = "X-User-Id", required = false) String userId) {
+
+        log.info("📥 Solicitud de job 3D recibida para diseño ID: {}", request.getDisenoId());
+
+        try {
+            GenerationJobDTO job = generationJobService.submit(
+                    userKey(userId), request.getDisenoId(), request.getVariante());
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .location(URI.create("/api/ia/jobs/" + job.getJobId()))
+                    .body(job);
+        } catch (QuotaExceededException e) {
+            log.warn("🚫 Job rechazado por cuota: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        } catch (ImageGenerationException e) {
+            log.error("❌ No se pudo encolar el job: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    @Operation(
+            summary = "Consultar estado de un job",
+            description = "Retorna la última etapa alcanzada por un job de generación 3D"
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Estado del job"),
+            @ApiResponse(responseCode = "404", description = "Job no encontrado o expirado")
+    })
+    public ResponseEntity<GenerationJobDTO> getJob(@PathVariable String jobId) {
+        return generationJobService.findJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Progreso de un job por Server-Sent Events",
+            description = """
+            Stream SSE con el progreso del job. Al conectarse se reenvían los eventos ya emitidos,
+            y el stream se cierra después de `PERSISTED` o `FAILED`.
+            """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Stream de eventos"),
+            @ApiResponse(responseCode = "404", description = "Job no encontrado o expirado")
+    })
+    public ResponseEntity<SseEmitter> streamJobEvents(@PathVariable String jobId) {
+        log.debug("📡 Cliente SSE conectado al job {}", jobId);
+
+        return generationJobService.subscribe(jobId)
+                .map(emitter -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.noCache())
+                        .header("X-Accel-Buffering", "no")
+                        .body(emitter))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/batches")
+    @Operation(
+            summary = "Generación 3D en batch",
+            description = """
+            Encola la generación 3D de varios pares (diseño, variante) y responde con un **batchId**.
+            
+            **Variantes disponibles:** `TRES_CUARTOS` (por defecto, reemplaza el preview), `FRONTAL`, `LATERAL`, `SUPERIOR`.
+            Las variantes distintas de `TRES_CUARTOS` se guardan aparte y no pisan el preview.
+            
+            - Los pares repetidos se generan una sola vez (también si ya hay un job activo igual).
+            - Los jobs comparten el pool de workers con reparto equitativo por usuario,
+              así un batch grande no demora los pedidos de otros usuarios.
+            - El progreso agregado se consulta con `GET /api/ia/batches/{batchId}`.
+            """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Batch encolado"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Datos de entrada inválidos",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "El dueño del diseño agotó su cuota diaria de IA"
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Cola de generación llena"
+            )
+    })
+    public ResponseEntity<BatchStatusDTO> submitBatch(
+            @Valid @RequestBody BatchGenerateRequestDTO request,
+            @RequestHeader(value = "X-User-Id", required = false) String userId) {
+
+        log.info("📥 Solicitud de batch 3D recibida con {} ítems", request.getItems().size());
+
+        try {
+            BatchStatusDTO batch = generationBatchService.submit(userKey(userId), request.getItems());
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .location(URI.create("/api/ia/batches/" + batch.getBatchId()))
+                    .body(batch);
+        } catch (QuotaExceededException e) {
+            log.warn("🚫 Batch rechazado por cuota: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        } catch (ImageGenerationException e) {
+            log.error("❌ No se pudo encolar el batch: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @GetMapping("/batches/{batchId}")
+    @Operation(
+            summary = "Progreso de un batch",
+            description = "Retorna el progreso agregado y el estado de cada job del batch"
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Progreso del batch"),
+            @ApiResponse(responseCode = "404", description = "Batch no encontrado o expirado")
+    })
+    public ResponseEntity<BatchStatusDTO> getBatch(@PathVariable String batchId) {
+        return generationBatchService.findBatch(batchId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/health")
     @Operation(
             summary = "Verificar estado del servicio",
             description = """
-            Verifica si el servicio de IA está operativo y puede conectarse a Gemini 2.5 Flash Image.
+            Informa el estado del proveedor de IA según su circuit breaker, sin hacer llamadas al modelo.
             
-            **Checks realizados:**
-            - Conexión con Google Cloud
-            - Acceso a Vertex AI API
-            - Validación de credenciales
-            - Disponibilidad del modelo Gemini 2.5 Flash Image
+            **Estados:**
+            - `UP`: circuito cerrado, las llamadas pasan normalmente
+            - `DEGRADED`: circuito semiabierto, se están probando llamadas para confirmar la recuperación
+            - `DOWN`: circuito abierto por errores transitorios repetidos, las llamadas fallan rápido
             """
     )
     @ApiResponses({
             @ApiResponse(
                     responseCode = "200",
-                    description = "Servicio operativo"
+                    description = "Servicio operativo o en recuperación"
             ),
             @ApiResponse(
                     responseCode = "503",
-                    description = "Servicio no disponible"
+                    description = "Servicio no disponible (circuito abierto)"
             )
     })
-    public ResponseEntity<String> healthCheck() {
+    public ResponseEntity<ModelHealthDTO> healthCheck() {
         log.info("🏥 Health check solicitado");
 
-        boolean isHealthy = geminiImageService.checkHealth();
+        ModelHealthDTO health = geminiImageService.getHealth();
 
-        if (isHealthy) {
-            log.info("✅ Health check OK");
-            return ResponseEntity.ok("✅ Servicio de IA operativo - Conectado a Gemini 2.5 Flash Image");
+        if (!"DOWN".equals(health.getStatus())) {
+            log.info("✅ Health check {} ({})", health.getStatus(), health.getProvider());
+            return ResponseEntity.ok(health);
         } else {
-            log.error("❌ Health check FAILED");
-            return ResponseEntity.status(503)
-                    .body("❌ Servicio de IA inoperativo - Error de conexión con Gemini 2.5 Flash Image");
+            log.error("❌ Health check FAILED: circuito abierto para {}", health.getProvider());
+            return ResponseEntity.status(503).body(health);
         }
     }
 
@@ -207,4 +403,8 @@ public class ImageGenerationController {
             **IMPORTANTE:** El modelo SIEMPRE preserva el diseño exacto del usuario.
             """);
     }
-}
\ No newline at end of file
+
+    private String userKey(String userId) {
+        return userId != null && !userId.isBlank() ? userId : "anonymous";
+    }
+}
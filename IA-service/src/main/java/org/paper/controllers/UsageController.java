@@ -0,0 +1,93 @@
+package org.paper.controllers;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.paper.dto.CuotaUsoDTO;
+import org.paper.dto.UsoDiarioDTO;
+import org.paper.services.UsageAccountingService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Consumo de IA (tokens y costo) por usuario
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/ia/usage")
+@Tag(name = "IA - Consumo", description = "Tokens, costo y cuotas de IA por usuario")
+public class UsageController {
+
+    private static final int MAX_DIAS = 366;
+
+    private final UsageAccountingService usageAccountingService;
+
+    public UsageController(UsageAccountingService usageAccountingService) {
+        this.usageAccountingService = usageAccountingService;
+    }
+
+    @GetMapping("/daily")
+    @Operation(
+            summary = "Consumo diario por usuario (solo ADMIN)",
+            description = """
+            Totales diarios de llamadas, tokens, bytes y costo estimado en USD por usuario.
+            
+            Los datos salen del rollup periódico, por lo que el día en curso puede tener
+            unos minutos de atraso. Sin `usuarioId` devuelve todos los usuarios.
+            """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Consumo diario"),
+            @ApiResponse(responseCode = "400", description = "Rango de fechas inválido"),
+            @ApiResponse(responseCode = "403", description = "Requiere rol ADMIN")
+    })
+    public ResponseEntity<List<UsoDiarioDTO>> listarDiario(
+            @Parameter(hidden = true) @RequestHeader(value = "X-User-Roles", required = false) String roles,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(required = false) UUID usuarioId) {
+
+        if (!esAdmin(roles)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (hasta.isBefore(desde) || desde.plusDays(MAX_DIAS).isBefore(hasta)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(usageAccountingService.listarDiario(usuarioId, desde, hasta));
+    }
+
+    @GetMapping("/users/{usuarioId}/today")
+    @Operation(
+            summary = "Consumo del día y cuota restante",
+            description = "Consumo en vivo del día en curso. Lo puede consultar un ADMIN o el propio usuario."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Consumo del día"),
+            @ApiResponse(responseCode = "403", description = "Requiere rol ADMIN o ser el propio usuario")
+    })
+    public ResponseEntity<CuotaUsoDTO> consumoHoy(
+            @Parameter(hidden = true) @RequestHeader(value = "X-User-Id", required = false) String requesterId,
+            @Parameter(hidden = true) @RequestHeader(value = "X-User-Roles", required = false) String roles,
+            @PathVariable UUID usuarioId) {
+
+        if (!esAdmin(roles) && !usuarioId.toString().equals(requesterId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        return ResponseEntity.ok(usageAccountingService.getCuotaHoy(usuarioId));
+    }
+
+    private boolean esAdmin(String roles) {
+        return roles != null && roles.contains("ADMIN");
+    }
+}
@@ -0,0 +1,26 @@
+package org.paper.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request para generar vistas 3D de varios diseños y/o varios ángulos
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchGenerateRequestDTO {
+
+    @NotEmpty(message = "El batch debe tener al menos un ítem")
+    @Size(max = 50, message = "El batch no puede superar los 50 ítems")
+    @Valid
+    private List<BatchItemDTO> items;
+}
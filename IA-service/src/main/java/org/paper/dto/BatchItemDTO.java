@@ -0,0 +1,23 @@
+package org.paper.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Un par (diseño, variante) dentro de un batch de generación
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemDTO {
+
+    @NotNull(message = "El ID del diseño es obligatorio")
+    private Integer disenoId;
+
+    /** Si se omite se usa TRES_CUARTOS (vista estándar) */
+    private VarianteVista variante;
+}
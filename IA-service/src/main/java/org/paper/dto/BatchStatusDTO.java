@@ -0,0 +1,47 @@
+package org.paper.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Progreso agregado de un batch de generación 3D
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchStatusDTO {
+
+    private String batchId;
+    private int total;
+    private int queued;
+    private int running;
+    private int completed;
+    private int failed;
+    /** Jobs ya descartados por retención: terminaron, pero su resultado ya no se conoce (ítem sin status) */
+    private int expired;
+    /** Ítems que no se encolaron porque la cola del usuario estaba llena */
+    private int rejected;
+    private int progressPercent;
+    private boolean finished;
+    private LocalDateTime createdAt;
+    private List<Item> items;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private Integer disenoId;
+        private VarianteVista variante;
+        private String jobId;
+        private GenerationJobStatus status;
+    }
+}
@@ -0,0 +1,32 @@
+package org.paper.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Consumo del día en curso (en vivo, sin esperar al rollup) y cuota restante
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CuotaUsoDTO {
+
+    private UUID usuarioId;
+    private LocalDate dia;
+    private long imagenes;
+    private long tokens;
+    private BigDecimal costoUsd;
+    /** null = sin límite */
+    private Long limiteImagenes;
+    private Long limiteTokens;
+    private boolean excedida;
+}
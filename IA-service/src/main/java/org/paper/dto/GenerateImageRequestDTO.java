@@ -17,4 +17,7 @@ public class GenerateImageRequestDTO {
 
     @NotNull(message = "El ID del diseño es obligatorio")
     private Integer disenoId;
+
+    /** Ángulo de cámara (solo para jobs asíncronos). Si se omite se usa TRES_CUARTOS */
+    private VarianteVista variante;
 }
\ No newline at end of file
@@ -16,12 +16,14 @@ public class GenerateImageResponseDTO {
     private boolean success;
     private String message;
     private String errorDetails;
+    private String promptVersion;
 
-    public static GenerateImageResponseDTO success(Integer disenoId) {
+    public static GenerateImageResponseDTO success(Integer disenoId, String promptVersion) {
         return GenerateImageResponseDTO.builder()
                 .disenoId(disenoId)
                 .success(true)
                 .message("Imagen 3D generada exitosamente")
+                .promptVersion(promptVersion)
                 .build();
     }
 
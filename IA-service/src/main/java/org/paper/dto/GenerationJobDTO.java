@@ -0,0 +1,30 @@
+package org.paper.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado actual de un job de generación 3D
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GenerationJobDTO {
+
+    private String jobId;
+    private Integer disenoId;
+    private VarianteVista variante;
+    private GenerationJobStatus status;
+    private String message;
+    private String promptVersion;
+    private String eventsUrl;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
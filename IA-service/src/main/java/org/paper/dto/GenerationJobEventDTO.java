@@ -0,0 +1,26 @@
+package org.paper.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento de progreso de un job de generación 3D (payload de cada evento SSE)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GenerationJobEventDTO {
+
+    private String jobId;
+    private Integer disenoId;
+    private GenerationJobStatus status;
+    private String message;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,17 @@
+package org.paper.dto;
+
+/**
+ * Etapas por las que pasa un job de generación 3D.
+ * Cada cambio de etapa se emite como evento SSE con este nombre.
+ */
+public enum GenerationJobStatus {
+    QUEUED,
+    STARTED,
+    MODEL_RESPONDED,
+    PERSISTED,
+    FAILED;
+
+    public boolean isTerminal() {
+        return this == PERSISTED || this == FAILED;
+    }
+}
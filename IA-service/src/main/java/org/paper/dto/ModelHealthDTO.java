@@ -0,0 +1,23 @@
+package org.paper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Estado del servicio de IA según el circuit breaker del proveedor
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModelHealthDTO {
+
+    /** UP, DEGRADED (probando recuperación) o DOWN (circuito abierto) */
+    private String status;
+    private String provider;
+    private String circuitState;
+    private double failureRate;
+    private long hedgeThresholdMs;
+}
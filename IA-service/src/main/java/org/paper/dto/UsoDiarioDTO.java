@@ -0,0 +1,31 @@
+package org.paper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Consumo de IA de un usuario en un día (desde ia_uso_diario)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsoDiarioDTO {
+
+    private UUID usuarioId;
+    private LocalDate dia;
+    private long llamadas;
+    private long fallidas;
+    private long inputTokens;
+    private long outputTokens;
+    private long inputBytes;
+    private long outputBytes;
+    private long latenciaPromedioMs;
+    private BigDecimal costoUsd;
+}
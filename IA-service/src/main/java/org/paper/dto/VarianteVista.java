@@ -0,0 +1,31 @@
+package org.paper.dto;
+
+/**
+ * Ángulo de cámara con el que se renderiza la vista 3D de un diseño.
+ * TRES_CUARTOS es la vista estándar y la única que reemplaza el base64_preview;
+ * el resto se guarda aparte en disenos_vistas.
+ */
+public enum VarianteVista {
+    TRES_CUARTOS(null),
+    FRONTAL("Straight-on front view, camera at the height of the product center, no perspective on the sides."),
+    LATERAL("Side profile view, showing the side gusset and the depth of the product."),
+    SUPERIOR("Top-down view from slightly above, showing the opening and the top edge.");
+
+    private final String cameraInstruction;
+
+    VarianteVista(String cameraInstruction) {
+        this.cameraInstruction = cameraInstruction;
+    }
+
+    public String getCameraInstruction() {
+        return cameraInstruction;
+    }
+
+    public boolean reemplazaPreview() {
+        return this == TRES_CUARTOS;
+    }
+
+    public static VarianteVista orDefault(VarianteVista variante) {
+        return variante != null ? variante : TRES_CUARTOS;
+    }
+}
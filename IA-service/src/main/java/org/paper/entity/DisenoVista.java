@@ -0,0 +1,41 @@
+package org.paper.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.paper.dto.VarianteVista;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@ToString(exclude = {"diseno", "base64Imagen"})
+@Entity
+@Table(name = "disenos_vistas")
+public class DisenoVista {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Integer id;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "diseno_id")
+    private Diseno diseno;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "variante", nullable = false, length = 20)
+    private VarianteVista variante;
+
+    @Lob
+    @Column(name = "base64_imagen", nullable = false, columnDefinition = "text")
+    private String base64Imagen;
+
+    @Column(name = "prompt_version", length = 100)
+    private String promptVersion;
+
+    @Column(name = "fecha_creacion", nullable = false)
+    private LocalDateTime fechaCreacion = LocalDateTime.now();
+}
@@ -0,0 +1,70 @@
+package org.paper.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.paper.dto.VarianteVista;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Registro append-only de cada llamada al modelo de IA (tokens, bytes, latencia y costo).
+ * Nunca se actualiza ni se borra: los totales se consolidan en ia_uso_diario.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@ToString
+@Entity
+@Table(name = "ia_uso")
+public class UsoIa {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    // Dueño del diseño: es a quien se le imputa el costo
+    @Column(name = "usuario_id", nullable = false, columnDefinition = "uuid")
+    private UUID usuarioId;
+
+    @Column(name = "diseno_id", nullable = false)
+    private Integer disenoId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "variante", nullable = false, length = 20)
+    private VarianteVista variante;
+
+    @Column(name = "proveedor", nullable = false, length = 100)
+    private String proveedor;
+
+    @Column(name = "prompt_version", length = 100)
+    private String promptVersion;
+
+    @Column(name = "input_tokens", nullable = false)
+    private int inputTokens;
+
+    @Column(name = "output_tokens", nullable = false)
+    private int outputTokens;
+
+    @Column(name = "input_bytes", nullable = false)
+    private int inputBytes;
+
+    @Column(name = "output_bytes", nullable = false)
+    private int outputBytes;
+
+    @Column(name = "latencia_ms", nullable = false)
+    private long latenciaMs;
+
+    @Column(name = "costo_usd", nullable = false, precision = 12, scale = 6)
+    private BigDecimal costoUsd;
+
+    @Column(name = "exito", nullable = false)
+    private boolean exito;
+
+    @Column(name = "fecha", nullable = false)
+    private LocalDateTime fecha = LocalDateTime.now();
+}
@@ -0,0 +1,62 @@
+package org.paper.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Totales diarios por usuario consolidados a partir de ia_uso (solo lectura desde JPA:
+ * las filas las escribe el rollup con un upsert nativo)
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@ToString
+@Entity
+@Table(name = "ia_uso_diario")
+public class UsoIaDiario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @Column(name = "usuario_id", nullable = false, columnDefinition = "uuid")
+    private UUID usuarioId;
+
+    @Column(name = "dia", nullable = false)
+    private LocalDate dia;
+
+    @Column(name = "llamadas", nullable = false)
+    private long llamadas;
+
+    @Column(name = "fallidas", nullable = false)
+    private long fallidas;
+
+    @Column(name = "input_tokens", nullable = false)
+    private long inputTokens;
+
+    @Column(name = "output_tokens", nullable = false)
+    private long outputTokens;
+
+    @Column(name = "input_bytes", nullable = false)
+    private long inputBytes;
+
+    @Column(name = "output_bytes", nullable = false)
+    private long outputBytes;
+
+    @Column(name = "latencia_total_ms", nullable = false)
+    private long latenciaTotalMs;
+
+    @Column(name = "costo_usd", nullable = false, precision = 14, scale = 6)
+    private BigDecimal costoUsd;
+
+    @Column(name = "actualizado", nullable = false)
+    private LocalDateTime actualizado;
+}
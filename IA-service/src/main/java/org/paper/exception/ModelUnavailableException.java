@@ -0,0 +1,16 @@
+package org.paper.exception;
+
+/**
+ * Error transitorio del modelo de IA (servicio caído, timeout, cuota agotada).
+ * A diferencia de ImageGenerationException, vale la pena reintentar.
+ */
+public class ModelUnavailableException extends ImageGenerationException {
+
+    public ModelUnavailableException(String message) {
+        super(message);
+    }
+
+    public ModelUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
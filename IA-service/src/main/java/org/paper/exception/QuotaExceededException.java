@@ -0,0 +1,12 @@
+package org.paper.exception;
+
+/**
+ * El usuario alcanzó su cuota diaria de generación con IA.
+ * No es transitorio dentro del día: no se reintenta.
+ */
+public class QuotaExceededException extends ImageGenerationException {
+
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
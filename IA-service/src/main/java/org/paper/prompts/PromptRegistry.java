@@ -0,0 +1,218 @@
+package org.paper.prompts;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.dto.VarianteVista;
+import org.paper.entity.Diseno;
+import org.paper.entity.Plantilla;
+import org.paper.entity.TipoBolsa;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de plantillas de prompts, cargadas desde classpath:prompts/{versión}/.
+ *
+ * - registry.properties asocia cada id de tipos_bolsa con una plantilla
+ * - Cada plantilla (*.txt) se compila una sola vez al arrancar
+ * - Los archivos que empiezan con "_" son fragmentos para incluir con {{>nombre}}
+ *
+ * Cada render devuelve la versión exacta usada, para que las vistas guardadas
+ * y las comparaciones entre versiones de prompts sean trazables.
+ */
+@Slf4j
+@Component
+public class PromptRegistry {
+
+    private static final String BASE_PATH = "prompts/";
+    private static final String REGISTRY_FILE = "registry.properties";
+    private static final String TIPO_PREFIX = "tipo.";
+
+    // Plantillas usadas por la clasificación por nombre: deben existir en toda versión
+    static final String BOLSA_FONDO_AMERICANO = "bolsa-fondo-americano";
+    static final String BOLSA_CON_MANIJA = "bolsa-con-manija";
+    static final String BOLSA_SIN_MANIJA = "bolsa-sin-manija";
+    static final String BOLSA = "bolsa";
+    static final String ENVOLTORIO = "envoltorio";
+
+    private final String version;
+    private final Map<String, PromptTemplate> templates;
+    private final String defaultTemplate;
+    // id de TipoBolsa → plantilla; los tipos sin entrada se agregan al clasificarlos la primera vez
+    private final Map<Integer, String> templateByTipo = new ConcurrentHashMap<>();
+
+    public PromptRegistry(@Value("${ia.prompts.version:v1}") String version) {
+        this.version = version;
+        String basePath = BASE_PATH + version + "/";
+
+        Properties registry = new Properties();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(basePath + REGISTRY_FILE)) {
+            if (in == null) {
+                throw new IllegalStateException("No existe la versión de prompts '" + version + "' (" + basePath + REGISTRY_FILE + ")");
+            }
+            registry.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer " + basePath + REGISTRY_FILE, e);
+        }
+
+        Map<String, String> sources = loadSources(basePath);
+        Map<String, PromptTemplate> compiled = new HashMap<>();
+        sources.forEach((name, source) -> {
+            if (!name.startsWith("_")) {
+                compiled.put(name, PromptTemplate.compile(name, source, fragment -> {
+                    String include = sources.get(fragment);
+                    if (include == null) {
+                        throw new IllegalStateException("Plantilla '" + name + "': no existe el fragmento '" + fragment + "'");
+                    }
+                    return include;
+                }));
+            }
+        });
+        this.templates = Collections.unmodifiableMap(compiled);
+
+        this.defaultTemplate = registry.getProperty("default", "generico");
+        requireTemplate(defaultTemplate);
+        for (String key : new String[]{BOLSA_FONDO_AMERICANO, BOLSA_CON_MANIJA, BOLSA_SIN_MANIJA, BOLSA, ENVOLTORIO}) {
+            requireTemplate(key);
+        }
+
+        for (String property : registry.stringPropertyNames()) {
+            if (property.startsWith(TIPO_PREFIX)) {
+                String template = registry.getProperty(property).trim();
+                requireTemplate(template);
+                templateByTipo.put(Integer.valueOf(property.substring(TIPO_PREFIX.length())), template);
+            }
+        }
+
+        log.info("📝 Prompts {} cargados: {} plantillas, {} tipos de bolsa registrados",
+                version, templates.size(), templateByTipo.size());
+    }
+
+    public RenderedPrompt render(Diseno diseno) {
+        Plantilla plantilla = diseno.getPlantilla();
+        String key = resolveTemplate(plantilla.getTipoBolsa());
+        PromptTemplate template = templates.get(key);
+
+        Map<PromptVariable, String> values = new EnumMap<>(PromptVariable.class);
+        values.put(PromptVariable.NOMBRE, diseno.getNombre());
+        values.put(PromptVariable.MATERIAL, plantilla.getMaterial().getNombre());
+        values.put(PromptVariable.ANCHO, formatMedida(plantilla.getAncho(), 1));
+        values.put(PromptVariable.ALTO, formatMedida(plantilla.getAlto(), 1));
+        values.put(PromptVariable.PROFUNDIDAD, formatMedida(plantilla.getProfundidad(), 1));
+        values.put(PromptVariable.ANCHO_ENTERO, formatMedida(plantilla.getAncho(), 0));
+        values.put(PromptVariable.ALTO_ENTERO, formatMedida(plantilla.getAlto(), 0));
+
+        return RenderedPrompt.builder()
+                .text(template.render(values))
+                .templateKey(key)
+                .version(version + "/" + key + "@" + template.getFingerprint())
+                .build();
+    }
+
+    /**
+     * Agrega la instrucción de cámara del ángulo pedido (no aplica a la vista estándar 3/4)
+     */
+    public RenderedPrompt withCamera(RenderedPrompt prompt, VarianteVista variante) {
+        if (variante.getCameraInstruction() == null) {
+            return prompt;
+        }
+        return RenderedPrompt.builder()
+                .text(prompt.getText() + "\n*CAMERA OVERRIDE (takes precedence over any camera angle above):* "
+                        + variante.getCameraInstruction() + "\n")
+                .templateKey(prompt.getTemplateKey())
+                .version(prompt.getVersion())
+                .build();
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Asociaciones actuales id de TipoBolsa → plantilla (incluye las clasificadas por nombre)
+     */
+    public Map<Integer, String> getMappings() {
+        return Collections.unmodifiableMap(new TreeMap<>(templateByTipo));
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private String resolveTemplate(TipoBolsa tipoBolsa) {
+        return templateByTipo.computeIfAbsent(tipoBolsa.getId(), id -> {
+            String template = classifyByName(tipoBolsa.getNombre());
+            log.warn("⚠️ Tipo de bolsa {} ('{}') sin entrada en prompts/{}/registry.properties: se usa '{}'",
+                    id, tipoBolsa.getNombre(), version, template);
+            return template;
+        });
+    }
+
+    /**
+     * Clasificación por nombre para tipos creados después del registro.
+     * Se ejecuta una sola vez por tipo; el resultado queda en templateByTipo.
+     */
+    private String classifyByName(String nombre) {
+        String n = nombre.toLowerCase(Locale.ROOT);
+        if (n.contains("bolsa")) {
+            if (n.contains("americana") || n.contains("fondo americano")) {
+                return BOLSA_FONDO_AMERICANO;
+            }
+            if (n.contains("sin manija") || n.contains("sin asa")) {
+                return BOLSA_SIN_MANIJA;
+            }
+            if (n.contains("asa") || n.contains("manija")) {
+                return BOLSA_CON_MANIJA;
+            }
+            return BOLSA;
+        }
+        if (n.contains("envoltorio") || n.contains("mantel")) {
+            return ENVOLTORIO;
+        }
+        return defaultTemplate;
+    }
+
+    private void requireTemplate(String key) {
+        if (!templates.containsKey(key)) {
+            throw new IllegalStateException("Prompts " + version + ": no existe la plantilla '" + key + "'");
+        }
+    }
+
+    private static Map<String, String> loadSources(String basePath) {
+        Map<String, String> sources = new HashMap<>();
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver()
+                    .getResources("classpath:" + basePath + "*.txt");
+            for (Resource resource : resources) {
+                String filename = resource.getFilename();
+                try (InputStream in = resource.getInputStream()) {
+                    sources.put(filename.substring(0, filename.length() - ".txt".length()),
+                            new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudieron leer las plantillas de " + basePath, e);
+        }
+        return sources;
+    }
+
+    private static String formatMedida(Float valor, int decimales) {
+        if (valor == null) {
+            return "N/A";
+        }
+        // Locale fijo: el texto del prompt no debe depender del locale del contenedor
+        return String.format(Locale.ROOT, "%." + decimales + "f", valor);
+    }
+}
@@ -0,0 +1,126 @@
+package org.paper.prompts;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Plantilla de prompt compilada una sola vez al arrancar.
+ * Los includes ({{>fragmento}}) se resuelven al compilar y las variables ({{nombre}})
+ * quedan como posiciones fijas, así renderizar es solo concatenar.
+ */
+public final class PromptTemplate {
+
+    private static final int MAX_INCLUDE_DEPTH = 5;
+
+    private final String name;
+    // literals.length == variables.length + 1: literal, variable, literal, ..., literal
+    private final String[] literals;
+    private final PromptVariable[] variables;
+    private final int literalLength;
+    private final String fingerprint;
+
+    private PromptTemplate(String name, String[] literals, PromptVariable[] variables, String fingerprint) {
+        this.name = name;
+        this.fingerprint = fingerprint;
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @param includes devuelve el texto fuente de un fragmento por nombre
+     */
+    public static PromptTemplate compile(String name, String source, Function<String, String> includes) {
+        String expanded = expandIncludes(name, source, includes, 0);
+
+        List<String> literals = new ArrayList<>();
+        List<PromptVariable> variables = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = expanded.indexOf("{{", pos);
+            if (open < 0) {
+                break;
+            }
+            int close = expanded.indexOf("}}", open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Plantilla '" + name + "': '{{' sin cerrar en la posición " + open);
+            }
+            literals.add(expanded.substring(pos, open));
+            variables.add(PromptVariable.fromKey(expanded.substring(open + 2, close).trim()));
+            pos = close + 2;
+        }
+        literals.add(expanded.substring(pos));
+
+        return new PromptTemplate(name, literals.toArray(String[]::new), variables.toArray(PromptVariable[]::new),
+                fingerprint(expanded));
+    }
+
+    public String render(Map<PromptVariable, String> values) {
+        StringBuilder sb = new StringBuilder(literalLength + variables.length * 32);
+        sb.append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            String value = values.get(variables[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("Plantilla '" + name + "': falta el valor de {{" + variables[i].getKey() + "}}");
+            }
+            sb.append(value).append(literals[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Hash corto del texto compilado: cambia si se edita la plantilla o cualquiera de sus includes
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private static String expandIncludes(String name, String source, Function<String, String> includes, int depth) {
+        if (depth > MAX_INCLUDE_DEPTH) {
+            throw new IllegalArgumentException("Plantilla '" + name + "': demasiados includes anidados");
+        }
+
+        StringBuilder sb = new StringBuilder(source.length());
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("{{>", pos);
+            if (open < 0) {
+                break;
+            }
+            int close = source.indexOf("}}", open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Plantilla '" + name + "': include sin cerrar en la posición " + open);
+            }
+            String fragment = source.substring(open + 3, close).trim();
+            sb.append(source, pos, open)
+                    .append(expandIncludes(name, includes.apply(fragment), includes, depth + 1));
+            pos = close + 2;
+        }
+        return sb.append(source, pos, source.length()).toString();
+    }
+
+    private static String fingerprint(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.paper.prompts;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Variables que pueden usarse en las plantillas de prompts como {{nombre}}
+ */
+public enum PromptVariable {
+    NOMBRE("nombre"),
+    MATERIAL("material"),
+    ANCHO("ancho"),
+    ALTO("alto"),
+    PROFUNDIDAD("profundidad"),
+    ANCHO_ENTERO("anchoEntero"),
+    ALTO_ENTERO("altoEntero");
+
+    private static final Map<String, PromptVariable> BY_KEY = Arrays.stream(values())
+            .collect(Collectors.toMap(PromptVariable::getKey, Function.identity()));
+
+    private final String key;
+
+    PromptVariable(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public static PromptVariable fromKey(String key) {
+        PromptVariable variable = BY_KEY.get(key);
+        if (variable == null) {
+            throw new IllegalArgumentException("Variable de prompt desconocida: {{" + key + "}}");
+        }
+        return variable;
+    }
+}
@@ -0,0 +1,17 @@
+package org.paper.prompts;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Prompt listo para enviar, con la versión exacta de la plantilla que lo produjo
+ */
+@Getter
+@Builder
+public class RenderedPrompt {
+
+    private final String text;
+    private final String templateKey;
+    // "<versión>/<plantilla>@<hash del texto compilado>": estable mientras no cambie la plantilla
+    private final String version;
+}
@@ -0,0 +1,53 @@
+package org.paper.providers;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Proveedor del modelo de generación de imágenes.
+ * Permite cambiar Vertex AI por otra implementación (por ejemplo el stub local
+ * para pruebas de carga) sin tocar GeminiImageService.
+ */
+public interface ImageModelProvider {
+
+    /**
+     * Genera una imagen a partir de una imagen de referencia y un prompt
+     *
+     * @throws org.paper.exception.ModelUnavailableException ante errores transitorios (se reintentan)
+     * @throws org.paper.exception.ImageGenerationException si el modelo rechaza el pedido o no devuelve imagen
+     */
+    ImageModelResponse generate(ImageModelRequest request);
+
+    /**
+     * Versión cancelable de generate, usada por el hedging: cancel sobre el futuro devuelto
+     * tiene que abortar la llamada en curso (la rama perdedora no debe seguir corriendo ni facturando).
+     *
+     * Por defecto corre generate en el executor y cancel interrumpe ese hilo; los proveedores con
+     * un cliente asíncrono pueden sobrescribirlo para cancelar el pedido de red directamente.
+     *
+     * @throws org.springframework.core.task.TaskRejectedException si el executor no tiene hilos libres
+     */
+    default CompletableFuture<ImageModelResponse> generateAsync(ImageModelRequest request, AsyncTaskExecutor executor) {
+        CompletableFuture<ImageModelResponse> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(generate(request));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Nombre legible del proveedor y modelo (para logs y health check)
+     */
+    String getName();
+}
@@ -0,0 +1,16 @@
+package org.paper.providers;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Entrada para el modelo: imagen de referencia + prompt
+ */
+@Getter
+@Builder
+public class ImageModelRequest {
+
+    private final byte[] imageBytes;
+    private final String mimeType;
+    private final String prompt;
+}
@@ -0,0 +1,19 @@
+package org.paper.providers;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Imagen generada por el modelo
+ */
+@Getter
+@Builder
+public class ImageModelResponse {
+
+    private final byte[] imageBytes;
+    private final String mimeType;
+
+    // Tokens facturados informados por el proveedor (null si no los informa)
+    private final Integer inputTokens;
+    private final Integer outputTokens;
+}
@@ -0,0 +1,38 @@
+package org.paper.providers;
+
+import java.util.Arrays;
+
+/**
+ * Guarda las últimas latencias exitosas del modelo para estimar el p95
+ * que dispara el pedido hedged
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private int index;
+    private int count;
+
+    public LatencyTracker(int size) {
+        this.samples = new long[size];
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[index] = latencyMs;
+        index = (index + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Percentil 95 de las muestras, o el valor por defecto si todavía hay pocas
+     */
+    public synchronized long p95(int minSamples, long defaultMs) {
+        if (count < minSamples) {
+            return defaultMs;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(count * 0.95) - 1];
+    }
+}
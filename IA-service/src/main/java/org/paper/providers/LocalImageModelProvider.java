@@ -0,0 +1,145 @@
+package org.paper.providers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.exception.ImageGenerationException;
+import org.paper.exception.ModelUnavailableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.SplittableRandom;
+
+/**
+ * Proveedor simulado para pruebas de carga y benchmarks sin credenciales de Google Cloud.
+ * Con la misma semilla y el mismo orden de llamadas produce siempre las mismas
+ * latencias y fallos, así dos corridas del benchmark son comparables.
+ *
+ * Se activa con ia.provider=local.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ia.provider", havingValue = "local")
+public class LocalImageModelProvider implements ImageModelProvider {
+
+    // Percentil 99 de la normal estándar, para derivar sigma de la lognormal
+    private static final double Z_P99 = 2.326;
+    // Tokens que Gemini factura por una imagen de entrada (hasta 768x768) y por una imagen generada
+    private static final int IMAGE_INPUT_TOKENS = 258;
+    private static final int IMAGE_OUTPUT_TOKENS = 1290;
+
+    public enum LatencyDistribution { FIXED, UNIFORM, LOGNORMAL }
+
+    private final LatencyDistribution distribution;
+    private final long medianMs;
+    private final long p99Ms;
+    private final long minMs;
+    private final long maxMs;
+    private final double failureRate;
+    private final byte[] outputImage;
+    private final SplittableRandom random;
+
+    public LocalImageModelProvider(
+            @Value("${ia.provider.local.latency-distribution:LOGNORMAL}") LatencyDistribution distribution,
+            @Value("${ia.provider.local.latency-median-ms:8000}") long medianMs,
+            @Value("${ia.provider.local.latency-p99-ms:20000}") long p99Ms,
+            @Value("${ia.provider.local.latency-min-ms:2000}") long minMs,
+            @Value("${ia.provider.local.latency-max-ms:30000}") long maxMs,
+            @Value("${ia.provider.local.failure-rate:0.0}") double failureRate,
+            @Value("${ia.provider.local.output-size-bytes:1500000}") int outputSizeBytes,
+            @Value("${ia.provider.local.seed:42}") long seed) {
+        this.distribution = distribution;
+        this.medianMs = medianMs;
+        this.p99Ms = p99Ms;
+        this.minMs = minMs;
+        this.maxMs = maxMs;
+        this.failureRate = failureRate;
+        this.random = new SplittableRandom(seed);
+        // La imagen se genera una sola vez: codificar un PNG por llamada distorsionaría el benchmark
+        this.outputImage = buildNoisePng(outputSizeBytes, seed);
+
+        log.warn("🧪 Proveedor de IA: STUB LOCAL (latencia {} mediana={}ms p99={}ms, fallos={}%, salida={} bytes)",
+                distribution, medianMs, p99Ms, failureRate * 100, outputImage.length);
+    }
+
+    @Override
+    public ImageModelResponse generate(ImageModelRequest request) {
+        SplittableRandom callRandom;
+        synchronized (random) {
+            callRandom = random.split();
+        }
+
+        long latencyMs = sampleLatency(callRandom);
+        boolean falla = callRandom.nextDouble() < failureRate;
+
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImageGenerationException("Generación simulada interrumpida", e);
+        }
+
+        if (falla) {
+            throw new ModelUnavailableException("Fallo transitorio simulado del proveedor local tras " + latencyMs + "ms");
+        }
+
+        return ImageModelResponse.builder()
+                .imageBytes(outputImage)
+                .mimeType("image/png")
+                .inputTokens(IMAGE_INPUT_TOKENS + request.getPrompt().length() / 4)
+                .outputTokens(IMAGE_OUTPUT_TOKENS)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "local-stub";
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private long sampleLatency(SplittableRandom rnd) {
+        long latency = switch (distribution) {
+            case FIXED -> medianMs;
+            case UNIFORM -> minMs + (long) (rnd.nextDouble() * (maxMs - minMs));
+            case LOGNORMAL -> {
+                double mu = Math.log(medianMs);
+                double sigma = (Math.log(p99Ms) - mu) / Z_P99;
+                yield Math.round(Math.exp(mu + sigma * nextGaussian(rnd)));
+            }
+        };
+        return Math.max(minMs, Math.min(maxMs, latency));
+    }
+
+    private static double nextGaussian(SplittableRandom rnd) {
+        // Box-Muller
+        double u1 = 1.0 - rnd.nextDouble();
+        double u2 = rnd.nextDouble();
+        return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    }
+
+    /**
+     * PNG de ruido (no comprimible) con aproximadamente el tamaño pedido
+     */
+    private static byte[] buildNoisePng(int sizeBytes, long seed) {
+        int side = Math.max(1, (int) Math.sqrt(sizeBytes / 3.0));
+        BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                image.setRGB(x, y, rnd.nextInt(0x1000000));
+            }
+        }
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream(sizeBytes + 1024)) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo generar la imagen simulada", e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.paper.providers;
+
+/**
+ * Se invoca una vez por cada llamada real al proveedor (el intento original, cada reintento y
+ * cada pedido hedged), que es lo que el proveedor factura. Los pedidos rechazados por el
+ * circuit breaker no llegan al proveedor y no se informan.
+ *
+ * Puede invocarse desde varios hilos a la vez (las dos ramas de un hedge).
+ */
+@FunctionalInterface
+public interface ModelAttemptListener {
+
+    ModelAttemptListener NONE = (response, latencyMs) -> { };
+
+    /**
+     * @param response respuesta del intento, o null si falló o se canceló
+     */
+    void onAttempt(ImageModelResponse response, long latencyMs);
+}
@@ -0,0 +1,265 @@
+package org.paper.providers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.paper.exception.ImageGenerationException;
+import org.paper.exception.ModelUnavailableException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Capa de resiliencia alrededor del ImageModelProvider:
+ * - Reintentos solo para errores transitorios, con backoff "decorrelated jitter"
+ * - Hedging opcional: si la llamada supera el p95 de latencia se lanza un segundo pedido
+ * - Circuit breaker: con el modelo caído se falla rápido en lugar de acumular llamadas lentas
+ */
+@Slf4j
+@Component
+public class ResilientImageModelClient {
+
+    private final ImageModelProvider provider;
+    private final ThreadPoolTaskExecutor hedgeExecutor;
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyTracker latencyTracker = new LatencyTracker(256);
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    private final boolean hedgeEnabled;
+    private final int hedgeMinSamples;
+    private final long hedgeDefaultDelayMs;
+
+    private final Counter retries;
+    private final Counter hedges;
+    private final Counter rejectedByCircuit;
+
+    public ResilientImageModelClient(
+            ImageModelProvider provider,
+            @Qualifier("iaHedgeExecutor") ThreadPoolTaskExecutor hedgeExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${ia.resilience.retry.max-attempts:3}") int maxAttempts,
+            @Value("${ia.resilience.retry.base-delay-ms:500}") long baseDelayMs,
+            @Value("${ia.resilience.retry.max-delay-ms:8000}") long maxDelayMs,
+            @Value("${ia.resilience.hedge.enabled:false}") boolean hedgeEnabled,
+            @Value("${ia.resilience.hedge.min-samples:20}") int hedgeMinSamples,
+            @Value("${ia.resilience.hedge.default-delay-ms:20000}") long hedgeDefaultDelayMs,
+            @Value("${ia.resilience.circuit.window-size:20}") int windowSize,
+            @Value("${ia.resilience.circuit.min-calls:10}") int minCalls,
+            @Value("${ia.resilience.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${ia.resilience.circuit.open-duration-ms:30000}") long openDurationMs,
+            @Value("${ia.resilience.circuit.half-open-probes:1}") int halfOpenProbes) {
+        this.provider = provider;
+        this.hedgeExecutor = hedgeExecutor;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinSamples = hedgeMinSamples;
+        this.hedgeDefaultDelayMs = hedgeDefaultDelayMs;
+        this.circuitBreaker = new CircuitBreaker(windowSize, minCalls, failureRateThreshold,
+                openDurationMs, halfOpenProbes);
+
+        this.retries = meterRegistry.counter("ia.model.retries");
+        this.hedges = meterRegistry.counter("ia.model.hedges");
+        this.rejectedByCircuit = meterRegistry.counter("ia.model.circuit.rejected");
+        Gauge.builder("ia.model.circuit.state", circuitBreaker, cb -> cb.getState().ordinal())
+                .description("0 = CLOSED, 1 = OPEN, 2 = HALF_OPEN")
+                .register(meterRegistry);
+    }
+
+    public ImageModelResponse generate(ImageModelRequest request) {
+        return generate(request, ModelAttemptListener.NONE);
+    }
+
+    /**
+     * Igual que generate, informando cada llamada al proveedor (para la contabilidad de uso)
+     */
+    public ImageModelResponse generate(ImageModelRequest request, ModelAttemptListener listener) {
+        long delayMs = baseDelayMs;
+
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                rejectedByCircuit.increment();
+                throw new ModelUnavailableException("El servicio de IA no está disponible (circuito abierto), intente más tarde");
+            }
+
+            long start = System.currentTimeMillis();
+            try {
+                ImageModelResponse response = hedgeEnabled ? callWithHedge(request, listener) : attempt(request, listener);
+                circuitBreaker.onSuccess();
+                latencyTracker.record(System.currentTimeMillis() - start);
+                return response;
+
+            } catch (ModelUnavailableException e) {
+                circuitBreaker.onFailure();
+                if (attempt >= maxAttempts) {
+                    log.error("❌ Se agotaron los {} intentos contra {}: {}", maxAttempts, provider.getName(), e.getMessage());
+                    throw e;
+                }
+
+                // Decorrelated jitter: sleep = min(cap, random(base, sleep * 3))
+                delayMs = Math.min(maxDelayMs, ThreadLocalRandom.current().nextLong(baseDelayMs, delayMs * 3 + 1));
+                retries.increment();
+                log.warn("🔁 Error transitorio en {} (intento {}/{}): {}. Reintentando en {}ms",
+                        provider.getName(), attempt, maxAttempts, e.getMessage(), delayMs);
+                sleep(delayMs);
+
+            } catch (ImageGenerationException e) {
+                // Error definitivo (bloqueo por seguridad, respuesta sin imagen): no se reintenta
+                circuitBreaker.onIgnored();
+                throw e;
+            } catch (RuntimeException e) {
+                circuitBreaker.onIgnored();
+                throw new ImageGenerationException("Error inesperado en el proveedor de IA: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public double getFailureRate() {
+        return circuitBreaker.getFailureRate();
+    }
+
+    public long getHedgeThresholdMs() {
+        return latencyTracker.p95(hedgeMinSamples, hedgeDefaultDelayMs);
+    }
+
+    public String getProviderName() {
+        return provider.getName();
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    /**
+     * Lanza el pedido y, si no respondió dentro del p95 observado, lanza un segundo
+     * pedido idéntico. Gana la primera respuesta exitosa; falla solo si fallan los dos.
+     * La rama perdedora se cancela de verdad (ver ImageModelProvider.generateAsync).
+     */
+    private ImageModelResponse callWithHedge(ImageModelRequest request, ModelAttemptListener listener) {
+        CompletableFuture<ImageModelResponse> primary;
+        try {
+            primary = attemptAsync(request, listener);
+        } catch (TaskRejectedException e) {
+            return attempt(request, listener);
+        }
+
+        long thresholdMs = getHedgeThresholdMs();
+        try {
+            return primary.get(thresholdMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // sigue abajo con el pedido de respaldo
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primary.cancel(true);
+            throw new ImageGenerationException("Llamada al modelo interrumpida", e);
+        }
+
+        CompletableFuture<ImageModelResponse> hedge;
+        try {
+            hedge = attemptAsync(request, listener);
+        } catch (TaskRejectedException e) {
+            return await(primary);
+        }
+        hedges.increment();
+        log.info("🏁 {} superó el p95 ({}ms): lanzando pedido hedged", provider.getName(), thresholdMs);
+
+        CompletableFuture<ImageModelResponse> firstSuccess = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        primary.whenComplete((response, error) -> onHedgeResult(firstSuccess, pending, response, error));
+        hedge.whenComplete((response, error) -> onHedgeResult(firstSuccess, pending, response, error));
+
+        try {
+            return await(firstSuccess);
+        } finally {
+            // Sin efecto sobre la rama que ya terminó; la otra se aborta
+            primary.cancel(true);
+            hedge.cancel(true);
+        }
+    }
+
+    /**
+     * Llamada cancelable al proveedor, informada al listener al terminar (también si se cancela)
+     */
+    private CompletableFuture<ImageModelResponse> attemptAsync(ImageModelRequest request, ModelAttemptListener listener) {
+        long start = System.currentTimeMillis();
+        CompletableFuture<ImageModelResponse> call = provider.generateAsync(request, hedgeExecutor);
+        call.whenComplete((response, error) -> listener.onAttempt(response, System.currentTimeMillis() - start));
+        return call;
+    }
+
+    /**
+     * Una llamada al proveedor, informada al listener haya salido bien o no
+     */
+    private ImageModelResponse attempt(ImageModelRequest request, ModelAttemptListener listener) {
+        long start = System.currentTimeMillis();
+        ImageModelResponse response = null;
+        try {
+            response = provider.generate(request);
+            return response;
+        } finally {
+            listener.onAttempt(response, System.currentTimeMillis() - start);
+        }
+    }
+
+    private static void onHedgeResult(CompletableFuture<ImageModelResponse> firstSuccess, AtomicInteger pending,
+                                      ImageModelResponse response, Throwable error) {
+        if (error == null) {
+            firstSuccess.complete(response);
+        } else if (pending.decrementAndGet() == 0) {
+            firstSuccess.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Espera el resultado; si el hilo se interrumpe (shutdown) cancela la llamada en curso
+     */
+    private static ImageModelResponse await(CompletableFuture<ImageModelResponse> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ImageGenerationException("Llamada al modelo interrumpida", e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        return new ImageGenerationException("Error en el proveedor de IA: " + cause.getMessage(), cause);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImageGenerationException("Reintento interrumpido", e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.paper.providers;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.vertexai.VertexAI;
+import com.google.cloud.vertexai.api.*;
+import com.google.cloud.vertexai.generativeai.GenerativeModel;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.paper.exception.ImageGenerationException;
+import org.paper.exception.ModelUnavailableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Proveedor real: Gemini 2.5 Flash Image sobre Vertex AI
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ia.provider", havingValue = "vertex", matchIfMissing = true)
+public class VertexImageModelProvider implements ImageModelProvider {
+
+    // Códigos gRPC que indican un problema transitorio del lado de Google
+    private static final Set<StatusCode.Code> RETRYABLE_CODES = EnumSet.of(
+            StatusCode.Code.UNAVAILABLE,
+            StatusCode.Code.DEADLINE_EXCEEDED,
+            StatusCode.Code.RESOURCE_EXHAUSTED,
+            StatusCode.Code.INTERNAL,
+            StatusCode.Code.ABORTED
+    );
+
+    private final String modelName;
+    private final VertexAI vertexAI;
+    private final GenerativeModel model;
+
+    public VertexImageModelProvider(
+            @Value("${google.cloud.project-id}") String projectId,
+            @Value("${google.cloud.location}") String location,
+            @Value("${gemini.model-name:gemini-2.5-flash-image}") String modelName,
+            @Value("${gemini.max-output-tokens:8192}") int maxOutputTokens) {
+        this.modelName = modelName;
+        this.vertexAI = new VertexAI(projectId, location);
+
+        List<SafetySetting> safetySettings = Arrays.asList(
+                SafetySetting.newBuilder().setCategory(HarmCategory.HARM_CATEGORY_HARASSMENT).setThreshold(SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH).build(),
+                SafetySetting.newBuilder().setCategory(HarmCategory.HARM_CATEGORY_HATE_SPEECH).setThreshold(SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH).build(),
+                SafetySetting.newBuilder().setCategory(HarmCategory.HARM_CATEGORY_SEXUALLY_EXPLICIT).setThreshold(SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH).build(),
+                SafetySetting.newBuilder().setCategory(HarmCategory.HARM_CATEGORY_DANGEROUS_CONTENT).setThreshold(SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH).build()
+        );
+
+        // El modelo es inmutable: se arma una sola vez y se reutiliza en cada llamada
+        this.model = new GenerativeModel(modelName, vertexAI)
+                .withGenerationConfig(GenerationConfig.newBuilder()
+                        .setTemperature(0.3f)
+                        .setMaxOutputTokens(maxOutputTokens)
+                        .build())
+                .withSafetySettings(safetySettings);
+
+        log.info("🤖 Proveedor de IA: Vertex AI ({}, {})", modelName, location);
+    }
+
+    @Override
+    public ImageModelResponse generate(ImageModelRequest request) {
+        try {
+            return toResponse(model.generateContent(buildContent(request)));
+        } catch (Exception e) {
+            throw translate(e);
+        }
+    }
+
+    /**
+     * Usa la llamada asíncrona de gRPC: cancelar el futuro cancela el RPC en curso
+     * (no queda un hilo bloqueado esperando una respuesta que ya no se usa)
+     */
+    @Override
+    public CompletableFuture<ImageModelResponse> generateAsync(ImageModelRequest request, AsyncTaskExecutor executor) {
+        ApiFuture<GenerateContentResponse> call;
+        try {
+            call = model.generateContentAsync(buildContent(request));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(translate(e));
+        }
+
+        CompletableFuture<ImageModelResponse> result = new CompletableFuture<>();
+        ApiFutures.addCallback(call, new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(GenerateContentResponse response) {
+                try {
+                    result.complete(toResponse(response));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                result.completeExceptionally(translate(error));
+            }
+        }, MoreExecutors.directExecutor());
+
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "vertex:" + modelName;
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private static Content buildContent(ImageModelRequest request) {
+        return Content.newBuilder()
+                .setRole("user")
+                .addParts(Part.newBuilder()
+                        .setInlineData(com.google.cloud.vertexai.api.Blob.newBuilder()
+                                .setMimeType(request.getMimeType())
+                                .setData(ByteString.copyFrom(request.getImageBytes()))
+                                .build()))
+                .addParts(Part.newBuilder().setText(request.getPrompt()).build())
+                .build();
+    }
+
+    private static ImageModelResponse toResponse(GenerateContentResponse response) {
+        if (response.getCandidatesCount() > 0) {
+            var candidate = response.getCandidates(0);
+
+            if (candidate.getFinishReason() == Candidate.FinishReason.SAFETY) {
+                log.error("⛔ IMAGEN BLOQUEADA POR FILTROS DE SEGURIDAD. Ratings: {}", candidate.getSafetyRatingsList());
+                throw new ImageGenerationException("La IA bloqueó la generación por motivos de seguridad.");
+            }
+
+            if (candidate.getContent().getPartsCount() > 0) {
+                for (Part part : candidate.getContent().getPartsList()) {
+                    if (part.hasInlineData()) {
+                        GenerateContentResponse.UsageMetadata usage = response.getUsageMetadata();
+                        return ImageModelResponse.builder()
+                                .imageBytes(part.getInlineData().getData().toByteArray())
+                                .mimeType(part.getInlineData().getMimeType())
+                                .inputTokens(response.hasUsageMetadata() ? usage.getPromptTokenCount() : null)
+                                .outputTokens(response.hasUsageMetadata() ? usage.getCandidatesTokenCount() : null)
+                                .build();
+                    }
+                }
+            }
+
+            String textResponse = candidate.getContent().getPartsCount() > 0 ?
+                    candidate.getContent().getParts(0).getText() : "Sin respuesta de texto";
+            log.warn("⚠️ Gemini devolvió texto en lugar de imagen: {}", textResponse);
+            throw new ImageGenerationException("Gemini se negó a generar la imagen: " + textResponse);
+        }
+
+        throw new ImageGenerationException("Error desconocido en la respuesta de Gemini");
+    }
+
+    /**
+     * Traduce los errores del SDK: transitorios a ModelUnavailableException (se reintentan), el resto a ImageGenerationException
+     */
+    private static RuntimeException translate(Throwable e) {
+        if (e instanceof ImageGenerationException || e instanceof ModelUnavailableException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof ApiException apiException) {
+            StatusCode.Code code = apiException.getStatusCode().getCode();
+            if (RETRYABLE_CODES.contains(code)) {
+                log.warn("⚠️ Error transitorio en Vertex AI ({}): {}", code, e.getMessage());
+                return new ModelUnavailableException("Servicio de IA no disponible (" + code + "): " + e.getMessage(), e);
+            }
+            log.error("Error de Vertex AI ({})", code, e);
+            return new ImageGenerationException("Error del servicio de IA (" + code + "): " + e.getMessage(), e);
+        }
+        if (e instanceof IOException) {
+            log.warn("⚠️ Error de red con Vertex AI: {}", e.getMessage());
+            return new ModelUnavailableException("Error al conectar con el servicio de IA: " + e.getMessage(), e);
+        }
+        if (e instanceof CancellationException) {
+            return new ImageGenerationException("Llamada al modelo cancelada", e);
+        }
+        log.error("Excepción técnica en Vertex AI", e);
+        return new ImageGenerationException("Error al conectar con el servicio de IA: " + e.getMessage(), e);
+    }
+
+    @PreDestroy
+    public void close() {
+        vertexAI.close();
+    }
+}
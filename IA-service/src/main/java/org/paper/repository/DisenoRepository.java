@@ -3,13 +3,20 @@ package org.paper.repository;
 import org.paper.entity.Diseno;
 import org.paper.entity.DisenoStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface DisenoRepository extends JpaRepository<Diseno, Integer> {
 
-
+    /**
+     * Solo el dueño del diseño, sin cargar las imágenes base64
+     */
+    @Query("SELECT d.usuario.id FROM Diseno d WHERE d.id = :disenoId")
+    Optional<UUID> findUsuarioIdById(@Param("disenoId") Integer disenoId);
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package org.paper.repository;
+
+import org.paper.dto.VarianteVista;
+import org.paper.entity.DisenoVista;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface DisenoVistaRepository extends JpaRepository<DisenoVista, Integer> {
+
+    Optional<DisenoVista> findByDisenoIdAndVariante(Integer disenoId, VarianteVista variante);
+}
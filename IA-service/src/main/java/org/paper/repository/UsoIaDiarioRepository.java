@@ -0,0 +1,17 @@
+package org.paper.repository;
+
+import org.paper.entity.UsoIaDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface UsoIaDiarioRepository extends JpaRepository<UsoIaDiario, Long> {
+
+    List<UsoIaDiario> findByDiaBetweenOrderByDiaAscUsuarioIdAsc(LocalDate desde, LocalDate hasta);
+
+    List<UsoIaDiario> findByUsuarioIdAndDiaBetweenOrderByDiaAsc(UUID usuarioId, LocalDate desde, LocalDate hasta);
+}
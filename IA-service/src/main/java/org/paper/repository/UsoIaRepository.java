@@ -0,0 +1,61 @@
+package org.paper.repository;
+
+import org.paper.entity.UsoIa;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Repository
+public interface UsoIaRepository extends JpaRepository<UsoIa, Long> {
+
+    interface UsoAcumulado {
+        long getImagenes();
+        long getTokens();
+        BigDecimal getCostoUsd();
+    }
+
+    /**
+     * Consumo de un usuario desde un instante (para cuotas): usa idx_ia_uso_usuario_fecha
+     */
+    @Query(value = """
+            SELECT COUNT(*) FILTER (WHERE exito) AS imagenes,
+                   COALESCE(SUM(input_tokens + output_tokens), 0) AS tokens,
+                   COALESCE(SUM(costo_usd), 0) AS costoUsd
+            FROM ia_uso
+            WHERE usuario_id = :usuarioId AND fecha >= :desde
+            """, nativeQuery = true)
+    UsoAcumulado sumarDesde(@Param("usuarioId") UUID usuarioId, @Param("desde") LocalDateTime desde);
+
+    /**
+     * Recalcula los totales de los días completos a partir de :desde.
+     * Es idempotente: correrlo dos veces deja los mismos valores.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO ia_uso_diario (usuario_id, dia, llamadas, fallidas, input_tokens, output_tokens,
+                                       input_bytes, output_bytes, latencia_total_ms, costo_usd, actualizado)
+            SELECT usuario_id, CAST(fecha AS DATE), COUNT(*), COUNT(*) FILTER (WHERE NOT exito),
+                   SUM(input_tokens), SUM(output_tokens), SUM(input_bytes), SUM(output_bytes),
+                   SUM(latencia_ms), SUM(costo_usd), NOW()
+            FROM ia_uso
+            WHERE fecha >= :desde
+            GROUP BY usuario_id, CAST(fecha AS DATE)
+            ON CONFLICT (usuario_id, dia) DO UPDATE SET
+                llamadas = EXCLUDED.llamadas,
+                fallidas = EXCLUDED.fallidas,
+                input_tokens = EXCLUDED.input_tokens,
+                output_tokens = EXCLUDED.output_tokens,
+                input_bytes = EXCLUDED.input_bytes,
+                output_bytes = EXCLUDED.output_bytes,
+                latencia_total_ms = EXCLUDED.latencia_total_ms,
+                costo_usd = EXCLUDED.costo_usd,
+                actualizado = EXCLUDED.actualizado
+            """, nativeQuery = true)
+    int consolidarDiasDesde(@Param("desde") LocalDateTime desde);
+}
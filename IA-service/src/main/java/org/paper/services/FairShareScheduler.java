@@ -0,0 +1,109 @@
+package org.paper.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reparte el pool de workers de IA entre usuarios en round-robin.
+ * Cada usuario tiene su propia cola: un batch grande de un usuario no
+ * bloquea los pedidos de los demás, que se intercalan tarea por tarea.
+ */
+@Slf4j
+@Component
+public class FairShareScheduler {
+
+    private final ThreadPoolTaskExecutor executor;
+    private final int maxConcurrent;
+    private final int maxQueuedPerUser;
+
+    // Estado protegido por el monitor de this
+    private final Map<String, Deque<Runnable>> queues = new HashMap<>();
+    private final Deque<String> turnos = new ArrayDeque<>();
+    private int running;
+
+    public FairShareScheduler(
+            @Qualifier("iaJobExecutor") ThreadPoolTaskExecutor executor,
+            @Value("${ia.jobs.max-queued-per-user:100}") int maxQueuedPerUser) {
+        this.executor = executor;
+        this.maxConcurrent = executor.getMaxPoolSize();
+        this.maxQueuedPerUser = maxQueuedPerUser;
+    }
+
+    /**
+     * Encola una tarea para el usuario indicado
+     *
+     * @throws TaskRejectedException si el usuario ya tiene demasiadas tareas pendientes
+     */
+    public synchronized void submit(String userKey, Runnable task) {
+        Deque<Runnable> queue = queues.get(userKey);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queues.put(userKey, queue);
+            turnos.addLast(userKey);
+        }
+
+        if (queue.size() >= maxQueuedPerUser) {
+            throw new TaskRejectedException("El usuario " + userKey + " superó el máximo de "
+                    + maxQueuedPerUser + " tareas pendientes");
+        }
+
+        queue.addLast(task);
+        dispatch();
+    }
+
+    public synchronized int pendingCount() {
+        return queues.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private void dispatch() {
+        while (running < maxConcurrent && !turnos.isEmpty()) {
+            String userKey = turnos.pollFirst();
+            Deque<Runnable> queue = queues.get(userKey);
+            Runnable task = queue.pollFirst();
+
+            if (queue.isEmpty()) {
+                queues.remove(userKey);
+            } else {
+                turnos.addLast(userKey);
+            }
+
+            running++;
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        log.error("❌ Error no controlado en tarea de IA del usuario {}", userKey, e);
+                    } finally {
+                        onTaskFinished();
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                // El pool está apagándose: devolver la tarea a su cola y dejar de despachar
+                running--;
+                queues.computeIfAbsent(userKey, k -> {
+                    turnos.addFirst(k);
+                    return new ArrayDeque<>();
+                }).addFirst(task);
+                log.warn("⚠️ Pool de IA rechazó la tarea del usuario {}: {}", userKey, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private synchronized void onTaskFinished() {
+        running--;
+        dispatch();
+    }
+}
@@ -1,83 +1,96 @@
 package org.paper.services;
 
-import com.google.cloud.vertexai.VertexAI;
-import com.google.cloud.vertexai.api.*;
-import com.google.cloud.vertexai.generativeai.GenerativeModel;
-import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.paper.dto.GenerateImageResponseDTO;
+import org.paper.dto.GenerationJobStatus;
+import org.paper.dto.ModelHealthDTO;
+import org.paper.dto.VarianteVista;
 import org.paper.entity.Diseno;
-import org.paper.entity.Plantilla;
+import org.paper.entity.DisenoVista;
 import org.paper.exception.ImageGenerationException;
+import org.paper.prompts.PromptRegistry;
+import org.paper.prompts.RenderedPrompt;
+import org.paper.providers.CircuitBreaker;
+import org.paper.providers.ImageModelRequest;
+import org.paper.providers.ImageModelResponse;
+import org.paper.providers.ResilientImageModelClient;
 import org.paper.repository.DisenoRepository;
-import org.springframework.beans.factory.annotation.Value;
+import org.paper.repository.DisenoVistaRepository;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
-import java.util.Arrays;
 import java.util.Base64;
-import java.util.List;
+import java.util.UUID;
 
 @Slf4j
 @Service
 public class GeminiImageService {
 
     private final DisenoRepository disenoRepository;
-    private final String modelName;
-    private final VertexAI vertexAI;
+    private final DisenoVistaRepository disenoVistaRepository;
+    private final ResilientImageModelClient modelClient;
+    private final ImagePreprocessor imagePreprocessor;
+    private final PromptRegistry promptRegistry;
+    private final UsageAccountingService usageAccountingService;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate lectura;
+    private final TransactionTemplate escritura;
 
     public GeminiImageService(
             DisenoRepository disenoRepository,
-            @Value("${google.cloud.project-id}") String projectId,
-            @Value("${google.cloud.location}") String location,
-            @Value("${gemini.model-name:gemini-2.5-flash-image}") String modelName) {
+            DisenoVistaRepository disenoVistaRepository,
+            ResilientImageModelClient modelClient,
+            ImagePreprocessor imagePreprocessor,
+            PromptRegistry promptRegistry,
+            UsageAccountingService usageAccountingService,
+            MeterRegistry meterRegistry,
+            PlatformTransactionManager transactionManager) {
         this.disenoRepository = disenoRepository;
-        this.modelName = modelName;
-        this.vertexAI = new VertexAI(projectId, location);
+        this.disenoVistaRepository = disenoVistaRepository;
+        this.modelClient = modelClient;
+        this.imagePreprocessor = imagePreprocessor;
+        this.promptRegistry = promptRegistry;
+        this.usageAccountingService = usageAccountingService;
+        this.meterRegistry = meterRegistry;
+        this.lectura = new TransactionTemplate(transactionManager);
+        this.lectura.setReadOnly(true);
+        this.escritura = new TransactionTemplate(transactionManager);
     }
 
-    @Transactional
     public GenerateImageResponseDTO generate3DView(Integer disenoId) {
-        log.info("🎨 Generando vista 3D para diseño ID: {}", disenoId);
-
-        try {
-            Diseno diseno = disenoRepository.findById(disenoId)
-                    .orElseThrow(() -> new ImageGenerationException("Diseño no encontrado: " + disenoId));
-
-            if (diseno.getBase64Preview() == null || diseno.getBase64Preview().isEmpty()) {
-                throw new ImageGenerationException("El diseño no tiene imagen preview");
-            }
-
-            // 🔍 DETECTAR SI ES BOLSA O ENVOLTORIO
-            String tipoBolsaNombre = diseno.getPlantilla().getTipoBolsa().getNombre().toLowerCase();
-            boolean esBolsa = tipoBolsaNombre.contains("bolsa");
-            boolean esEnvoltorio = tipoBolsaNombre.contains("envoltorio") || tipoBolsaNombre.contains("mantel");
+        return generate3DView(disenoId, VarianteVista.TRES_CUARTOS, GenerationProgressListener.NONE);
+    }
 
-            String dynamicPrompt;
-            if (esBolsa) {
-                log.info("📦 Tipo detectado: BOLSA → Usando prompt específico para bolsas");
-                dynamicPrompt = buildPromptForBolsas(diseno);
-            } else if (esEnvoltorio) {
-                log.info("📄 Tipo detectado: ENVOLTORIO → Usando prompt específico para envoltorios");
-                dynamicPrompt = buildPromptForEnvoltorios(diseno);
-            } else {
-                log.warn("⚠️ Tipo no reconocido: '{}'. Usando prompt genérico.", tipoBolsaNombre);
-                dynamicPrompt = buildGenericPrompt(diseno);
-            }
+    /**
+     * Genera la vista 3D con el ángulo indicado, informando el avance al listener.
+     * TRES_CUARTOS reemplaza el preview del diseño; el resto se guarda en disenos_vistas.
+     *
+     * La llamada al modelo (con reintentos, backoff y hedging puede tardar minutos) queda fuera de
+     * toda transacción: se lee en una transacción corta, se llama al modelo y se guarda en otra.
+     */
+    public GenerateImageResponseDTO generate3DView(Integer disenoId, VarianteVista variante,
+                                                   GenerationProgressListener listener) {
+        VarianteVista vista = VarianteVista.orDefault(variante);
+        log.info("🎨 Generando vista 3D ({}) para diseño ID: {}", vista, disenoId);
 
-            log.debug("💬 Prompt enviado a Gemini:\n{}", dynamicPrompt);
+        try {
+            // 1. Leer el diseño, verificar la cuota y armar el prompt
+            Entrada entrada = lectura.execute(status -> prepararEntrada(disenoId, vista));
 
             // 2. Generar imagen (Con Safety Settings relajados)
-            String nuevaImagen3D = generateImageWithGemini(diseno.getBase64Preview(), dynamicPrompt);
+            String nuevaImagen3D = generateImageWithGemini(entrada, vista);
+            listener.onProgress(GenerationJobStatus.MODEL_RESPONDED, "Gemini devolvió la imagen 3D");
 
             // 3. Guardar
-            diseno.setBase64Preview(nuevaImagen3D);
-            diseno.setFechaActualizacion(LocalDateTime.now());
-            disenoRepository.save(diseno);
+            escritura.executeWithoutResult(status ->
+                    guardar(disenoId, vista, nuevaImagen3D, entrada.prompt().getVersion()));
 
             log.info("✅ Imagen 3D generada exitosamente para diseño ID: {}", disenoId);
-            return GenerateImageResponseDTO.success(disenoId);
+            return GenerateImageResponseDTO.success(disenoId, entrada.prompt().getVersion());
 
         } catch (Exception e) {
             log.error("❌ Error generando vista 3D", e);
@@ -85,232 +98,139 @@ public class GeminiImageService {
         }
     }
 
-    // ========================================
-    // 📦 PROMPT PARA BOLSAS
-    // ========================================
-    private String buildPromptForBolsas(Diseno diseno) {
-        Plantilla plantilla = diseno.getPlantilla();
-        String tipoBolsaNombre = plantilla.getTipoBolsa().getNombre().toLowerCase();
-        String materialNombre = plantilla.getMaterial().getNombre();
-
-        // ✅ EXTRACCIÓN DE DIMENSIONES REALES
-        String dimensionesReales = String.format("Width: %.1f cm, Height: %.1f cm, Depth (Gusset): %.1f cm",
-                plantilla.getAncho(), plantilla.getAlto(), plantilla.getProfundidad());
-
-        String geometryInstruction;
+    private Entrada prepararEntrada(Integer disenoId, VarianteVista variante) {
+        Diseno diseno = disenoRepository.findById(disenoId)
+                .orElseThrow(() -> new ImageGenerationException("Diseño no encontrado: " + disenoId));
 
-        // Lógica específica para tipos de bolsa
-        if (tipoBolsaNombre.contains("americana") || tipoBolsaNombre.contains("fondo americano")) {
-            geometryInstruction = """
-                *CRITICAL GEOMETRY - PINCH BOTTOM BAG:*
-                - TYPE: This is strictly a "Pinch Bottom Bag" (like a bakery bread bag).
-                - BOTTOM: It has a *V-SHAPED pinch bottom*. It corresponds to a fold, NOT a flat rectangular cardboard base. It must look sharp at the bottom edge.
-                - TOP: Serrated (zig-zag) cut edge. Open mouth.
-                - SIDES: Deep gussets (indentations) on the sides.
-                - STANCE: Standing upright, but slightly angled to show the depth.
-                """;
-        } else if (tipoBolsaNombre.contains("asa") || tipoBolsaNombre.contains("manija") || tipoBolsaNombre.contains("cuadrado con manija")) {
-            geometryInstruction = """
-                *CRITICAL GEOMETRY - SHOPPING BAG:*
-                - TYPE: Rigid Shopping Bag with handles.
-                - BOTTOM: Flat rectangular block bottom.
-                - TOP: Folded straight edge (turn top).
-                - HANDLES: Must have twisted paper or rope handles.
-                """;
-        } else if (tipoBolsaNombre.contains("cuadrado sin manija") || tipoBolsaNombre.contains("sin asa")) {
-            geometryInstruction = """
-                *CRITICAL GEOMETRY - SQUARE BOTTOM BAG (NO HANDLES):*
-                - TYPE: Square bottom bag without handles.
-                - BOTTOM: Flat square base.
-                - TOP: Clean folded edge, no handles.
-                - STANCE: Standing upright with visible side gussets.
-                """;
-        } else {
-            geometryInstruction = """
-                *GEOMETRY:*
-                - Standard paper bag.
-                - Define volume clearly using light and shadow.
-                """;
+        if (diseno.getBase64Preview() == null || diseno.getBase64Preview().isEmpty()) {
+            throw new ImageGenerationException("El diseño no tiene imagen preview");
         }
 
-        return String.format("""
-            You are an expert 3D packaging visualizer specialized in paper bags.
-            
-            *INPUT IMAGE ANALYSIS (CRITICAL):*
-            The image provided is a *FLAT UNZIPPED TEMPLATE (DIELINE)*. It is NOT a sticker.
-            You must mentally "fold" this image to construct the 3D object.
-            
-            *PHYSICAL SPECIFICATIONS (MUST RESPECT PROPORTIONS):*
-            - *Dimensions:* %s
-            
-            *MAPPING INSTRUCTIONS:*
-            1. *Center Panel:* The graphic in the exact center ("%s") goes on the *FRONT FACE*.
-            2. *Side Panels:* The vertical strips on the far left and right correspond to the *SIDE GUSSETS*.
-               -> *ACTION:* These vertical strips must appear on the *SIDE* of the bag, receding in perspective.
-            
-            %s
+        // Cuota diaria del dueño del diseño (si está configurada)
+        UUID usuarioId = diseno.getUsuario().getId();
+        usageAccountingService.checkQuota(usuarioId);
 
-            *RENDERING SPECS:*
-            - *Material:* %s (Render distinct paper fibers and texture).
-            - *Lighting:* Studio lighting, emphasizing the fold lines and structure.
-            - *Background:* Pure white.
-            - *Camera Angle:* 3/4 Perspective view (showing Front and Side).
+        // Plantilla según el id del tipo de bolsa (precompilada al arrancar)
+        RenderedPrompt prompt = promptRegistry.withCamera(promptRegistry.render(diseno), variante);
+        log.info("📝 Prompt {} para diseño ID: {}", prompt.getVersion(), disenoId);
+        log.debug("💬 Prompt enviado a Gemini:\n{}", prompt.getText());
 
-            Create a photorealistic product mockup based on these instructions.
-            """,
-                dimensionesReales,
-                diseno.getNombre(),
-                geometryInstruction,
-                materialNombre
-        );
+        return new Entrada(disenoId, usuarioId, diseno.getBase64Preview(), prompt);
     }
 
-    // ========================================
-    // 📄 PROMPT PARA ENVOLTORIOS
-    // ========================================
-    private String buildPromptForEnvoltorios(Diseno diseno) {
-        Plantilla plantilla = diseno.getPlantilla();
-        String tipoEnvoltorioNombre = plantilla.getTipoBolsa().getNombre().toLowerCase();
-        String materialNombre = plantilla.getMaterial().getNombre();
-
-        // ✅ EXTRACCIÓN DE DIMENSIONES (ANCHO x ALTO)
-        // Asumimos que para envoltorios usamos ancho y alto como medidas de la hoja
-        String dimensionesHoja = String.format("%.0f x %.0f cm", plantilla.getAncho(), plantilla.getAlto());
+    /**
+     * Se relee el diseño: lo que haya cambiado mientras respondía el modelo no se pisa con la copia vieja
+     */
+    private void guardar(Integer disenoId, VarianteVista variante, String nuevaImagen3D, String promptVersion) {
+        Diseno diseno = disenoRepository.findById(disenoId)
+                .orElseThrow(() -> new ImageGenerationException("Diseño no encontrado: " + disenoId));
 
-        return String.format("""
-            You are an AI with expertise in packaging design and context understanding.
-            
-            *INPUT:* A flat design pattern for a wrapper.
-            *TASK:* Render a photorealistic 3D mockup of this wrapper IN USE.
-            
-            *STEP 1: ANALYZE CONTEXT (THE "THINKING" PART)*
-            Analyze the input image (logos, colors, text) AND the physical specs below to deduce what product is inside:
-            - *Dimensions:* %s
-            - *Material:* %s
-            
-            Logic Guide for your deduction:
-            - IF dimensions are approx 30x30cm AND material is Greaseproof/Paraffin AND design implies burgers/fast-food -> *Wrap a Burger*.
-            - IF dimensions are small (e.g., 10x10cm) AND design implies sweets/candy -> *Wrap a square/rectangular Candy* or taffy (twist wrap or fold).
-            - IF dimensions are rectangular/large AND design implies bakery -> *Wrap a Baguette or Sandwich*.
-            - IF it looks like a placemat (Individual) -> *Lay it flat* on a table surface with natural lighting.
-            
-            *STEP 2: RENDER*
-            Based on your deduction in Step 1, generate the 3D image:
-            - *The Product:* Show the paper wrapping the inferred invisible object (volumetric shape).
-            - *Physics:* The paper must behave according to the material '%s'. 
-              - If greaseproof: show slight translucency and grease resistance.
-              - If kraft: show stiffness and fiber.
-            - *Texture:* Add realistic crinkles, folds, and undulations appropriate for a wrapper.
-            - *Design:* Map the provided flat design naturally over the folds and curves of the wrapped shape.
-            
-            *SCENE:*
-            - Neutral studio background or wooden surface (if it fits the vibe).
-            - Professional product photography style.
-            """,
-                diseno.getNombre(),
-                dimensionesHoja,
-                materialNombre
-        );
+        if (variante.reemplazaPreview()) {
+            diseno.setBase64Preview(nuevaImagen3D);
+            diseno.setFechaActualizacion(LocalDateTime.now());
+            disenoRepository.save(diseno);
+        } else {
+            guardarVista(diseno, variante, nuevaImagen3D, promptVersion);
+        }
     }
 
-    // ========================================
-    // 🔧 PROMPT GENÉRICO (FALLBACK)
-    // ========================================
-    private String buildGenericPrompt(Diseno diseno) {
-        String materialNombre = diseno.getPlantilla().getMaterial().getNombre();
-
-        return String.format("""
-            You are an expert 3D product visualizer.
-            
-            *INPUT IMAGE:*
-            The image provided is a flat design template for: "%s"
-            
-            *INSTRUCTIONS:*
-            1. Analyze the structure and infer the best 3D representation.
-            2. Apply the design faithfully to the appropriate surfaces.
-            3. Use realistic lighting and material rendering for %s.
-            4. Background: Pure white.
-            5. Camera: 3/4 perspective view.
-            
-            Create a professional, photorealistic product mockup.
-            """,
-                diseno.getNombre(),
-                materialNombre
-        );
+    private void guardarVista(Diseno diseno, VarianteVista variante, String base64Imagen, String promptVersion) {
+        DisenoVista vista = disenoVistaRepository.findByDisenoIdAndVariante(diseno.getId(), variante)
+                .orElseGet(() -> {
+                    DisenoVista nueva = new DisenoVista();
+                    nueva.setDiseno(diseno);
+                    nueva.setVariante(variante);
+                    return nueva;
+                });
+        vista.setBase64Imagen(base64Imagen);
+        vista.setPromptVersion(promptVersion);
+        vista.setFechaCreacion(LocalDateTime.now());
+        disenoVistaRepository.save(vista);
     }
 
     // ========================================
-    // 🤖 LLAMADA A GEMINI (Sin cambios)
+    // 🤖 LLAMADA AL MODELO
     // ========================================
-    private String generateImageWithGemini(String base64Preview, String prompt) {
-        try {
-            String cleanBase64 = base64Preview.contains(",") ?
-                    base64Preview.substring(base64Preview.indexOf(",") + 1) : base64Preview;
-
-            byte[] imageBytes = Base64.getDecoder().decode(cleanBase64);
-
-            List<SafetySetting> safetySettings = Arrays.asList(
-                    SafetySetting.newBuilder().setCategory(HarmCategory.HARM_CATEGORY_HARASSMENT).setThreshold(SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH).build(),
-                    SafetySetting.newBuilder().setCategory(HarmCategory.HARM_CATEGORY_HATE_SPEECH).setThreshold(SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH).build(),
-                    SafetySetting.newBuilder().setCategory(HarmCategory.HARM_CATEGORY_SEXUALLY_EXPLICIT).setThreshold(SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH).build(),
-                    SafetySetting.newBuilder().setCategory(HarmCategory.HARM_CATEGORY_DANGEROUS_CONTENT).setThreshold(SafetySetting.HarmBlockThreshold.BLOCK_ONLY_HIGH).build()
-            );
-
-            GenerativeModel model = new GenerativeModel(modelName, vertexAI)
-                    .withGenerationConfig(GenerationConfig.newBuilder()
-                            .setTemperature(0.3f)
-                            .setMaxOutputTokens(8192)
-                            .build())
-                    .withSafetySettings(safetySettings);
-
-            Content content = Content.newBuilder()
-                    .setRole("user")
-                    .addParts(Part.newBuilder()
-                            .setInlineData(com.google.cloud.vertexai.api.Blob.newBuilder()
-                                    .setMimeType("image/png")
-                                    .setData(ByteString.copyFrom(imageBytes))
-                                    .build()))
-                    .addParts(Part.newBuilder().setText(prompt).build())
-                    .build();
-
-            GenerateContentResponse response = model.generateContent(content);
-
-            if (response.getCandidatesCount() > 0) {
-                var candidate = response.getCandidates(0);
-
-                if (candidate.getFinishReason() == Candidate.FinishReason.SAFETY) {
-                    log.error("⛔ IMAGEN BLOQUEADA POR FILTROS DE SEGURIDAD. Ratings: {}", candidate.getSafetyRatingsList());
-                    throw new ImageGenerationException("La IA bloqueó la generación por motivos de seguridad.");
-                }
+    private String generateImageWithGemini(Entrada entrada, VarianteVista variante) {
+        RenderedPrompt prompt = entrada.prompt();
+        String base64Preview = entrada.base64Preview();
+        String cleanBase64 = base64Preview.contains(",") ?
+                base64Preview.substring(base64Preview.indexOf(",") + 1) : base64Preview;
 
-                if (candidate.getContent().getPartsCount() > 0) {
-                    for (Part part : candidate.getContent().getPartsList()) {
-                        if (part.hasInlineData()) {
-                            return Base64.getEncoder().encodeToString(part.getInlineData().getData().toByteArray());
-                        }
-                    }
-                }
-
-                String textResponse = candidate.getContent().getPartsCount() > 0 ?
-                        candidate.getContent().getParts(0).getText() : "Sin respuesta de texto";
-                log.warn("⚠️ Gemini devolvió texto en lugar de imagen: {}", textResponse);
-                throw new ImageGenerationException("Gemini se negó a generar la imagen: " + textResponse);
-            }
+        byte[] imageBytes;
+        try {
+            imageBytes = Base64.getDecoder().decode(cleanBase64);
+        } catch (IllegalArgumentException e) {
+            throw new ImageGenerationException("El preview del diseño no es un base64 válido", e);
+        }
 
-            throw new ImageGenerationException("Error desconocido en la respuesta de Gemini");
+        ImagePreprocessor.PreparedImage prepared = imagePreprocessor.prepare(imageBytes);
 
-        } catch (Exception e) {
-            log.error("Excepción técnica en Vertex AI", e);
-            throw new ImageGenerationException("Error al conectar con el servicio de IA: " + e.getMessage(), e);
+        // Latencia del modelo separada por si la entrada fue reducida o no, para medir el ahorro
+        Timer.Sample sample = Timer.start(meterRegistry);
+        ImageModelResponse response;
+        try {
+            // Cada intento (reintentos y pedidos hedged incluidos) se factura: se registra uno por uno
+            response = modelClient.generate(ImageModelRequest.builder()
+                            .imageBytes(prepared.getBytes())
+                            .mimeType(prepared.getMimeType())
+                            .prompt(prompt.getText())
+                            .build(),
+                    (intento, latenciaMs) -> registrarUso(entrada, variante, prepared, intento, latenciaMs));
+        } finally {
+            sample.stop(Timer.builder("ia.model.call.duration")
+                    .tag("preprocessed", String.valueOf(prepared.isModified()))
+                    .tag("mime", prepared.getMimeType())
+                    .register(meterRegistry));
         }
+
+        return Base64.getEncoder().encodeToString(response.getImageBytes());
     }
 
-    public boolean checkHealth() {
+    private void registrarUso(Entrada entrada, VarianteVista variante,
+                              ImagePreprocessor.PreparedImage prepared, ImageModelResponse response, long latenciaMs) {
         try {
-            new GenerativeModel(modelName, vertexAI);
-            return true;
-        } catch (Exception e) {
-            return false;
+            usageAccountingService.record(
+                    entrada.usuarioId(),
+                    entrada.disenoId(),
+                    variante,
+                    modelClient.getProviderName(),
+                    entrada.prompt().getVersion(),
+                    response != null && response.getInputTokens() != null ? response.getInputTokens() : 0,
+                    response != null && response.getOutputTokens() != null ? response.getOutputTokens() : 0,
+                    prepared.getBytes().length,
+                    response != null ? response.getImageBytes().length : 0,
+                    latenciaMs,
+                    response != null);
+        } catch (RuntimeException e) {
+            // La contabilidad nunca debe hacer fallar una generación ya pagada
+            log.error("❌ No se pudo registrar el uso de IA del diseño {}: {}", entrada.disenoId(), e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Estado del proveedor según el circuit breaker (no hace llamadas al modelo)
+     */
+    public ModelHealthDTO getHealth() {
+        CircuitBreaker.State state = modelClient.getCircuitState();
+        String status = switch (state) {
+            case CLOSED -> "UP";
+            case HALF_OPEN -> "DEGRADED";
+            case OPEN -> "DOWN";
+        };
+
+        return ModelHealthDTO.builder()
+                .status(status)
+                .provider(modelClient.getProviderName())
+                .circuitState(state.name())
+                .failureRate(modelClient.getFailureRate())
+                .hedgeThresholdMs(modelClient.getHedgeThresholdMs())
+                .build();
+    }
+
+    /**
+     * Lo que se lee del diseño antes de llamar al modelo (fuera de la transacción de lectura)
+     */
+    private record Entrada(Integer disenoId, UUID usuarioId, String base64Preview, RenderedPrompt prompt) {
+    }
+}
@@ -0,0 +1,158 @@
+package org.paper.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.dto.BatchItemDTO;
+import org.paper.dto.BatchStatusDTO;
+import org.paper.dto.GenerationJobDTO;
+import org.paper.dto.GenerationJobStatus;
+import org.paper.dto.VarianteVista;
+import org.paper.exception.ImageGenerationException;
+import org.paper.exception.QuotaExceededException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Agrupa varios jobs de generación 3D (varios diseños y/o varios ángulos)
+ * bajo un mismo batchId y calcula su progreso agregado.
+ */
+@Slf4j
+@Service
+public class GenerationBatchService {
+
+    private final Map<String, GenerationBatch> batches = new ConcurrentHashMap<>();
+    private final GenerationJobService generationJobService;
+
+    public GenerationBatchService(GenerationJobService generationJobService) {
+        this.generationJobService = generationJobService;
+    }
+
+    /**
+     * Encola todos los ítems del batch. Los pares (diseño, variante) repetidos
+     * se generan una sola vez; las variantes de un mismo diseño se encolan juntas (ver submitGroup).
+     */
+    public BatchStatusDTO submit(String userKey, List<BatchItemDTO> items) {
+        Map<Integer, List<VarianteVista>> variantesPorDiseno = new LinkedHashMap<>();
+        for (BatchItemDTO item : items) {
+            List<VarianteVista> variantes = variantesPorDiseno.computeIfAbsent(item.getDisenoId(), id -> new ArrayList<>());
+            VarianteVista variante = VarianteVista.orDefault(item.getVariante());
+            if (!variantes.contains(variante)) {
+                variantes.add(variante);
+            }
+        }
+
+        List<String> jobIds = new ArrayList<>();
+        int rechazados = 0;
+        QuotaExceededException cuotaAgotada = null;
+        for (Map.Entry<Integer, List<VarianteVista>> entry : variantesPorDiseno.entrySet()) {
+            try {
+                generationJobService.submitGroup(userKey, entry.getKey(), entry.getValue()).stream()
+                        .map(GenerationJobDTO::getJobId)
+                        .forEach(jobIds::add);
+            } catch (QuotaExceededException e) {
+                // El dueño de este diseño agotó su cuota diaria
+                rechazados += entry.getValue().size();
+                cuotaAgotada = e;
+            } catch (ImageGenerationException e) {
+                rechazados += entry.getValue().size();
+            }
+        }
+
+        if (jobIds.isEmpty() && cuotaAgotada != null) {
+            throw cuotaAgotada;
+        }
+        if (jobIds.isEmpty()) {
+            throw new ImageGenerationException("La cola de generación está llena, intente más tarde");
+        }
+
+        GenerationBatch batch = new GenerationBatch(UUID.randomUUID().toString(), List.copyOf(jobIds), rechazados);
+        batches.put(batch.id, batch);
+
+        log.info("📦 Batch {} creado: {} ítems recibidos, {} jobs únicos, {} rechazados (usuario {})",
+                batch.id, items.size(), jobIds.size(), rechazados, userKey);
+        return toDto(batch);
+    }
+
+    public Optional<BatchStatusDTO> findBatch(String batchId) {
+        return Optional.ofNullable(batches.get(batchId)).map(this::toDto);
+    }
+
+    /**
+     * Elimina los batches cuyos jobs ya fueron descartados por retención
+     */
+    @Scheduled(fixedRate = 60000)
+    public void cleanupBatches() {
+        batches.values().removeIf(batch -> batch.jobIds.stream()
+                .noneMatch(jobId -> generationJobService.findJob(jobId).isPresent()));
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private BatchStatusDTO toDto(GenerationBatch batch) {
+        List<BatchStatusDTO.Item> items = new ArrayList<>();
+        int queued = 0, running = 0, completed = 0, failed = 0, expired = 0;
+
+        for (String jobId : batch.jobIds) {
+            Optional<GenerationJobDTO> job = generationJobService.findJob(jobId);
+            // Un job descartado por retención ya había terminado, pero no se sabe cómo: sin status
+            GenerationJobStatus status = job.map(GenerationJobDTO::getStatus).orElse(null);
+
+            if (status == null) {
+                expired++;
+            } else {
+                switch (status) {
+                    case QUEUED -> queued++;
+                    case STARTED, MODEL_RESPONDED -> running++;
+                    case PERSISTED -> completed++;
+                    case FAILED -> failed++;
+                }
+            }
+
+            items.add(BatchStatusDTO.Item.builder()
+                    .jobId(jobId)
+                    .disenoId(job.map(GenerationJobDTO::getDisenoId).orElse(null))
+                    .variante(job.map(GenerationJobDTO::getVariante).orElse(null))
+                    .status(status)
+                    .build());
+        }
+
+        int total = batch.jobIds.size();
+        int terminados = completed + failed + expired;
+
+        return BatchStatusDTO.builder()
+                .batchId(batch.id)
+                .total(total)
+                .queued(queued)
+                .running(running)
+                .completed(completed)
+                .failed(failed)
+                .expired(expired)
+                .rejected(batch.rechazados)
+                .progressPercent(total == 0 ? 100 : terminados * 100 / total)
+                .finished(terminados == total)
+                .createdAt(batch.createdAt)
+                .items(items)
+                .build();
+    }
+
+    private static class GenerationBatch {
+        final String id;
+        final List<String> jobIds;
+        final int rechazados;
+        final LocalDateTime createdAt = LocalDateTime.now();
+
+        GenerationBatch(String id, List<String> jobIds, int rechazados) {
+            this.id = id;
+            this.jobIds = jobIds;
+            this.rechazados = rechazados;
+        }
+    }
+}
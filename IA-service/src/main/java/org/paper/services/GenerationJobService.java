@@ -0,0 +1,357 @@
+package org.paper.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.dto.GenerateImageResponseDTO;
+import org.paper.dto.GenerationJobDTO;
+import org.paper.dto.GenerationJobEventDTO;
+import org.paper.dto.GenerationJobStatus;
+import org.paper.dto.VarianteVista;
+import org.paper.exception.ImageGenerationException;
+import org.paper.exception.QuotaExceededException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Gestiona los jobs asíncronos de generación 3D.
+ * El cliente recibe un jobId al instante y sigue el progreso por SSE,
+ * en lugar de mantener abierto un POST bloqueante hasta que responde Gemini.
+ */
+@Slf4j
+@Service
+public class GenerationJobService {
+
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+    // (disenoId, variante) → job activo, para no generar dos veces la misma entrada
+    private final Map<String, String> activeJobsByInput = new ConcurrentHashMap<>();
+    private final GeminiImageService geminiImageService;
+    private final FairShareScheduler scheduler;
+    private final UsageAccountingService usageAccountingService;
+    private final long sseTimeoutMs;
+    private final Duration retention;
+
+    public GenerationJobService(
+            GeminiImageService geminiImageService,
+            FairShareScheduler scheduler,
+            UsageAccountingService usageAccountingService,
+            @Value("${ia.jobs.sse-timeout-ms:300000}") long sseTimeoutMs,
+            @Value("${ia.jobs.retention-minutes:30}") long retentionMinutes) {
+        this.geminiImageService = geminiImageService;
+        this.scheduler = scheduler;
+        this.usageAccountingService = usageAccountingService;
+        this.sseTimeoutMs = sseTimeoutMs;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+    }
+
+    /**
+     * Encola la generación 3D de un diseño y devuelve el job creado.
+     * Si ya hay un job activo para el mismo diseño y variante, se devuelve ese.
+     */
+    public GenerationJobDTO submit(String userKey, Integer disenoId, VarianteVista variante) {
+        return submitGroup(userKey, disenoId, List.of(VarianteVista.orDefault(variante))).get(0);
+    }
+
+    /**
+     * Encola varias variantes de un mismo diseño, cada una como su propia tarea: se reparten
+     * entre los workers en lugar de ocupar uno solo en serie. TRES_CUARTOS se encola recién
+     * cuando terminaron las demás, porque es la única que reemplaza el preview que las otras
+     * usan como imagen de entrada.
+     *
+     * @return un job por variante, en el mismo orden recibido (sin duplicados)
+     * @throws QuotaExceededException si el dueño del diseño agotó su cuota diaria
+     */
+    public List<GenerationJobDTO> submitGroup(String userKey, Integer disenoId, List<VarianteVista> variantes) {
+        // Se rechaza antes de encolar: no tiene sentido esperar turno para fallar por cuota
+        usageAccountingService.checkQuotaForDiseno(disenoId);
+
+        List<GenerationJob> resultado = new ArrayList<>();
+        List<GenerationJob> nuevos = new ArrayList<>();
+
+        for (VarianteVista variante : new LinkedHashSet<>(variantes)) {
+            GenerationJob candidato = new GenerationJob(UUID.randomUUID().toString(), disenoId, variante);
+            GenerationJob job = reuseOrRegister(candidato);
+            resultado.add(job);
+            if (job == candidato) {
+                nuevos.add(job);
+            }
+        }
+
+        if (!nuevos.isEmpty()) {
+            nuevos.forEach(job -> publish(job, GenerationJobStatus.QUEUED, "Job encolado"));
+            encolar(userKey, disenoId, nuevos);
+            log.info("📬 {} job(s) encolados para diseño ID: {} (usuario {})", nuevos.size(), disenoId, userKey);
+        }
+
+        return resultado.stream().map(this::toDto).collect(Collectors.toList());
+    }
+
+    public Optional<GenerationJobDTO> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(this::toDto);
+    }
+
+    /**
+     * Suscribe un cliente SSE al job. Los eventos ya emitidos se reenvían
+     * primero para que un cliente que se conecta tarde no pierda etapas.
+     */
+    public Optional<SseEmitter> subscribe(String jobId) {
+        GenerationJob job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        emitter.onCompletion(() -> job.removeEmitter(emitter));
+        emitter.onTimeout(() -> job.removeEmitter(emitter));
+        emitter.onError(e -> job.removeEmitter(emitter));
+
+        synchronized (job) {
+            for (GenerationJobEventDTO event : job.events) {
+                if (!send(emitter, event)) {
+                    return Optional.of(emitter);
+                }
+            }
+            if (job.status.isTerminal()) {
+                emitter.complete();
+            } else {
+                job.emitters.add(emitter);
+            }
+        }
+        return Optional.of(emitter);
+    }
+
+    /**
+     * Elimina los jobs terminados que superan el tiempo de retención
+     */
+    @Scheduled(fixedRate = 60000)
+    public void cleanupJobs() {
+        LocalDateTime limite = LocalDateTime.now().minus(retention);
+        int initialSize = jobs.size();
+
+        jobs.values().removeIf(job -> job.status.isTerminal() && job.updatedAt.isBefore(limite));
+
+        int removed = initialSize - jobs.size();
+        if (removed > 0) {
+            log.info("🧹 {} jobs de generación finalizados eliminados. Jobs activos: {}", removed, jobs.size());
+        }
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    /**
+     * Una tarea por variante; la que reemplaza el preview espera a que terminen (o se rechacen) las otras.
+     * Si no entra ninguna se rechaza el grupo entero; si entran algunas, las que no quedan FAILED.
+     */
+    private void encolar(String userKey, Integer disenoId, List<GenerationJob> nuevos) {
+        List<GenerationJob> paralelas = nuevos.stream()
+                .filter(job -> !job.variante.reemplazaPreview())
+                .collect(Collectors.toList());
+        GenerationJob preview = nuevos.stream()
+                .filter(job -> job.variante.reemplazaPreview())
+                .findFirst()
+                .orElse(null);
+
+        if (paralelas.isEmpty()) {
+            try {
+                scheduler.submit(userKey, () -> run(preview));
+            } catch (TaskRejectedException e) {
+                throw colaLlena(userKey, disenoId, nuevos, e);
+            }
+            return;
+        }
+
+        AtomicInteger pendientes = new AtomicInteger(paralelas.size());
+        Runnable alTerminar = () -> {
+            if (preview != null && pendientes.decrementAndGet() == 0) {
+                encolarPreview(userKey, preview);
+            }
+        };
+
+        for (int i = 0; i < paralelas.size(); i++) {
+            GenerationJob job = paralelas.get(i);
+            try {
+                scheduler.submit(userKey, () -> {
+                    try {
+                        run(job);
+                    } finally {
+                        alTerminar.run();
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                if (i == 0) {
+                    throw colaLlena(userKey, disenoId, nuevos, e);
+                }
+                List<GenerationJob> rechazadas = paralelas.subList(i, paralelas.size());
+                log.warn("⚠️ Cola de generación llena para {}: {} variante(s) del diseño ID: {} no entraron",
+                        userKey, rechazadas.size(), disenoId);
+                rechazadas.forEach(rechazada -> publish(rechazada, GenerationJobStatus.FAILED, "Cola de generación llena"));
+                // Las que no entraron ya no se esperan (si las encoladas ya terminaron, el preview sale desde acá)
+                if (preview != null && pendientes.addAndGet(-rechazadas.size()) == 0) {
+                    encolarPreview(userKey, preview);
+                }
+                return;
+            }
+        }
+    }
+
+    private void encolarPreview(String userKey, GenerationJob preview) {
+        try {
+            scheduler.submit(userKey, () -> run(preview));
+        } catch (TaskRejectedException e) {
+            log.warn("⚠️ Cola de generación llena para {}, se rechaza la vista {} del diseño ID: {}",
+                    userKey, preview.variante, preview.disenoId);
+            publish(preview, GenerationJobStatus.FAILED, "Cola de generación llena");
+        }
+    }
+
+    private ImageGenerationException colaLlena(String userKey, Integer disenoId, List<GenerationJob> jobs,
+                                               TaskRejectedException e) {
+        log.warn("⚠️ Cola de generación llena para {}, se rechaza el diseño ID: {}", userKey, disenoId);
+        jobs.forEach(job -> publish(job, GenerationJobStatus.FAILED, "Cola de generación llena"));
+        return new ImageGenerationException("La cola de generación está llena, intente más tarde", e);
+    }
+
+    private void run(GenerationJob job) {
+        publish(job, GenerationJobStatus.STARTED, "Generación iniciada");
+
+        GenerateImageResponseDTO result = geminiImageService.generate3DView(
+                job.disenoId,
+                job.variante,
+                (status, message) -> publish(job, status, message));
+
+        // PERSISTED se emite recién acá: generate3DView ya hizo commit de la transacción
+        if (result.isSuccess()) {
+            job.promptVersion = result.getPromptVersion();
+            publish(job, GenerationJobStatus.PERSISTED, result.getMessage());
+        } else {
+            publish(job, GenerationJobStatus.FAILED, result.getErrorDetails());
+        }
+    }
+
+    private void publish(GenerationJob job, GenerationJobStatus status, String message) {
+        GenerationJobEventDTO event = GenerationJobEventDTO.builder()
+                .jobId(job.id)
+                .disenoId(job.disenoId)
+                .status(status)
+                .message(message)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        // Bajo el lock solo el estado y la copia de los clientes: un cliente SSE lento no frena al worker
+        // ni a los que consultan el job. Los publish de un job salen todos del mismo worker, en orden
+        List<SseEmitter> destinatarios;
+        synchronized (job) {
+            job.status = status;
+            job.message = message;
+            job.updatedAt = event.getTimestamp();
+            job.events.add(event);
+
+            destinatarios = List.copyOf(job.emitters);
+            if (status.isTerminal()) {
+                job.emitters.clear();
+                activeJobsByInput.remove(job.inputKey(), job.id);
+            }
+        }
+
+        for (SseEmitter emitter : destinatarios) {
+            if (!send(emitter, event)) {
+                job.removeEmitter(emitter);
+            } else if (status.isTerminal()) {
+                emitter.complete();
+            }
+        }
+        log.debug("📡 Job {} → {}", job.id, status);
+    }
+
+    private GenerationJob reuseOrRegister(GenerationJob candidato) {
+        String jobId = activeJobsByInput.compute(candidato.inputKey(), (key, existente) -> {
+            GenerationJob activo = existente != null ? jobs.get(existente) : null;
+            if (activo != null && !activo.status.isTerminal()) {
+                return existente;
+            }
+            jobs.put(candidato.id, candidato);
+            return candidato.id;
+        });
+
+        if (jobId.equals(candidato.id)) {
+            return candidato;
+        }
+        log.debug("♻️ Reutilizando job activo {} para {}", jobId, candidato.inputKey());
+        return jobs.get(jobId);
+    }
+
+    private boolean send(SseEmitter emitter, GenerationJobEventDTO event) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(event.getJobId() + ":" + event.getStatus().ordinal())
+                    .name(event.getStatus().name())
+                    .data(event));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Cliente SSE desconectado del job {}: {}", event.getJobId(), e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private GenerationJobDTO toDto(GenerationJob job) {
+        synchronized (job) {
+            return GenerationJobDTO.builder()
+                    .jobId(job.id)
+                    .disenoId(job.disenoId)
+                    .variante(job.variante)
+                    .status(job.status)
+                    .message(job.message)
+                    .promptVersion(job.promptVersion)
+                    .eventsUrl("/api/ia/jobs/" + job.id + "/events")
+                    .createdAt(job.createdAt)
+                    .updatedAt(job.updatedAt)
+                    .build();
+        }
+    }
+
+    /**
+     * Estado en memoria de un job: historial de eventos y clientes SSE conectados
+     */
+    private static class GenerationJob {
+        final String id;
+        final Integer disenoId;
+        final VarianteVista variante;
+        final LocalDateTime createdAt = LocalDateTime.now();
+        final List<GenerationJobEventDTO> events = new ArrayList<>();
+        final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        volatile GenerationJobStatus status = GenerationJobStatus.QUEUED;
+        volatile String message;
+        volatile LocalDateTime updatedAt = createdAt;
+        volatile String promptVersion;
+
+        GenerationJob(String id, Integer disenoId, VarianteVista variante) {
+            this.id = id;
+            this.disenoId = disenoId;
+            this.variante = variante;
+        }
+
+        String inputKey() {
+            return disenoId + ":" + variante;
+        }
+
+        void removeEmitter(SseEmitter emitter) {
+            emitters.remove(emitter);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.paper.services;
+
+import org.paper.dto.GenerationJobStatus;
+
+/**
+ * Callback para informar el avance de una generación 3D
+ */
+@FunctionalInterface
+public interface GenerationProgressListener {
+
+    GenerationProgressListener NONE = (status, message) -> { };
+
+    void onProgress(GenerationJobStatus status, String message);
+}
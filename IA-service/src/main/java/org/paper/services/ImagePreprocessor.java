@@ -0,0 +1,243 @@
+package org.paper.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prepara el preview antes de enviarlo al modelo:
+ * detecta el formato real por sus magic bytes, lo reduce a la resolución
+ * que el modelo realmente aprovecha y lo recodifica en el formato más liviano.
+ * Si algo falla se envía la imagen original: el preprocesado nunca rompe una generación.
+ */
+@Slf4j
+@Component
+public class ImagePreprocessor {
+
+    private final boolean enabled;
+    private final int maxDimension;
+    private final float jpegQuality;
+
+    private final DistributionSummary originalBytes;
+    private final DistributionSummary sentBytes;
+    private final DistributionSummary savedBytes;
+    private final Timer preprocessTime;
+
+    public ImagePreprocessor(
+            MeterRegistry meterRegistry,
+            @Value("${ia.preprocess.enabled:true}") boolean enabled,
+            @Value("${ia.preprocess.max-dimension:1024}") int maxDimension,
+            @Value("${ia.preprocess.jpeg-quality:0.9}") float jpegQuality) {
+        this.enabled = enabled;
+        this.maxDimension = maxDimension;
+        this.jpegQuality = jpegQuality;
+
+        this.originalBytes = DistributionSummary.builder("ia.preprocess.bytes.original")
+                .baseUnit("bytes").register(meterRegistry);
+        this.sentBytes = DistributionSummary.builder("ia.preprocess.bytes.sent")
+                .baseUnit("bytes").register(meterRegistry);
+        this.savedBytes = DistributionSummary.builder("ia.preprocess.bytes.saved")
+                .baseUnit("bytes").register(meterRegistry);
+        this.preprocessTime = Timer.builder("ia.preprocess.duration").register(meterRegistry);
+    }
+
+    public PreparedImage prepare(byte[] imageBytes) {
+        String detectedMime = detectMimeType(imageBytes);
+        long start = System.nanoTime();
+
+        PreparedImage result = enabled ? process(imageBytes, detectedMime) : unchanged(imageBytes, detectedMime);
+
+        long elapsedNanos = System.nanoTime() - start;
+        preprocessTime.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        originalBytes.record(imageBytes.length);
+        sentBytes.record(result.getBytes().length);
+        savedBytes.record(imageBytes.length - result.getBytes().length);
+
+        log.debug("🖼️ Preview {} {}B → {} {}B ({}x{}) en {}ms",
+                detectedMime, imageBytes.length, result.getMimeType(), result.getBytes().length,
+                result.getWidth(), result.getHeight(), elapsedNanos / 1_000_000);
+        return result;
+    }
+
+    /**
+     * Detecta el formato real por los primeros bytes (el preview puede venir como
+     * JPEG o WEBP aunque históricamente se enviara siempre como image/png)
+     */
+    static String detectMimeType(byte[] bytes) {
+        if (bytes.length >= 8 && (bytes[0] & 0xFF) == 0x89 && bytes[1] == 'P' && bytes[2] == 'N' && bytes[3] == 'G') {
+            return "image/png";
+        }
+        if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8 && (bytes[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (bytes.length >= 12 && bytes[0] == 'R' && bytes[1] == 'I' && bytes[2] == 'F' && bytes[3] == 'F'
+                && bytes[8] == 'W' && bytes[9] == 'E' && bytes[10] == 'B' && bytes[11] == 'P') {
+            return "image/webp";
+        }
+        if (bytes.length >= 4 && bytes[0] == 'G' && bytes[1] == 'I' && bytes[2] == 'F' && bytes[3] == '8') {
+            return "image/gif";
+        }
+        // Formato desconocido: se mantiene el comportamiento anterior
+        return "image/png";
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private PreparedImage process(byte[] imageBytes, String detectedMime) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            if (image == null) {
+                // ImageIO no sabe leerlo (ej. WEBP): se envía tal cual con su tipo real
+                return unchanged(imageBytes, detectedMime);
+            }
+
+            boolean downscaled = Math.max(image.getWidth(), image.getHeight()) > maxDimension;
+            if (!downscaled && "image/jpeg".equals(detectedMime)) {
+                return unchanged(imageBytes, detectedMime, image.getWidth(), image.getHeight());
+            }
+            if (downscaled) {
+                image = downscale(image);
+            }
+
+            boolean transparente = hasTransparency(image);
+            byte[] encoded = transparente ? encodePng(image) : encodeJpeg(image);
+            String mime = transparente ? "image/png" : "image/jpeg";
+
+            // Recodificar sin reducir puede salir más pesado que el original
+            if (!downscaled && encoded.length >= imageBytes.length) {
+                return unchanged(imageBytes, detectedMime, image.getWidth(), image.getHeight());
+            }
+
+            return PreparedImage.builder()
+                    .bytes(encoded)
+                    .mimeType(mime)
+                    .width(image.getWidth())
+                    .height(image.getHeight())
+                    .modified(true)
+                    .build();
+
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ No se pudo preprocesar el preview, se envía el original: {}", e.getMessage());
+            return unchanged(imageBytes, detectedMime);
+        }
+    }
+
+    /**
+     * Reducción progresiva a la mitad + paso final bilineal:
+     * mucho mejor calidad que un único escalado bilineal cuando la reducción es grande
+     */
+    private BufferedImage downscale(BufferedImage source) {
+        double scale = (double) maxDimension / Math.max(source.getWidth(), source.getHeight());
+        int targetW = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetH = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(targetW, w / 2);
+            h = Math.max(targetH, h / 2);
+
+            BufferedImage step = new BufferedImage(w, h, type);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = step;
+        } while (w != targetW || h != targetH);
+
+        return current;
+    }
+
+    private boolean hasTransparency(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return false;
+        }
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if ((image.getRGB(x, y) >>> 24) != 0xFF) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        // JPEG no admite canal alfa: se copia a RGB si hace falta
+        BufferedImage rgb = image;
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgb.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private PreparedImage unchanged(byte[] bytes, String mime) {
+        return unchanged(bytes, mime, 0, 0);
+    }
+
+    private PreparedImage unchanged(byte[] bytes, String mime, int width, int height) {
+        return PreparedImage.builder()
+                .bytes(bytes)
+                .mimeType(mime)
+                .width(width)
+                .height(height)
+                .build();
+    }
+
+    /**
+     * Imagen lista para enviar al modelo
+     */
+    @Getter
+    @Builder
+    public static class PreparedImage {
+        private final byte[] bytes;
+        private final String mimeType;
+        private final int width;
+        private final int height;
+        // false si se envía el original tal cual
+        private final boolean modified;
+    }
+}
@@ -0,0 +1,183 @@
+package org.paper.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.dto.CuotaUsoDTO;
+import org.paper.dto.UsoDiarioDTO;
+import org.paper.dto.VarianteVista;
+import org.paper.entity.UsoIa;
+import org.paper.entity.UsoIaDiario;
+import org.paper.exception.QuotaExceededException;
+import org.paper.repository.DisenoRepository;
+import org.paper.repository.UsoIaDiarioRepository;
+import org.paper.repository.UsoIaRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Contabilidad de tokens y costo de IA por usuario:
+ * - Cada llamada al modelo se registra en ia_uso (append-only)
+ * - Un rollup periódico consolida los totales por usuario y día en ia_uso_diario
+ * - Cuotas diarias opcionales por usuario, verificadas antes de llamar al modelo
+ *
+ * El costo se imputa al dueño del diseño, que es el cliente que origina el gasto.
+ */
+@Slf4j
+@Service
+public class UsageAccountingService {
+
+    private static final BigDecimal MILLON = BigDecimal.valueOf(1_000_000);
+
+    private final UsoIaRepository usoIaRepository;
+    private final UsoIaDiarioRepository usoIaDiarioRepository;
+    private final DisenoRepository disenoRepository;
+
+    private final BigDecimal inputUsdPerMillion;
+    private final BigDecimal outputUsdPerMillion;
+    private final long dailyImagesPerUser;
+    private final long dailyTokensPerUser;
+
+    public UsageAccountingService(
+            UsoIaRepository usoIaRepository,
+            UsoIaDiarioRepository usoIaDiarioRepository,
+            DisenoRepository disenoRepository,
+            @Value("${ia.pricing.input-usd-per-million:0.30}") BigDecimal inputUsdPerMillion,
+            @Value("${ia.pricing.output-usd-per-million:30.0}") BigDecimal outputUsdPerMillion,
+            @Value("${ia.quota.daily-images-per-user:0}") long dailyImagesPerUser,
+            @Value("${ia.quota.daily-tokens-per-user:0}") long dailyTokensPerUser) {
+        this.usoIaRepository = usoIaRepository;
+        this.usoIaDiarioRepository = usoIaDiarioRepository;
+        this.disenoRepository = disenoRepository;
+        this.inputUsdPerMillion = inputUsdPerMillion;
+        this.outputUsdPerMillion = outputUsdPerMillion;
+        this.dailyImagesPerUser = dailyImagesPerUser;
+        this.dailyTokensPerUser = dailyTokensPerUser;
+    }
+
+    /**
+     * Registra una llamada al modelo en su propia transacción:
+     * el gasto ya ocurrió aunque después falle el guardado de la imagen.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void record(UUID usuarioId, Integer disenoId, VarianteVista variante, String proveedor,
+                       String promptVersion, int inputTokens, int outputTokens,
+                       int inputBytes, int outputBytes, long latenciaMs, boolean exito) {
+        UsoIa uso = new UsoIa();
+        uso.setUsuarioId(usuarioId);
+        uso.setDisenoId(disenoId);
+        uso.setVariante(variante);
+        uso.setProveedor(proveedor);
+        uso.setPromptVersion(promptVersion);
+        uso.setInputTokens(inputTokens);
+        uso.setOutputTokens(outputTokens);
+        uso.setInputBytes(inputBytes);
+        uso.setOutputBytes(outputBytes);
+        uso.setLatenciaMs(latenciaMs);
+        uso.setCostoUsd(costo(inputTokens, outputTokens));
+        uso.setExito(exito);
+        uso.setFecha(LocalDateTime.now());
+
+        usoIaRepository.save(uso);
+    }
+
+    /**
+     * Verifica la cuota del dueño del diseño antes de encolar o llamar al modelo
+     */
+    @Transactional(readOnly = true)
+    public void checkQuotaForDiseno(Integer disenoId) {
+        if (!quotasEnabled()) {
+            return;
+        }
+        disenoRepository.findUsuarioIdById(disenoId).ifPresent(this::checkQuota);
+    }
+
+    @Transactional(readOnly = true)
+    public void checkQuota(UUID usuarioId) {
+        if (!quotasEnabled()) {
+            return;
+        }
+        CuotaUsoDTO cuota = getCuotaHoy(usuarioId);
+        if (cuota.isExcedida()) {
+            log.warn("🚫 Cuota diaria de IA agotada para usuario {} ({} imágenes, {} tokens)",
+                    usuarioId, cuota.getImagenes(), cuota.getTokens());
+            throw new QuotaExceededException("Se alcanzó la cuota diaria de generación con IA, intente mañana");
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public CuotaUsoDTO getCuotaHoy(UUID usuarioId) {
+        LocalDate hoy = LocalDate.now();
+        UsoIaRepository.UsoAcumulado acumulado = usoIaRepository.sumarDesde(usuarioId, hoy.atStartOfDay());
+
+        boolean excedida = (dailyImagesPerUser > 0 && acumulado.getImagenes() >= dailyImagesPerUser)
+                || (dailyTokensPerUser > 0 && acumulado.getTokens() >= dailyTokensPerUser);
+
+        return CuotaUsoDTO.builder()
+                .usuarioId(usuarioId)
+                .dia(hoy)
+                .imagenes(acumulado.getImagenes())
+                .tokens(acumulado.getTokens())
+                .costoUsd(acumulado.getCostoUsd())
+                .limiteImagenes(dailyImagesPerUser > 0 ? dailyImagesPerUser : null)
+                .limiteTokens(dailyTokensPerUser > 0 ? dailyTokensPerUser : null)
+                .excedida(excedida)
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public List<UsoDiarioDTO> listarDiario(UUID usuarioId, LocalDate desde, LocalDate hasta) {
+        List<UsoIaDiario> filas = usuarioId == null
+                ? usoIaDiarioRepository.findByDiaBetweenOrderByDiaAscUsuarioIdAsc(desde, hasta)
+                : usoIaDiarioRepository.findByUsuarioIdAndDiaBetweenOrderByDiaAsc(usuarioId, desde, hasta);
+        return filas.stream().map(this::toDto).collect(Collectors.toList());
+    }
+
+    /**
+     * Consolida ayer y hoy completos: cubre las filas que llegaron tarde
+     * alrededor de medianoche y es idempotente.
+     */
+    @Scheduled(fixedRateString = "${ia.usage.rollup-interval-ms:300000}", initialDelay = 60000)
+    @Transactional
+    public void rollup() {
+        LocalDateTime desde = LocalDate.now().minusDays(1).atStartOfDay();
+        int filas = usoIaRepository.consolidarDiasDesde(desde);
+        log.debug("📊 Rollup de uso de IA: {} filas diarias actualizadas desde {}", filas, desde);
+    }
+
+    public boolean quotasEnabled() {
+        return dailyImagesPerUser > 0 || dailyTokensPerUser > 0;
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private BigDecimal costo(int inputTokens, int outputTokens) {
+        return inputUsdPerMillion.multiply(BigDecimal.valueOf(inputTokens))
+                .add(outputUsdPerMillion.multiply(BigDecimal.valueOf(outputTokens)))
+                .divide(MILLON, 6, RoundingMode.HALF_UP);
+    }
+
+    private UsoDiarioDTO toDto(UsoIaDiario fila) {
+        return UsoDiarioDTO.builder()
+                .usuarioId(fila.getUsuarioId())
+                .dia(fila.getDia())
+                .llamadas(fila.getLlamadas())
+                .fallidas(fila.getFallidas())
+                .inputTokens(fila.getInputTokens())
+                .outputTokens(fila.getOutputTokens())
+                .inputBytes(fila.getInputBytes())
+                .outputBytes(fila.getOutputBytes())
+                .latenciaPromedioMs(fila.getLlamadas() == 0 ? 0 : fila.getLatenciaTotalMs() / fila.getLlamadas())
+                .costoUsd(fila.getCostoUsd())
+                .build();
+    }
+}
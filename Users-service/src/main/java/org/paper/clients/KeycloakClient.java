@@ -1,24 +1,34 @@
 package org.paper.clients;
 
 import lombok.extern.slf4j.Slf4j;
+import org.paper.clients.keycloak.KeycloakAdminEvent;
+import org.paper.clients.keycloak.KeycloakCredential;
+import org.paper.clients.keycloak.KeycloakRole;
+import org.paper.clients.keycloak.KeycloakUser;
 import org.paper.dto.UsuarioCreateDTO;
 import org.paper.exception.KeycloakException;
 import org.paper.exception.ValidationException;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.function.BiFunction;
 
 /**
  * Cliente para todas las operaciones con Keycloak Admin API.
  * Centraliza toda la comunicación con Keycloak.
+ * Requests y respuestas usan las representaciones tipadas de org.paper.clients.keycloak,
+ * (de)serializadas con el codec compartido KeycloakJson (ver WebClientConfig).
  */
 @Slf4j
 @Component
@@ -26,10 +36,14 @@ public class KeycloakClient {
 
     private final WebClient webClient;
     private final String realm;
+    private final int pageSize;
 
-    public KeycloakClient(WebClient webClient, @Value("${keycloak.realm}") String realm) {
+    public KeycloakClient(WebClient webClient,
+                          @Value("${keycloak.realm}") String realm,
+                          @Value("${keycloak.page-size:500}") int pageSize) {
         this.webClient = webClient;
         this.realm = realm;
+        this.pageSize = pageSize;
     }
 
     // ==================== GESTIÓN DE USUARIOS ====================
@@ -39,11 +53,11 @@ public class KeycloakClient {
      */
     public String obtenerUserId(String username, String token) {
         try {
-            List<Map<String, Object>> users = webClient.get()
-                    .uri("/admin/realms/{realm}/users?username={username}&exact=true", realm, username)
+            List<KeycloakUser> users = webClient.get()
+                    .uri("/admin/realms/{realm}/users?username={username}&exact=true&briefRepresentation=true", realm, username)
                     .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                     .retrieve()
-                    .bodyToFlux(new ParameterizedTypeReference<Map<String, Object>>() {})
+                    .bodyToFlux(KeycloakUser.class)
                     .collectList()
                     .block();
 
@@ -53,7 +67,7 @@ public class KeycloakClient {
             if (users.size() > 1) {
                 throw new ValidationException("username", "Múltiples usuarios encontrados con el mismo nombre");
             }
-            return (String) users.get(0).get("id");
+            return users.get(0).id();
         } catch (WebClientResponseException e) {
             throw new KeycloakException("obtener usuario", e.getStatusCode().value(), e.getResponseBodyAsString());
         }
@@ -62,13 +76,13 @@ public class KeycloakClient {
     /**
      * Obtiene información completa de un usuario por ID
      */
-    public Map<String, Object> obtenerUsuarioPorId(String userId, String token) {
+    public KeycloakUser obtenerUsuarioPorId(String userId, String token) {
         try {
             return webClient.get()
                     .uri("/admin/realms/{realm}/users/{id}", realm, userId)
                     .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                     .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                    .bodyToMono(KeycloakUser.class)
                     .block();
         } catch (WebClientResponseException e) {
             log.error("Error obteniendo usuario por ID {}: {}", userId, e.getMessage());
@@ -76,16 +90,31 @@ public class KeycloakClient {
         }
     }
 
+    /**
+     * Versión no bloqueante de obtenerUsuarioPorId, para componer varias llamadas en un pipeline.
+     * Vacío si el usuario no existe.
+     */
+    public Mono<KeycloakUser> obtenerUsuarioPorIdAsync(String userId, String token) {
+        return webClient.get()
+                .uri("/admin/realms/{realm}/users/{id}", realm, userId)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .retrieve()
+                .bodyToMono(KeycloakUser.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty())
+                .onErrorMap(WebClientResponseException.class, e -> new KeycloakException(
+                        "obtener usuario por ID", e.getStatusCode().value(), e.getResponseBodyAsString()));
+    }
+
     /**
      * Busca usuario por email
      */
-    public Map<String, Object> buscarUsuarioPorEmail(String email, String token) {
+    public KeycloakUser buscarUsuarioPorEmail(String email, String token) {
         try {
-            List<Map<String, Object>> users = webClient.get()
+            List<KeycloakUser> users = webClient.get()
                     .uri("/admin/realms/{realm}/users?email={email}&exact=true", realm, email)
                     .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                     .retrieve()
-                    .bodyToFlux(new ParameterizedTypeReference<Map<String, Object>>() {})
+                    .bodyToFlux(KeycloakUser.class)
                     .collectList()
                     .block();
 
@@ -100,40 +129,55 @@ public class KeycloakClient {
     }
 
     /**
-     * Crea un nuevo usuario en Keycloak
+     * Crea un nuevo usuario en Keycloak y devuelve su ID.
+     * Keycloak responde 201 con el ID al final del header Location (.../users/{id}), así no hace
+     * falta buscarlo por username. Si el username o el email ya existen responde 409.
      */
-    public void crearUsuario(UsuarioCreateDTO usuario, String token) {
-        String jsonBody = String.format(
-                "{ \"username\":\"%s\", \"enabled\":%b, \"email\":\"%s\", \"emailVerified\":%b, \"attributes\": { \"razonSocial\": [\"%s\"] } }",
-                usuario.getUsername(), usuario.isEnabled(), usuario.getEmail(), usuario.isEmailVerified(), usuario.getRazonSocial()
-        );
+    public String crearUsuario(UsuarioCreateDTO usuario, String token) {
+        ResponseEntity<Void> response;
         try {
-            webClient.post()
+            response = webClient.post()
                     .uri("/admin/realms/{realm}/users", realm)
                     .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                     .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(jsonBody)
+                    .bodyValue(KeycloakUser.nuevo(usuario))
                     .retrieve()
                     .toBodilessEntity()
                     .block();
-
-            log.info("Usuario {} creado en Keycloak", usuario.getUsername());
         } catch (WebClientResponseException e) {
             throw new KeycloakException("crear usuario", e.getStatusCode().value(), e.getResponseBodyAsString());
         }
+
+        URI location = response != null ? response.getHeaders().getLocation() : null;
+        String userId;
+        if (location != null && location.getPath().lastIndexOf('/') >= 0) {
+            userId = location.getPath().substring(location.getPath().lastIndexOf('/') + 1);
+        } else {
+            // No debería pasar con Keycloak, pero un proxy intermedio podría descartar el header
+            log.warn("⚠️ Keycloak no devolvió Location al crear {}, se busca el ID por username", usuario.getUsername());
+            userId = obtenerUserId(usuario.getUsername(), token);
+        }
+        if (userId == null || userId.isEmpty()) {
+            throw new KeycloakException("obtener UUID", "No se pudo obtener el identificador del usuario creado");
+        }
+
+        log.info("Usuario {} creado en Keycloak con ID: {}", usuario.getUsername(), userId);
+        return userId;
     }
 
     /**
-     * Lista todos los usuarios del realm
+     * Lista todos los usuarios del realm.
+     * Keycloak devuelve como máximo 100 por defecto, por eso se recorre paginado.
+     * Con briefRepresentation=false para traer los atributos en el mismo listado.
      */
-    public List<Map<String, Object>> listarUsuarios(String token) {
-        return webClient.get()
-                .uri("/admin/realms/{realm}/users", realm)
+    public List<KeycloakUser> listarUsuarios(String token) {
+        return listarPaginado((first, max) -> webClient.get()
+                .uri("/admin/realms/{realm}/users?first={first}&max={max}&briefRepresentation=false", realm, first, max)
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                 .retrieve()
-                .bodyToFlux(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .bodyToFlux(KeycloakUser.class)
                 .collectList()
-                .block();
+                .block());
     }
 
     /**
@@ -154,6 +198,30 @@ public class KeycloakClient {
         }
     }
 
+    // ==================== EVENTOS DE ADMINISTRACIÓN ====================
+
+    /**
+     * Eventos de administración sobre usuarios y sus roles desde una fecha (inclusive).
+     * Requiere "Save admin events" habilitado en el realm; si no, Keycloak devuelve una lista vacía.
+     */
+    public List<KeycloakAdminEvent> listarEventosAdmin(LocalDate desde, String token) {
+        return listarPaginado((first, max) -> {
+            try {
+                return webClient.get()
+                        .uri("/admin/realms/{realm}/admin-events?dateFrom={desde}&resourceTypes=USER"
+                                        + "&resourceTypes=REALM_ROLE_MAPPING&first={first}&max={max}",
+                                realm, desde, first, max)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .retrieve()
+                        .bodyToFlux(KeycloakAdminEvent.class)
+                        .collectList()
+                        .block();
+            } catch (WebClientResponseException e) {
+                throw new KeycloakException("listar eventos de administración", e.getStatusCode().value(), e.getResponseBodyAsString());
+            }
+        });
+    }
+
     // ==================== GESTIÓN DE CONTRASEÑAS ====================
 
     /**
@@ -174,17 +242,12 @@ public class KeycloakClient {
      * Cambia la contraseña de un usuario (método genérico)
      */
     public void cambiarPassword(String userId, String password, boolean temporal, String token) {
-        String passwordJson = String.format(
-                "{\"type\":\"password\",\"value\":\"%s\",\"temporary\":%b}",
-                password, temporal
-        );
-
         try {
             webClient.put()
                     .uri("/admin/realms/{realm}/users/{id}/reset-password", realm, userId)
                     .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                     .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(passwordJson)
+                    .bodyValue(KeycloakCredential.password(password, temporal))
                     .retrieve()
                     .toBodilessEntity()
                     .block();
@@ -200,32 +263,63 @@ public class KeycloakClient {
     /**
      * Lista los roles de realm asignados a un usuario
      */
-    public List<Map<String, Object>> listarRolesDeUsuario(String userId, String token) {
+    public List<KeycloakRole> listarRolesDeUsuario(String userId, String token) {
+        return listarRolesDeUsuarioAsync(userId, token).block();
+    }
+
+    /**
+     * Versión no bloqueante de listarRolesDeUsuario
+     */
+    public Mono<List<KeycloakRole>> listarRolesDeUsuarioAsync(String userId, String token) {
         return webClient.get()
                 .uri("/admin/realms/{realm}/users/{userId}/role-mappings/realm", realm, userId)
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                 .retrieve()
-                .bodyToFlux(new ParameterizedTypeReference<Map<String, Object>>() {})
-                .collectList()
-                .block();
+                .bodyToFlux(KeycloakRole.class)
+                .collectList();
+    }
+
+    /**
+     * Lista todos los usuarios que tienen asignado un rol de realm (paginado)
+     */
+    public List<KeycloakUser> listarUsuariosConRol(String roleName, String token) {
+        return listarPaginado((first, max) -> listarUsuariosConRol(roleName, first, max, token));
+    }
+
+    /**
+     * Una página de los usuarios con un rol de realm, con sus atributos
+     */
+    public List<KeycloakUser> listarUsuariosConRol(String roleName, int first, int max, String token) {
+        try {
+            return webClient.get()
+                    .uri("/admin/realms/{realm}/roles/{roleName}/users?first={first}&max={max}&briefRepresentation=false",
+                            realm, roleName, first, max)
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                    .retrieve()
+                    .bodyToFlux(KeycloakUser.class)
+                    .collectList()
+                    .block();
+        } catch (WebClientResponseException e) {
+            throw new KeycloakException("listar usuarios del rol " + roleName, e.getStatusCode().value(), e.getResponseBodyAsString());
+        }
     }
 
     /**
      * Obtiene información de un rol por nombre
      */
-    public Map<String, Object> obtenerRolPorNombre(String roleName, String token) {
+    public KeycloakRole obtenerRolPorNombre(String roleName, String token) {
         return webClient.get()
                 .uri("/admin/realms/{realm}/roles/{roleName}", realm, roleName)
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                 .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .bodyToMono(KeycloakRole.class)
                 .block();
     }
 
     /**
      * Agrega roles de realm a un usuario
      */
-    public void agregarRolesAUsuario(String userId, List<Map<String, Object>> roles, String token) {
+    public void agregarRolesAUsuario(String userId, List<KeycloakRole> roles, String token) {
         webClient.post()
                 .uri("/admin/realms/{realm}/users/{userId}/role-mappings/realm", realm, userId)
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
@@ -238,7 +332,7 @@ public class KeycloakClient {
     /**
      * Elimina roles de realm de un usuario
      */
-    public void eliminarRolesDeUsuario(String userId, List<Map<String, Object>> roles, String token) {
+    public void eliminarRolesDeUsuario(String userId, List<KeycloakRole> roles, String token) {
         webClient.method(HttpMethod.DELETE)
                 .uri("/admin/realms/{realm}/users/{userId}/role-mappings/realm", realm, userId)
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
@@ -257,19 +351,16 @@ public class KeycloakClient {
     public void eliminarRequiredAction(String userId, String action, String token) {
         try {
             // 1. Obtener el usuario actual
-            Map<String, Object> user = obtenerUsuarioPorId(userId, token);
-
-            // 2. Obtener las required actions actuales
-            @SuppressWarnings("unchecked")
-            List<String> requiredActions = (List<String>) user.get("requiredActions");
+            KeycloakUser user = obtenerUsuarioPorId(userId, token);
 
-            // 3. Si no tiene required actions, no hacer nada
-            if (requiredActions == null || requiredActions.isEmpty()) {
+            // 2. Si no tiene required actions, no hacer nada
+            if (user.requiredActions() == null || user.requiredActions().isEmpty()) {
                 log.debug("Usuario {} no tiene required actions", userId);
                 return;
             }
 
-            // 4. Eliminar la action especificada
+            // 3. Eliminar la action especificada
+            List<String> requiredActions = new ArrayList<>(user.requiredActions());
             boolean removed = requiredActions.remove(action);
 
             if (!removed) {
@@ -277,12 +368,12 @@ public class KeycloakClient {
                 return;
             }
 
-            // 5. Actualizar el usuario con las nuevas required actions
+            // 4. Actualizar el usuario con las nuevas required actions
             webClient.put()
                     .uri("/admin/realms/{realm}/users/{id}", realm, userId)
                     .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                     .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(Map.of("requiredActions", requiredActions))
+                    .bodyValue(KeycloakUser.conRequiredActions(requiredActions))
                     .retrieve()
                     .toBodilessEntity()
                     .block();
@@ -300,14 +391,11 @@ public class KeycloakClient {
      */
     public void agregarRequiredAction(String userId, String action, String token) {
         try {
-            Map<String, Object> user = obtenerUsuarioPorId(userId, token);
+            KeycloakUser user = obtenerUsuarioPorId(userId, token);
 
-            @SuppressWarnings("unchecked")
-            List<String> requiredActions = (List<String>) user.get("requiredActions");
-
-            if (requiredActions == null) {
-                requiredActions = new java.util.ArrayList<>();
-            }
+            List<String> requiredActions = user.requiredActions() != null
+                    ? new ArrayList<>(user.requiredActions())
+                    : new ArrayList<>();
 
             if (!requiredActions.contains(action)) {
                 requiredActions.add(action);
@@ -317,7 +405,7 @@ public class KeycloakClient {
                     .uri("/admin/realms/{realm}/users/{id}", realm, userId)
                     .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
                     .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(Map.of("requiredActions", requiredActions))
+                    .bodyValue(KeycloakUser.conRequiredActions(requiredActions))
                     .retrieve()
                     .toBodilessEntity()
                     .block();
@@ -335,16 +423,33 @@ public class KeycloakClient {
      */
     public boolean tieneRequiredAction(String userId, String action, String token) {
         try {
-            Map<String, Object> user = obtenerUsuarioPorId(userId, token);
-
-            @SuppressWarnings("unchecked")
-            List<String> requiredActions = (List<String>) user.get("requiredActions");
-
-            return requiredActions != null && requiredActions.contains(action);
+            return obtenerUsuarioPorId(userId, token).tieneRequiredAction(action);
 
         } catch (Exception e) {
             log.error("Error verificando required actions: {}", e.getMessage());
             return false;
         }
     }
-}
\ No newline at end of file
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    /**
+     * Recorre un endpoint paginado con first/max hasta recibir una página incompleta
+     */
+    private <T> List<T> listarPaginado(BiFunction<Integer, Integer, List<T>> pagina) {
+        List<T> resultado = new ArrayList<>();
+        int first = 0;
+        while (true) {
+            List<T> items = pagina.apply(first, pageSize);
+            if (items == null || items.isEmpty()) {
+                break;
+            }
+            resultado.addAll(items);
+            if (items.size() < pageSize) {
+                break;
+            }
+            first += pageSize;
+        }
+        return resultado;
+    }
+}
@@ -0,0 +1,87 @@
+package org.paper.clients;
+
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ejecuta en paralelo llamadas bloqueantes a Keycloak (una por elemento),
+ * con un máximo de llamadas simultáneas para no saturar a Keycloak.
+ * El resultado respeta el orden de entrada.
+ *
+ * Un map llamado desde adentro de otro (la función de un elemento vuelve a hacer fan-out) corre
+ * en el mismo thread, de a uno: ese thread ya tiene un permiso y uno del pool, y esperar otros
+ * podría trabar todo si los que los tienen están esperando lo mismo.
+ */
+@Slf4j
+@Component
+public class KeycloakFanOut {
+
+    private final ExecutorService executor;
+    private final Semaphore permisos;
+    // true mientras el thread ejecuta un elemento de un fan-out
+    private final ThreadLocal<Boolean> dentroDeFanOut = ThreadLocal.withInitial(() -> false);
+
+    public KeycloakFanOut(@Qualifier("keycloakExecutor") ExecutorService executor,
+                          @Value("${app.keycloak.fan-out.max-concurrency:16}") int maxConcurrency) {
+        this.executor = executor;
+        this.permisos = new Semaphore(maxConcurrency);
+    }
+
+    public <T, R> List<R> map(List<T> items, Function<T, R> function) {
+        if (items.size() <= 1 || dentroDeFanOut.get()) {
+            return items.stream().map(function).collect(Collectors.toList());
+        }
+
+        // El correlationId del request tiene que seguir apareciendo en los logs de cada llamada
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        List<CompletableFuture<R>> futures = items.stream()
+                .map(item -> CompletableFuture.supplyAsync(() -> conPermiso(mdc, function, item), executor))
+                .collect(Collectors.toList());
+
+        try {
+            return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private <T, R> R conPermiso(Map<String, String> mdc, Function<T, R> function, T item) {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        try {
+            permisos.acquire();
+            dentroDeFanOut.set(true);
+            try {
+                return function.apply(item);
+            } finally {
+                dentroDeFanOut.set(false);
+                permisos.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } finally {
+            MDC.clear();
+        }
+    }
+}
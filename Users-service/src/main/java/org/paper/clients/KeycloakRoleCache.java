@@ -0,0 +1,175 @@
+package org.paper.clients;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.clients.keycloak.KeycloakRole;
+import org.paper.exception.KeycloakException;
+import org.paper.exception.ValidationException;
+import org.paper.services.KeycloakAdminService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache de roles de Keycloak para los caminos calientes (cambio de rol, asignación de diseñador, listados):
+ *
+ * - Catálogo: la representación de cada rol de realm por nombre. Casi nunca cambia;
+ *   se refresca completo cada tanto por si un rol se borra y se vuelve a crear (cambia su id).
+ *   Si una asignación falla antes del refresco, asignarRol descarta la entrada y reintenta
+ * - Roles por usuario: TTL corto. Los cambios hechos por la aplicación invalidan la entrada
+ *   (ver UsuarioService); el TTL acota cuánto tarda en verse un cambio hecho desde la consola de Keycloak
+ */
+@Slf4j
+@Component
+public class KeycloakRoleCache {
+
+    private final KeycloakClient keycloakClient;
+    private final KeycloakAdminService keycloakAdminService;
+    private final long userTtlMs;
+    private final int userMaxEntries;
+
+    private final Map<String, KeycloakRole> catalogo = new ConcurrentHashMap<>();
+    private final Map<String, RolesDeUsuario> rolesPorUsuario = new ConcurrentHashMap<>();
+    // Cambia con cada invalidación: una lectura que empezó antes no se guarda (podría traer los roles viejos)
+    private final AtomicLong invalidaciones = new AtomicLong();
+
+    public KeycloakRoleCache(KeycloakClient keycloakClient,
+                             KeycloakAdminService keycloakAdminService,
+                             @Value("${app.keycloak.role-cache.user-ttl-ms:30000}") long userTtlMs,
+                             @Value("${app.keycloak.role-cache.user-max-entries:10000}") int userMaxEntries) {
+        this.keycloakClient = keycloakClient;
+        this.keycloakAdminService = keycloakAdminService;
+        this.userTtlMs = userTtlMs;
+        this.userMaxEntries = userMaxEntries;
+    }
+
+    /**
+     * Representación del rol de realm (null si no existe en Keycloak; no se cachea)
+     */
+    public KeycloakRole rol(String nombre, String token) {
+        KeycloakRole rol = catalogo.get(nombre);
+        if (rol == null) {
+            rol = keycloakClient.obtenerRolPorNombre(nombre, token);
+            if (rol != null) {
+                catalogo.put(nombre, rol);
+            }
+        }
+        return rol;
+    }
+
+    /**
+     * Roles de realm asignados al usuario, de la cache si la entrada no venció
+     */
+    public List<KeycloakRole> rolesDeUsuario(String userId, String token) {
+        return rolesDeUsuarioAsync(userId, token).block();
+    }
+
+    /**
+     * Versión no bloqueante de rolesDeUsuario: si están en cache no hay llamada a Keycloak
+     */
+    public Mono<List<KeycloakRole>> rolesDeUsuarioAsync(String userId, String token) {
+        long ahora = System.currentTimeMillis();
+        RolesDeUsuario entrada = rolesPorUsuario.get(userId);
+        if (entrada != null && entrada.expiraEn > ahora) {
+            return Mono.just(entrada.roles);
+        }
+
+        long version = invalidaciones.get();
+        return keycloakClient.listarRolesDeUsuarioAsync(userId, token)
+                .map(roles -> {
+                    List<KeycloakRole> copia = List.copyOf(roles);
+                    guardar(userId, copia, version, ahora);
+                    return copia;
+                });
+    }
+
+    /**
+     * Descarta los roles cacheados de un usuario (llamar después de cada cambio de roles o baja)
+     */
+    public void invalidar(String userId) {
+        invalidaciones.incrementAndGet();
+        rolesPorUsuario.remove(userId);
+    }
+
+    /**
+     * Asigna el rol de realm (del catálogo) a un usuario. Un 404 o 409 puede venir de un id viejo
+     * (el rol se borró y se volvió a crear en Keycloak): se descarta esa entrada y se reintenta una vez
+     * con el rol releído. Solo se descarta si sigue siendo la misma, para que altas en paralelo
+     * (importación masiva) no tiren la que otra ya releyó
+     */
+    public void asignarRol(String userId, String nombre, String token) {
+        KeycloakRole rol = rolExistente(nombre, token);
+        try {
+            keycloakClient.agregarRolesAUsuario(userId, List.of(rol), token);
+        } catch (WebClientResponseException.NotFound | WebClientResponseException.Conflict e) {
+            log.warn("⚠️ Keycloak rechazó el rol {} ({}), se relee del catálogo y se reintenta",
+                    nombre, e.getStatusCode().value());
+            catalogo.remove(nombre, rol);
+            keycloakClient.agregarRolesAUsuario(userId, List.of(rolExistente(nombre, token)), token);
+        }
+    }
+
+    /**
+     * Vuelve a leer los roles ya conocidos del catálogo
+     */
+    @Scheduled(initialDelayString = "${app.keycloak.role-cache.catalog-refresh-ms:600000}",
+            fixedDelayString = "${app.keycloak.role-cache.catalog-refresh-ms:600000}")
+    public void refrescarCatalogo() {
+        purgarVencidos();
+        if (catalogo.isEmpty()) {
+            return;
+        }
+
+        try {
+            String token = keycloakAdminService.getAdminToken();
+            Map<String, KeycloakRole> nuevos = new HashMap<>();
+            for (String nombre : catalogo.keySet()) {
+                KeycloakRole rol = keycloakClient.obtenerRolPorNombre(nombre, token);
+                if (rol != null) {
+                    nuevos.put(nombre, rol);
+                }
+            }
+            catalogo.keySet().retainAll(nuevos.keySet());
+            catalogo.putAll(nuevos);
+            log.debug("🔄 Catálogo de roles de Keycloak refrescado: {}", nuevos.keySet());
+        } catch (KeycloakException | WebClientException e) {
+            // Se sigue usando el catálogo anterior; se reintenta en el próximo ciclo
+            log.warn("⚠️ No se pudo refrescar el catálogo de roles: {}", e.getMessage());
+        }
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private KeycloakRole rolExistente(String nombre, String token) {
+        KeycloakRole rol = rol(nombre, token);
+        if (rol == null) {
+            throw new ValidationException("rol", "El rol '" + nombre + "' no existe");
+        }
+        return rol;
+    }
+
+    private void guardar(String userId, List<KeycloakRole> roles, long version, long ahora) {
+        if (rolesPorUsuario.size() >= userMaxEntries) {
+            purgarVencidos();
+        }
+        if (version == invalidaciones.get() && rolesPorUsuario.size() < userMaxEntries) {
+            rolesPorUsuario.put(userId, new RolesDeUsuario(roles, ahora + userTtlMs));
+        }
+    }
+
+    private void purgarVencidos() {
+        long ahora = System.currentTimeMillis();
+        rolesPorUsuario.values().removeIf(entrada -> entrada.expiraEn <= ahora);
+    }
+
+    private record RolesDeUsuario(List<KeycloakRole> roles, long expiraEn) {
+    }
+}
@@ -0,0 +1,14 @@
+package org.paper.clients.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * AdminEventRepresentation (sin la representación del recurso, que no se pide)
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record KeycloakAdminEvent(
+        long time,
+        String operationType,
+        String resourceType,
+        String resourcePath) {
+}
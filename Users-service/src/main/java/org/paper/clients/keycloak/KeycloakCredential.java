@@ -0,0 +1,20 @@
+package org.paper.clients.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * CredentialRepresentation para reset-password
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record KeycloakCredential(String type, String value, Boolean temporary) {
+
+    public static KeycloakCredential password(String value, boolean temporary) {
+        return new KeycloakCredential("password", value, temporary);
+    }
+
+    // Que la contraseña no termine en un log
+    @Override
+    public String toString() {
+        return "KeycloakCredential[type=" + type + ", temporary=" + temporary + "]";
+    }
+}
@@ -0,0 +1,42 @@
+package org.paper.clients.keycloak;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+
+/**
+ * Codec JSON compartido para la Admin API de Keycloak.
+ *
+ * Un único ObjectMapper, armado una vez: los serializadores de los records se resuelven y cachean
+ * en el primer uso, y Blackbird reemplaza la reflexión por accessors generados.
+ * Es independiente del ObjectMapper de Spring MVC (no cambia cómo se serializa la API propia).
+ */
+public final class KeycloakJson {
+
+    public static final ObjectMapper MAPPER = JsonMapper.builder()
+            .addModule(new BlackbirdModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .build();
+
+    private KeycloakJson() {
+    }
+
+    /**
+     * Estrategias del WebClient de Keycloak con el codec compartido
+     */
+    public static ExchangeStrategies exchangeStrategies() {
+        return ExchangeStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(MAPPER, MediaType.APPLICATION_JSON));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(MAPPER, MediaType.APPLICATION_JSON));
+                })
+                .build();
+    }
+}
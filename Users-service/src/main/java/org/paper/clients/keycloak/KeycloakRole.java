@@ -0,0 +1,18 @@
+package org.paper.clients.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * RoleRepresentation de la Admin API. Se reenvía tal cual al asignar o quitar roles (requiere id y name).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record KeycloakRole(
+        String id,
+        String name,
+        String description,
+        Boolean composite,
+        Boolean clientRole,
+        String containerId) {
+}
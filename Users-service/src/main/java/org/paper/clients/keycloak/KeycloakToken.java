@@ -0,0 +1,18 @@
+package org.paper.clients.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Respuesta del endpoint de token (client_credentials)
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record KeycloakToken(
+        @JsonProperty("access_token") String accessToken,
+        @JsonProperty("expires_in") long expiresIn) {
+
+    @Override
+    public String toString() {
+        return "KeycloakToken[expiresIn=" + expiresIn + "]";
+    }
+}
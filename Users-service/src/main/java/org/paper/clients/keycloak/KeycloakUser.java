@@ -0,0 +1,68 @@
+package org.paper.clients.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.paper.dto.UsuarioCreateDTO;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UserRepresentation de la Admin API de Keycloak (solo los campos que usa la aplicación).
+ * Los campos null no se envían: un PUT con solo requiredActions no toca el resto del usuario.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record KeycloakUser(
+        String id,
+        String username,
+        String email,
+        Boolean enabled,
+        Boolean emailVerified,
+        Long createdTimestamp,
+        Map<String, List<String>> attributes,
+        List<String> requiredActions) {
+
+    public static final String ATRIBUTO_RAZON_SOCIAL = "razonSocial";
+
+    /**
+     * Representación para dar de alta un usuario (sin contraseña: la establece al activar la cuenta)
+     */
+    public static KeycloakUser nuevo(UsuarioCreateDTO usuario) {
+        return new KeycloakUser(null, usuario.getUsername(), usuario.getEmail(),
+                usuario.isEnabled(), usuario.isEmailVerified(), null,
+                Map.of(ATRIBUTO_RAZON_SOCIAL, List.of(usuario.getRazonSocial())), null);
+    }
+
+    /**
+     * Actualización parcial que solo reemplaza las required actions
+     */
+    public static KeycloakUser conRequiredActions(List<String> requiredActions) {
+        return new KeycloakUser(null, null, null, null, null, null, null, requiredActions);
+    }
+
+    /**
+     * Actualización parcial que solo cambia emailVerified
+     */
+    public static KeycloakUser conEmailVerificado(boolean emailVerified) {
+        return new KeycloakUser(null, null, null, null, emailVerified, null, null, null);
+    }
+
+    /**
+     * Razón social guardada como atributo ("" si no tiene)
+     */
+    public String razonSocial() {
+        List<String> valores = attributes != null ? attributes.get(ATRIBUTO_RAZON_SOCIAL) : null;
+        return valores != null && !valores.isEmpty() ? valores.get(0) : "";
+    }
+
+    @JsonIgnore
+    public boolean isEmailVerificado() {
+        return Boolean.TRUE.equals(emailVerified);
+    }
+
+    public boolean tieneRequiredAction(String action) {
+        return requiredActions != null && requiredActions.contains(action);
+    }
+}
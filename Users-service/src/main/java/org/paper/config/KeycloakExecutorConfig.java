@@ -0,0 +1,81 @@
+package org.paper.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor para las llamadas bloqueantes a Keycloak (fan-out de listados).
+ *
+ * Con app.virtual-threads.enabled=true y un JRE 21+ se usan virtual threads, tanto para
+ * el fan-out como para atender requests en Tomcat. Con un JRE anterior se cae a un pool
+ * de threads de plataforma: el código compila con Java 17 y el modo se elige al arrancar.
+ */
+@Slf4j
+@Configuration
+public class KeycloakExecutorConfig {
+
+    @Bean(name = "keycloakExecutor", destroyMethod = "shutdown")
+    public ExecutorService keycloakExecutor(
+            @Value("${app.virtual-threads.enabled:false}") boolean virtualThreads,
+            @Value("${app.keycloak.fan-out.pool-size:16}") int poolSize) {
+
+        if (virtualThreads) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                log.info("🧵 Llamadas a Keycloak sobre virtual threads");
+                return virtual;
+            }
+            log.warn("⚠️ app.virtual-threads.enabled=true pero el JRE {} no soporta virtual threads. Se usa un pool de {} threads",
+                    Runtime.version().feature(), poolSize);
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Atiende los requests HTTP en virtual threads (un thread por request, sin pool de Tomcat)
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.virtual-threads.enabled", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler() {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        return protocolHandler -> {
+            if (virtual != null) {
+                protocolHandler.setExecutor(virtual);
+                log.info("🧵 Requests HTTP atendidos con virtual threads");
+            }
+        };
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() por reflexión, para no exigir Java 21 al compilar
+     *
+     * @return null si el JRE no tiene virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (Runtime.version().feature() < 21) {
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+}
@@ -1,23 +1,68 @@
 package org.paper.config;
 
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.WriteTimeoutHandler;
 import lombok.extern.slf4j.Slf4j;
+import org.paper.clients.keycloak.KeycloakJson;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Configuration
 public class WebClientConfig {
 
+    /**
+     * Pool de conexiones hacia Keycloak, acotado: si Keycloak se pone lento, los requests
+     * esperan un tiempo limitado por una conexión y fallan, en lugar de acumularse sin fin.
+     * Con metrics(true) publica reactor.netty.connection.provider.* (activas, ociosas, pendientes).
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider keycloakConnectionProvider(
+            @Value("${webclient.pool.max-connections:50}") int maxConnections,
+            @Value("${webclient.pool.pending-acquire-max-count:200}") int pendingAcquireMaxCount,
+            @Value("${webclient.pool.pending-acquire-timeout:3000}") long pendingAcquireTimeoutMs,
+            @Value("${webclient.pool.max-idle-time:30000}") long maxIdleTimeMs,
+            @Value("${webclient.pool.max-life-time:300000}") long maxLifeTimeMs) {
+        return ConnectionProvider.builder("keycloak")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                // Keycloak (o un proxy en el medio) cierra las conexiones ociosas: se descartan antes
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+                .evictInBackground(Duration.ofMillis(maxIdleTimeMs))
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClient webClient(@Value("${keycloak.server-url}") String serverUrl) {
+    public WebClient webClient(@Value("${keycloak.server-url}") String serverUrl,
+                               ConnectionProvider keycloakConnectionProvider,
+                               @Value("${webclient.connect-timeout:5000}") int connectTimeoutMs,
+                               @Value("${webclient.read-timeout:10000}") long readTimeoutMs) {
+        HttpClient httpClient = HttpClient.create(keycloakConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofMillis(readTimeoutMs))
+                .doOnConnected(connection -> connection
+                        .addHandlerLast(new WriteTimeoutHandler(readTimeoutMs, TimeUnit.MILLISECONDS)));
+
         return WebClient.builder()
                 .baseUrl(serverUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                // Codec Jackson propio para las representaciones de Keycloak
+                .exchangeStrategies(KeycloakJson.exchangeStrategies())
                 .filter((request, next) -> {
                     // Log del request
                     log.debug("Haciendo request a: {} {}", request.method(), request.url());
@@ -2,23 +2,30 @@ package org.paper.controllers;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.paper.dto.ErrorResponse;
+import org.paper.dto.ImportacionUsuariosResponseDTO;
 import org.paper.dto.UsuarioCreateDTO;
 import org.paper.dto.UsuarioResponseDTO;
 import org.paper.repository.UsuarioRepository;
+import org.paper.services.UsuarioImportService;
 import org.paper.services.UsuarioService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
 
@@ -31,11 +38,14 @@ public class UsuarioController {
 
     private final UsuarioService usuarioService;
     private final UsuarioRepository usuarioRepository;
+    private final UsuarioImportService usuarioImportService;
 
     public UsuarioController(UsuarioService usuarioService,
-                             UsuarioRepository usuarioRepository) {
+                             UsuarioRepository usuarioRepository,
+                             UsuarioImportService usuarioImportService) {
         this.usuarioService = usuarioService;
         this.usuarioRepository = usuarioRepository;
+        this.usuarioImportService = usuarioImportService;
     }
 
     @PostMapping("/create")
@@ -98,6 +108,55 @@ public class UsuarioController {
         return usuarioService.crearUsuario(usuarioDTO);
     }
 
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Importación masiva de usuarios (solo ADMIN)",
+            description = """
+            Crea muchos usuarios en un solo request (por ejemplo, al dar de alta un cliente corporativo).
+            
+            - Se validan todas las filas antes de crear ninguna
+            - Las altas en Keycloak se hacen en paralelo
+            - Cada usuario creado recibe su email de activación (se envía en segundo plano)
+            - Una fila con error no frena al resto: la respuesta trae el resultado de cada fila
+              (CREADO, INVALIDO, EXISTENTE o ERROR)
+            
+            También acepta un CSV (`Content-Type: text/csv`), ver el endpoint equivalente.
+            """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Importación procesada (ver el resultado de cada fila)"),
+            @ApiResponse(responseCode = "400", description = "Importación vacía o con más filas que el máximo permitido",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Sin permisos (solo ADMIN)")
+    })
+    public ResponseEntity<ImportacionUsuariosResponseDTO> importarUsuarios(
+            @Parameter(hidden = true) @RequestHeader(value = "X-User-Roles", required = false) String roles,
+            @RequestBody List<UsuarioCreateDTO> usuarios) {
+        if (roles == null || !roles.contains("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(usuarioImportService.importar(usuarios));
+    }
+
+    @PostMapping(value = "/bulk", consumes = "text/csv")
+    @Operation(
+            summary = "Importación masiva de usuarios desde CSV (solo ADMIN)",
+            description = """
+            Igual que la importación JSON, con el archivo CSV como body del request (UTF-8).
+            
+            **Cabecera:** `username,email,razonSocial,rol,disenadorId` (disenadorId es opcional).
+            Se acepta `;` como separador y valores entre comillas dobles.
+            """
+    )
+    public ResponseEntity<ImportacionUsuariosResponseDTO> importarUsuariosCsv(
+            @Parameter(hidden = true) @RequestHeader(value = "X-User-Roles", required = false) String roles,
+            HttpServletRequest request) throws IOException {
+        if (roles == null || !roles.contains("ADMIN")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(usuarioImportService.importarCsv(request.getInputStream()));
+    }
+
     @PutMapping("/{userId}/rol/admin")
     @Operation(
             summary = "Asignar rol de administrador",
@@ -214,7 +273,9 @@ public class UsuarioController {
     @Operation(
             summary = "Listar todos los usuarios",
             description = """
-            Retorna la lista completa de usuarios del sistema con sus roles y datos básicos.
+            Retorna la lista de usuarios del sistema con sus roles y datos básicos.
+            Con `page` y `size` devuelve solo esa página y el total en el header `X-Total-Count`.
+            Admite búsqueda por prefijo (`q`) y orden (`sort`).
             
             **Requiere:** Rol ADMIN
             """
@@ -222,13 +283,23 @@ public class UsuarioController {
     @ApiResponses({
             @ApiResponse(
                     responseCode = "200",
-                    description = "Lista de usuarios obtenida correctamente"
+                    description = "Lista de usuarios obtenida correctamente",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = UsuarioResponseDTO.class)))
             ),
+            @ApiResponse(responseCode = "400", description = "Parámetros de paginación u orden inválidos"),
             @ApiResponse(responseCode = "401", description = "No autenticado"),
             @ApiResponse(responseCode = "403", description = "Sin permisos")
     })
-    public ResponseEntity<List<UsuarioResponseDTO>> listarUsuarios() {
-        return usuarioService.listarUsuarios();
+    public ResponseEntity<StreamingResponseBody> listarUsuarios(
+            @Parameter(description = "Prefijo a buscar en username, email o razón social (sin distinguir mayúsculas)")
+            @RequestParam(required = false) String q,
+            @Parameter(description = "Orden: username, email o razonSocial, opcionalmente con ,asc o ,desc", example = "username,asc")
+            @RequestParam(required = false) String sort,
+            @Parameter(description = "Número de página (desde 0). Opcional, junto con size")
+            @RequestParam(required = false) Integer page,
+            @Parameter(description = "Tamaño de página (máximo 500)")
+            @RequestParam(required = false) Integer size) {
+        return usuarioService.listarUsuarios(null, q, sort, page, size);
     }
 
     @GetMapping("/list/users/disenadores")
@@ -236,12 +307,23 @@ public class UsuarioController {
             summary = "Listar diseñadores",
             description = """
             Retorna usuarios con rol DISEÑADOR.
+            Con `page` y `size` devuelve solo esa página y el total en el header `X-Total-Count`
+            (recién arrancado el servicio, hasta la primera sincronización, solo en la última página).
+            Admite búsqueda por prefijo (`q`) y orden (`sort`).
             
             **Requiere:** Rol ADMIN
             """
     )
-    public ResponseEntity<List<UsuarioResponseDTO>> listarUsuariosDisenadores() {
-        return usuarioService.listarUsuariosPorRol("DISEÑADOR");
+    public ResponseEntity<StreamingResponseBody> listarUsuariosDisenadores(
+            @Parameter(description = "Prefijo a buscar en username, email o razón social (sin distinguir mayúsculas)")
+            @RequestParam(required = false) String q,
+            @Parameter(description = "Orden: username, email o razonSocial, opcionalmente con ,asc o ,desc", example = "username,asc")
+            @RequestParam(required = false) String sort,
+            @Parameter(description = "Número de página (desde 0). Opcional, junto con size")
+            @RequestParam(required = false) Integer page,
+            @Parameter(description = "Tamaño de página (máximo 500)")
+            @RequestParam(required = false) Integer size) {
+        return usuarioService.listarUsuarios("DISEÑADOR", q, sort, page, size);
     }
 
     @GetMapping("/list/users/clients")
@@ -249,12 +331,23 @@ public class UsuarioController {
             summary = "Listar usuarios clientes",
             description = """
             Retorna usuarios con rol CLIENTE (usuarios activos del sistema).
+            Con `page` y `size` devuelve solo esa página y el total en el header `X-Total-Count`
+            (recién arrancado el servicio, hasta la primera sincronización, solo en la última página).
+            Admite búsqueda por prefijo (`q`) y orden (`sort`).
             
             **Requiere:** Rol ADMIN
             """
     )
-    public ResponseEntity<List<UsuarioResponseDTO>> listarUsuariosClientes() {
-        return usuarioService.listarUsuariosPorRol("CLIENTE");
+    public ResponseEntity<StreamingResponseBody> listarUsuariosClientes(
+            @Parameter(description = "Prefijo a buscar en username, email o razón social (sin distinguir mayúsculas)")
+            @RequestParam(required = false) String q,
+            @Parameter(description = "Orden: username, email o razonSocial, opcionalmente con ,asc o ,desc", example = "username,asc")
+            @RequestParam(required = false) String sort,
+            @Parameter(description = "Número de página (desde 0). Opcional, junto con size")
+            @RequestParam(required = false) Integer page,
+            @Parameter(description = "Tamaño de página (máximo 500)")
+            @RequestParam(required = false) Integer size) {
+        return usuarioService.listarUsuarios("CLIENTE", q, sort, page, size);
     }
 
     @GetMapping("/list/users/admins")
@@ -262,12 +355,23 @@ public class UsuarioController {
             summary = "Listar administradores",
             description = """
             Retorna usuarios con rol ADMIN.
+            Con `page` y `size` devuelve solo esa página y el total en el header `X-Total-Count`
+            (recién arrancado el servicio, hasta la primera sincronización, solo en la última página).
+            Admite búsqueda por prefijo (`q`) y orden (`sort`).
             
             **Requiere:** Rol ADMIN
             """
     )
-    public ResponseEntity<List<UsuarioResponseDTO>> listarUsuariosAdmins() {
-        return usuarioService.listarUsuariosPorRol("ADMIN");
+    public ResponseEntity<StreamingResponseBody> listarUsuariosAdmins(
+            @Parameter(description = "Prefijo a buscar en username, email o razón social (sin distinguir mayúsculas)")
+            @RequestParam(required = false) String q,
+            @Parameter(description = "Orden: username, email o razonSocial, opcionalmente con ,asc o ,desc", example = "username,asc")
+            @RequestParam(required = false) String sort,
+            @Parameter(description = "Número de página (desde 0). Opcional, junto con size")
+            @RequestParam(required = false) Integer page,
+            @Parameter(description = "Tamaño de página (máximo 500)")
+            @RequestParam(required = false) Integer size) {
+        return usuarioService.listarUsuarios("ADMIN", q, sort, page, size);
     }
 
 
@@ -0,0 +1,23 @@
+package org.paper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Reporte de una importación masiva de usuarios: totales y el resultado de cada fila
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportacionUsuariosResponseDTO {
+
+    private int total;
+    private int creados;
+    private int fallidos;
+    private List<ResultadoFilaDTO> filas;
+}
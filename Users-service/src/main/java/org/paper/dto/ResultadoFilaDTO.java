@@ -0,0 +1,29 @@
+package org.paper.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ResultadoFilaDTO {
+
+    public enum Estado {
+        CREADO,     // Creado en Keycloak y en BD, email de activación encolado
+        INVALIDO,   // No pasó la validación (no se llamó a Keycloak)
+        EXISTENTE,  // Keycloak ya tiene un usuario con ese username o email
+        ERROR       // Falló el alta; no quedó nada creado
+    }
+
+    // Número de fila en el archivo (1 = primera fila de datos)
+    private int fila;
+    private String username;
+    private Estado estado;
+    private String userId;
+    private String mensaje;
+}
@@ -0,0 +1,108 @@
+package org.paper.emails;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Plantilla HTML de email compilada una sola vez al arrancar.
+ * Los includes ({{>fragmento}}) se resuelven al compilar y las variables ({{nombre}})
+ * quedan como posiciones fijas, así renderizar es solo concatenar en un buffer.
+ * Los valores se escapan como HTML (un username no puede inyectar marcado).
+ */
+public final class EmailTemplate {
+
+    private static final int MAX_INCLUDE_DEPTH = 5;
+
+    private final String name;
+    // segments.length == slots.length + 1: segmento, variable, segmento, ..., segmento
+    private final String[] segments;
+    private final String[] slots;
+    private final int segmentLength;
+
+    private EmailTemplate(String name, String[] segments, String[] slots) {
+        this.name = name;
+        this.segments = segments;
+        this.slots = slots;
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        this.segmentLength = length;
+    }
+
+    /**
+     * @param includes devuelve el texto fuente de un fragmento por nombre
+     */
+    public static EmailTemplate compile(String name, String source, Function<String, String> includes) {
+        String expanded = expandIncludes(name, source, includes, 0);
+
+        List<String> segments = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = expanded.indexOf("{{", pos);
+            if (open < 0) {
+                break;
+            }
+            int close = expanded.indexOf("}}", open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Plantilla '" + name + "': '{{' sin cerrar en la posición " + open);
+            }
+            segments.add(expanded.substring(pos, open));
+            slots.add(expanded.substring(open + 2, close).trim());
+            pos = close + 2;
+        }
+        segments.add(expanded.substring(pos));
+
+        return new EmailTemplate(name, segments.toArray(String[]::new), slots.toArray(String[]::new));
+    }
+
+    /**
+     * Escribe la plantilla en el buffer recibido (que puede venir reutilizado)
+     */
+    public void renderInto(StringBuilder out, Map<String, String> values) {
+        out.ensureCapacity(out.length() + segmentLength + slots.length * 64);
+        out.append(segments[0]);
+        for (int i = 0; i < slots.length; i++) {
+            String value = values.get(slots[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("Plantilla '" + name + "': falta el valor de {{" + slots[i] + "}}");
+            }
+            out.append(HtmlUtils.htmlEscape(value, "UTF-8")).append(segments[i + 1]);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private static String expandIncludes(String name, String source, Function<String, String> includes, int depth) {
+        if (depth > MAX_INCLUDE_DEPTH) {
+            throw new IllegalArgumentException("Plantilla '" + name + "': demasiados includes anidados");
+        }
+
+        StringBuilder sb = new StringBuilder(source.length());
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("{{>", pos);
+            if (open < 0) {
+                break;
+            }
+            int close = source.indexOf("}}", open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Plantilla '" + name + "': include sin cerrar en la posición " + open);
+            }
+            String fragment = source.substring(open + 3, close).trim();
+            sb.append(source, pos, open)
+                    .append(expandIncludes(name, includes.apply(fragment), includes, depth + 1));
+            pos = close + 2;
+        }
+        return sb.append(source, pos, source.length()).toString();
+    }
+}
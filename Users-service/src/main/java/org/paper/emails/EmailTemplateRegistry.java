@@ -0,0 +1,138 @@
+package org.paper.emails;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de plantillas de email, cargadas desde classpath:templates/email/.
+ *
+ * - Cada plantilla (*.html) se compila una sola vez al arrancar
+ * - Los archivos que empiezan con "_" son fragmentos para incluir con {{>_nombre}}
+ * - Variantes por idioma con sufijo: activacion_en.html, activacion_pt_BR.html;
+ *   se busca de la más específica a la genérica (pt_BR → pt → sin sufijo)
+ * - Los asuntos están en asuntos[_locale].properties
+ *
+ * El render escribe en un buffer por thread que se reutiliza entre envíos.
+ */
+@Slf4j
+@Component
+public class EmailTemplateRegistry {
+
+    private static final String BASE_PATH = "templates/email/";
+    private static final String ASUNTOS_BUNDLE = BASE_PATH + "asuntos";
+    // Un buffer más grande que esto no se retiene (evita quedarse con memoria tras un email enorme)
+    private static final int MAX_BUFFER_RETENIDO = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(8 * 1024));
+
+    private final Locale defaultLocale;
+    private final Map<String, EmailTemplate> templates;
+    // (plantilla, locale) → variante resuelta
+    private final Map<String, EmailTemplate> resueltas = new ConcurrentHashMap<>();
+
+    public EmailTemplateRegistry(@Value("${app.email.locale:es-AR}") String defaultLocale) {
+        this.defaultLocale = Locale.forLanguageTag(defaultLocale);
+
+        Map<String, String> sources = loadSources();
+        Map<String, EmailTemplate> compiled = new HashMap<>();
+        sources.forEach((name, source) -> {
+            if (!name.startsWith("_")) {
+                compiled.put(name, EmailTemplate.compile(name, source, fragment -> {
+                    String include = sources.get(fragment);
+                    if (include == null) {
+                        throw new IllegalStateException("Plantilla '" + name + "': no existe el fragmento '" + fragment + "'");
+                    }
+                    return include;
+                }));
+            }
+        });
+        this.templates = Collections.unmodifiableMap(compiled);
+
+        log.info("✉️ Plantillas de email cargadas: {} (idioma por defecto {})", templates.keySet(), this.defaultLocale);
+    }
+
+    public String render(String nombre, Map<String, String> values) {
+        return render(nombre, defaultLocale, values);
+    }
+
+    public String render(String nombre, Locale locale, Map<String, String> values) {
+        EmailTemplate template = resolve(nombre, locale);
+
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        try {
+            template.renderInto(buffer, values);
+            return buffer.toString();
+        } finally {
+            if (buffer.capacity() > MAX_BUFFER_RETENIDO) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    public String asunto(String nombre) {
+        return asunto(nombre, defaultLocale);
+    }
+
+    public String asunto(String nombre, Locale locale) {
+        try {
+            return ResourceBundle.getBundle(ASUNTOS_BUNDLE, locale).getString(nombre);
+        } catch (MissingResourceException e) {
+            throw new IllegalArgumentException("No hay asunto para la plantilla de email '" + nombre + "'", e);
+        }
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private EmailTemplate resolve(String nombre, Locale locale) {
+        return resueltas.computeIfAbsent(nombre + "|" + locale, key -> {
+            String[] candidatos = {
+                    nombre + "_" + locale.getLanguage() + "_" + locale.getCountry(),
+                    nombre + "_" + locale.getLanguage(),
+                    nombre
+            };
+            for (String candidato : candidatos) {
+                EmailTemplate template = templates.get(candidato);
+                if (template != null) {
+                    return template;
+                }
+            }
+            throw new IllegalArgumentException("No existe la plantilla de email '" + nombre + "'");
+        });
+    }
+
+    private static Map<String, String> loadSources() {
+        Map<String, String> sources = new HashMap<>();
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver()
+                    .getResources("classpath:" + BASE_PATH + "*.html");
+            for (Resource resource : resources) {
+                String filename = resource.getFilename();
+                try (InputStream in = resource.getInputStream()) {
+                    String source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    String name = filename.substring(0, filename.length() - ".html".length());
+                    // Los fragmentos se incrustan en atributos: sin el salto de línea final del archivo
+                    sources.put(name, name.startsWith("_") ? source.stripTrailing() : source);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudieron leer las plantillas de " + BASE_PATH, e);
+        }
+        return sources;
+    }
+}
@@ -0,0 +1,59 @@
+package org.paper.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Email pendiente de envío (outbox transaccional).
+ * Se inserta en la misma transacción que el cambio que lo origina y lo envía EmailOutboxDispatcher.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "email_outbox")
+public class EmailOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo", nullable = false, length = 40)
+    private EmailTipo tipo;
+
+    @Column(name = "destinatario", nullable = false)
+    private String destinatario;
+
+    @Column(name = "username", nullable = false)
+    private String username;
+
+    // Token del link (activación o recuperación); se borra al enviar
+    @ToString.Exclude
+    @Column(name = "token", columnDefinition = "TEXT")
+    private String token;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "estado", nullable = false, length = 20)
+    private EmailOutboxEstado estado;
+
+    @Column(name = "intentos", nullable = false)
+    private int intentos;
+
+    @Column(name = "proximo_intento", nullable = false)
+    private OffsetDateTime proximoIntento;
+
+    @Column(name = "ultimo_error", columnDefinition = "TEXT")
+    private String ultimoError;
+
+    @Column(name = "creado_en", nullable = false)
+    private OffsetDateTime creadoEn;
+
+    @Column(name = "enviado_en")
+    private OffsetDateTime enviadoEn;
+}
@@ -0,0 +1,6 @@
+package org.paper.entity;
+
+public enum EmailOutboxEstado {
+    // FALLIDO: se agotaron los reintentos (dead-letter), queda para revisión manual
+    PENDIENTE, ENVIADO, FALLIDO
+}
@@ -0,0 +1,5 @@
+package org.paper.entity;
+
+public enum EmailTipo {
+    ACTIVACION, CUENTA_ACTIVADA, RECUPERACION_PASSWORD, PASSWORD_CAMBIADA
+}
@@ -28,6 +28,27 @@ public class Usuario {
     @Column(name = "status", nullable = false, length = 20)
     private UsuarioStatus status;
 
+    // Copia de lectura de Keycloak: permite listar y buscar sin consultar la Admin API
+    @Column(name = "username")
+    private String username;
+
+    @Column(name = "email")
+    private String email;
+
+    @Column(name = "razon_social")
+    private String razonSocial;
+
+    // La aplicación asigna un único rol por usuario (ADMIN, CLIENTE o DISEÑADOR)
+    @Column(name = "rol", length = 20)
+    private String rol;
+
+    // false si el usuario se borró de Keycloak por fuera de la aplicación
+    @Column(name = "en_keycloak", nullable = false)
+    private boolean enKeycloak = true;
+
+    @Column(name = "sincronizado_en")
+    private OffsetDateTime sincronizadoEn;
+
     // RELACIÓN: Un cliente tiene un diseñador asignado
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "disenador_id")
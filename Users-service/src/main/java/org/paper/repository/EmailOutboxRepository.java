@@ -0,0 +1,27 @@
+package org.paper.repository;
+
+import org.paper.entity.EmailOutbox;
+import org.paper.entity.EmailOutboxEstado;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    // SKIP LOCKED: varias instancias pueden despachar a la vez sin tomar los mismos emails
+    @Query(value = "SELECT * FROM email_outbox WHERE estado = 'PENDIENTE' AND proximo_intento <= NOW() "
+            + "ORDER BY id LIMIT :limite FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<EmailOutbox> reservarPendientes(@Param("limite") int limite);
+
+    @Modifying
+    @Query("DELETE FROM EmailOutbox e WHERE e.estado = :estado AND e.enviadoEn < :limite")
+    int eliminarEnviadosAntesDe(@Param("estado") EmailOutboxEstado estado, @Param("limite") OffsetDateTime limite);
+
+    long countByEstado(EmailOutboxEstado estado);
+}
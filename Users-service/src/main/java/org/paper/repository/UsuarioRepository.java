@@ -1,15 +1,68 @@
 package org.paper.repository;
 
+import jakarta.persistence.QueryHint;
 import org.paper.entity.Usuario;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface UsuarioRepository extends JpaRepository<Usuario, UUID> {
 
     // Buscar usuarios asignados a un diseñador específico
     List<Usuario> findByDisenadorId(UUID disenadorId);
-}
\ No newline at end of file
+
+    // Solo los ids de los clientes del diseñador que siguen en Keycloak, en una consulta
+    @Query("SELECT u.id FROM Usuario u WHERE u.disenador.id = :disenadorId AND u.enKeycloak = true ORDER BY u.fechaRegistro, u.id")
+    List<UUID> findClienteIdsByDisenadorId(@Param("disenadorId") UUID disenadorId);
+
+    // Listado desde la copia de lectura de Keycloak (ver UsuarioSyncService).
+    // :prefijo ya viene en minúsculas, escapado y terminado en '%' ('%' solo = sin filtro)
+    String LISTADO = "FROM Usuario u LEFT JOIN u.disenador d "
+            + "WHERE u.enKeycloak = true AND (:rol IS NULL OR u.rol = :rol) "
+            + "AND (LOWER(u.username) LIKE :prefijo OR LOWER(u.email) LIKE :prefijo OR LOWER(u.razonSocial) LIKE :prefijo)";
+
+    String LISTADO_SELECT = "SELECT u.id AS id, u.username AS username, u.email AS email, "
+            + "u.razonSocial AS razonSocial, u.rol AS rol, d.id AS disenadorId ";
+
+    interface UsuarioListado {
+        UUID getId();
+        String getUsername();
+        String getEmail();
+        String getRazonSocial();
+        String getRol();
+        UUID getDisenadorId();
+    }
+
+    // Proyecciones (no entidades): al recorrer el stream no se acumulan en el contexto de persistencia
+    @Query(LISTADO_SELECT + LISTADO)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<UsuarioListado> streamListado(@Param("rol") String rol, @Param("prefijo") String prefijo, Sort sort);
+
+    @Query(LISTADO_SELECT + LISTADO)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<UsuarioListado> streamListado(@Param("rol") String rol, @Param("prefijo") String prefijo, Pageable pageable);
+
+    @Query("SELECT COUNT(u) " + LISTADO)
+    long contarListado(@Param("rol") String rol, @Param("prefijo") String prefijo);
+
+    interface DisenadorAsignado {
+        UUID getId();
+        UUID getDisenadorId();
+    }
+
+    // Diseñador asignado de varios usuarios en una sola consulta, sin cargar las entidades
+    @Query("SELECT u.id AS id, d.id AS disenadorId FROM Usuario u LEFT JOIN u.disenador d WHERE u.id IN :ids")
+    List<DisenadorAsignado> findDisenadoresByIdIn(@Param("ids") Collection<UUID> ids);
+}
@@ -2,12 +2,14 @@ package org.paper.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import org.paper.exception.ValidationException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.UUID;
 
 @Component
 public class JwtUtil {
@@ -15,88 +17,75 @@ public class JwtUtil {
     private final SecretKey key;
     private final long verificationExpirationMs;
     private final long recoveryExpirationMs;
+    // Inmutable y thread-safe: se arma una sola vez en lugar de uno por lectura
+    private final JwtParser parser;
 
     public JwtUtil(@Value("${app.jwt.secret}") String jwtSecret,
                    @Value("${app.jwt.expiration-ms}") long verificationExpirationMs) {
         this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
         this.verificationExpirationMs = verificationExpirationMs; // 24 horas
         this.recoveryExpirationMs = 3600000; // 1 hora en milisegundos
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
     }
 
     /**
      * Genera token para verificación de email (válido 24 horas)
      */
     public String generateVerificationToken(String userId, String email) {
-        long now = System.currentTimeMillis();
-        return Jwts.builder()
-                .setSubject(userId)
-                .claim("email", email)
-                .claim("type", "email_verification")
-                .setIssuedAt(new Date(now))
-                .setExpiration(new Date(now + verificationExpirationMs))
-                .signWith(key, SignatureAlgorithm.HS256)
-                .compact();
+        return generar(userId, email, TokenClaims.EMAIL_VERIFICATION, verificationExpirationMs);
     }
 
     /**
      * Genera token para recuperación de contraseña (válido 1 hora)
      */
     public String generatePasswordRecoveryToken(String userId, String email) {
-        long now = System.currentTimeMillis();
-        return Jwts.builder()
-                .setSubject(userId)
-                .claim("email", email)
-                .claim("type", "password_recovery")
-                .setIssuedAt(new Date(now))
-                .setExpiration(new Date(now + recoveryExpirationMs))
-                .signWith(key, SignatureAlgorithm.HS256)
-                .compact();
+        return generar(userId, email, TokenClaims.PASSWORD_RECOVERY, recoveryExpirationMs);
     }
 
     /**
-     * Valida y devuelve el userId del token
+     * Verifica firma y vencimiento una sola vez y devuelve todos los claims
      */
-    public String validateAndGetUserId(String token) {
+    public TokenClaims parse(String token) {
+        Claims claims;
         try {
-            Jws<Claims> jws = Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token);
-            return jws.getBody().getSubject();
+            claims = parser.parseClaimsJws(token).getBody();
         } catch (ExpiredJwtException e) {
-            throw new RuntimeException("El token ha expirado");
-        } catch (JwtException e) {
-            throw new RuntimeException("Token inválido");
+            throw new ValidationException("El token ha expirado");
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new ValidationException("Token inválido");
         }
+        return new TokenClaims(
+                claims.getSubject(),
+                claims.get("email", String.class),
+                claims.get("type", String.class),
+                claims.getId(),
+                claims.getExpiration().toInstant());
     }
 
     /**
-     * Obtiene el email del token
+     * Igual que parse, pero rechaza un token de otro tipo
+     * (ej. un link de recuperación usado para activar la cuenta)
      */
-    public String getEmailFromToken(String token) {
-        try {
-            Jws<Claims> jws = Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token);
-            return jws.getBody().get("email", String.class);
-        } catch (JwtException e) {
-            throw new RuntimeException("Token inválido");
+    public TokenClaims parse(String token, String expectedType) {
+        TokenClaims claims = parse(token);
+        if (!expectedType.equals(claims.type())) {
+            throw new ValidationException("Token inválido");
         }
+        return claims;
     }
 
-    /**
-     * Obtiene el tipo de token (email_verification o password_recovery)
-     */
-    public String getTokenType(String token) {
-        try {
-            Jws<Claims> jws = Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token);
-            return jws.getBody().get("type", String.class);
-        } catch (JwtException e) {
-            throw new RuntimeException("Token inválido");
-        }
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private String generar(String userId, String email, String type, long expirationMs) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
+                .setSubject(userId)
+                .claim("email", email)
+                .claim("type", type)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + expirationMs))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+package org.paper.security;
+
+import java.time.Instant;
+
+/**
+ * Claims de un token de activación o recuperación ya verificado (firma y vencimiento).
+ * jti es null en los tokens emitidos antes de que se agregara el id único.
+ */
+public record TokenClaims(String userId, String email, String type, String jti, Instant expiraEn) {
+
+    public static final String EMAIL_VERIFICATION = "email_verification";
+    public static final String PASSWORD_RECOVERY = "password_recovery";
+}
@@ -0,0 +1,223 @@
+package org.paper.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.paper.entity.EmailOutbox;
+import org.paper.entity.EmailOutboxEstado;
+import org.paper.exception.ValidationException;
+import org.paper.repository.EmailOutboxRepository;
+import org.paper.security.JwtUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Envía los emails de email_outbox en segundo plano, con paralelismo acotado.
+ * Un envío fallido se reintenta con backoff exponencial; al agotar los intentos
+ * queda en estado FALLIDO (dead-letter) y no se vuelve a tomar. Lo mismo si el link del email
+ * (activación o recuperación) venció: ya no sirve reenviarlo.
+ *
+ * El ciclo corre en su propio pool: el thread de @Scheduled (compartido con la reconciliación,
+ * el token de Keycloak y el cache de roles) solo lo dispara y no espera a los envíos.
+ */
+@Slf4j
+@Service
+public class EmailOutboxDispatcher {
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final EmailService emailService;
+    private final JwtUtil jwtUtil;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int maxIntentos;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+    private final Duration reserva;
+    private final Duration retencion;
+    // Un solo ciclo a la vez: el próximo no arranca con envíos en vuelo
+    private final AtomicBoolean cicloEnCurso = new AtomicBoolean(false);
+
+    public EmailOutboxDispatcher(EmailOutboxRepository emailOutboxRepository,
+                                 EmailService emailService,
+                                 JwtUtil jwtUtil,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.email.outbox.parallelism:4}") int parallelism,
+                                 @Value("${app.email.outbox.batch-size:20}") int batchSize,
+                                 @Value("${app.email.outbox.max-attempts:8}") int maxIntentos,
+                                 @Value("${app.email.outbox.backoff-base-ms:30000}") long backoffBaseMs,
+                                 @Value("${app.email.outbox.backoff-max-ms:3600000}") long backoffMaxMs,
+                                 @Value("${app.email.outbox.lease-ms:300000}") long reservaMs,
+                                 @Value("${app.email.outbox.retention-days:7}") long retencionDias) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.emailService = emailService;
+        this.jwtUtil = jwtUtil;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = Executors.newFixedThreadPool(parallelism);
+        this.batchSize = batchSize;
+        this.maxIntentos = maxIntentos;
+        this.backoffBase = Duration.ofMillis(backoffBaseMs);
+        this.backoffMax = Duration.ofMillis(backoffMaxMs);
+        this.reserva = Duration.ofMillis(reservaMs);
+        this.retencion = Duration.ofDays(retencionDias);
+
+        Gauge.builder("email.outbox.pending", emailOutboxRepository,
+                        repo -> repo.countByEstado(EmailOutboxEstado.PENDIENTE))
+                .register(meterRegistry);
+        Gauge.builder("email.outbox.dead", emailOutboxRepository,
+                        repo -> repo.countByEstado(EmailOutboxEstado.FALLIDO))
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.email.outbox.poll-interval-ms:2000}")
+    public void despachar() {
+        if (!cicloEnCurso.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            CompletableFuture.supplyAsync(this::reservarLote, executor)
+                    .thenCompose(lote -> CompletableFuture.allOf(lote.stream()
+                            .map(email -> CompletableFuture.runAsync(() -> enviar(email), executor))
+                            .toArray(CompletableFuture[]::new)))
+                    .whenComplete((ignorado, error) -> {
+                        if (error != null) {
+                            log.error("❌ No se pudieron leer los emails pendientes: {}", error.getMessage(), error);
+                        }
+                        cicloEnCurso.set(false);
+                    });
+        } catch (RejectedExecutionException e) {
+            // El executor se está cerrando
+            cicloEnCurso.set(false);
+        }
+    }
+
+    @Scheduled(cron = "${app.email.outbox.cleanup-cron:0 30 3 * * *}")
+    public void limpiarEnviados() {
+        Integer eliminados = transactionTemplate.execute(status -> emailOutboxRepository.eliminarEnviadosAntesDe(
+                EmailOutboxEstado.ENVIADO, OffsetDateTime.now().minus(retencion)));
+        if (eliminados != null && eliminados > 0) {
+            log.info("🧹 {} emails enviados eliminados del outbox", eliminados);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    /**
+     * Toma un lote y corre su próximo intento hacia adelante: si esta instancia se cae
+     * a mitad del envío, otra lo retoma cuando vence la reserva
+     */
+    private List<EmailOutbox> reservarLote() {
+        return transactionTemplate.execute(status -> {
+            List<EmailOutbox> pendientes = emailOutboxRepository.reservarPendientes(batchSize);
+            OffsetDateTime hasta = OffsetDateTime.now().plus(reserva);
+            pendientes.forEach(email -> email.setProximoIntento(hasta));
+            return emailOutboxRepository.saveAll(pendientes);
+        });
+    }
+
+    private void enviar(EmailOutbox email) {
+        Instant vencimiento = vencimientoDelLink(email);
+        if (vencimiento != null && !vencimiento.isAfter(Instant.now())) {
+            descartarPorVencido(email);
+            guardar(email);
+            return;
+        }
+
+        try {
+            switch (email.getTipo()) {
+                case ACTIVACION -> emailService.enviarEmailActivacion(
+                        email.getDestinatario(), email.getUsername(), email.getToken());
+                case CUENTA_ACTIVADA -> emailService.enviarEmailCuentaActivada(
+                        email.getDestinatario(), email.getUsername());
+                case RECUPERACION_PASSWORD -> emailService.enviarEmailRecuperacionPassword(
+                        email.getDestinatario(), email.getUsername(), email.getToken());
+                case PASSWORD_CAMBIADA -> emailService.enviarEmailPasswordCambiada(
+                        email.getDestinatario(), email.getUsername());
+            }
+            email.setEstado(EmailOutboxEstado.ENVIADO);
+            email.setEnviadoEn(OffsetDateTime.now());
+            email.setToken(null);
+            email.setUltimoError(null);
+            log.info("✅ Email {} enviado a {}", email.getTipo(), email.getDestinatario());
+
+        } catch (Exception e) {
+            email.setIntentos(email.getIntentos() + 1);
+            email.setUltimoError(e.getMessage());
+
+            if (email.getIntentos() >= maxIntentos) {
+                email.setEstado(EmailOutboxEstado.FALLIDO);
+                log.error("❌ Email {} a {} descartado tras {} intentos: {}",
+                        email.getTipo(), email.getDestinatario(), email.getIntentos(), e.getMessage());
+            } else if (vencimiento != null && !vencimiento.isAfter(Instant.now().plus(backoff(email.getIntentos())))) {
+                // El próximo intento caería después de que venza el link
+                descartarPorVencido(email);
+            } else {
+                Duration espera = backoff(email.getIntentos());
+                email.setProximoIntento(OffsetDateTime.now().plus(espera));
+                log.warn("⚠️ Falló el envío del email {} a {} (intento {}/{}), reintento en {}s: {}",
+                        email.getTipo(), email.getDestinatario(), email.getIntentos(), maxIntentos,
+                        espera.toSeconds(), e.getMessage());
+            }
+        }
+
+        guardar(email);
+    }
+
+    private void guardar(EmailOutbox email) {
+        try {
+            emailOutboxRepository.save(email);
+        } catch (Exception e) {
+            // Si el estado no se pudo guardar, el email se reintenta al vencer la reserva (posible duplicado)
+            log.error("❌ No se pudo actualizar el email {} del outbox: {}", email.getId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Vencimiento del token del link; null si el email no lleva link.
+     * Un token que no valida se trata como vencido
+     */
+    private Instant vencimientoDelLink(EmailOutbox email) {
+        if (email.getToken() == null) {
+            return null;
+        }
+        try {
+            return jwtUtil.parse(email.getToken()).expiraEn();
+        } catch (ValidationException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private void descartarPorVencido(EmailOutbox email) {
+        email.setEstado(EmailOutboxEstado.FALLIDO);
+        email.setToken(null);
+        email.setUltimoError("El link venció antes de poder enviarse");
+        log.error("❌ Email {} a {} descartado: el link venció (intentos: {})",
+                email.getTipo(), email.getDestinatario(), email.getIntentos());
+    }
+
+    private Duration backoff(int intentos) {
+        long factor = 1L << Math.min(intentos - 1, 20);
+        Duration espera = backoffBase.multipliedBy(factor);
+        return espera.compareTo(backoffMax) > 0 ? backoffMax : espera;
+    }
+}
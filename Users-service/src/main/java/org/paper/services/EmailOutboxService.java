@@ -0,0 +1,80 @@
+package org.paper.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.entity.EmailOutbox;
+import org.paper.entity.EmailOutboxEstado;
+import org.paper.entity.EmailTipo;
+import org.paper.repository.EmailOutboxRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Encola emails en la tabla email_outbox en lugar de enviarlos por SMTP dentro del request.
+ * Si se llama dentro de una transacción (ej. crearUsuario) el email se guarda con ella:
+ * solo sale si el cambio se confirma, y el request no espera al servidor de correo.
+ */
+@Slf4j
+@Service
+public class EmailOutboxService {
+
+    private static final String INSERT_LOTE = """
+            INSERT INTO email_outbox (tipo, destinatario, username, token, estado, intentos, proximo_intento, creado_en)
+            VALUES (?, ?, ?, ?, 'PENDIENTE', 0, ?, ?)
+            """;
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public EmailOutboxService(EmailOutboxRepository emailOutboxRepository, JdbcTemplate jdbcTemplate) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional
+    public void encolar(EmailTipo tipo, String destinatario, String username, String token) {
+        OffsetDateTime ahora = OffsetDateTime.now();
+
+        EmailOutbox email = new EmailOutbox();
+        email.setTipo(tipo);
+        email.setDestinatario(destinatario);
+        email.setUsername(username);
+        email.setToken(token);
+        email.setEstado(EmailOutboxEstado.PENDIENTE);
+        email.setIntentos(0);
+        email.setProximoIntento(ahora);
+        email.setCreadoEn(ahora);
+
+        emailOutboxRepository.save(email);
+        log.info("📨 Email {} encolado para {}", tipo, destinatario);
+    }
+
+    /**
+     * Encola varios emails del mismo tipo en un único batch JDBC (altas masivas).
+     * El id es IDENTITY, así que con JPA serían un INSERT por email.
+     */
+    @Transactional
+    public void encolarLote(EmailTipo tipo, List<EmailPendiente> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        Timestamp ahora = Timestamp.from(OffsetDateTime.now().toInstant());
+
+        jdbcTemplate.batchUpdate(INSERT_LOTE, emails, emails.size(), (ps, email) -> {
+            ps.setString(1, tipo.name());
+            ps.setString(2, email.destinatario());
+            ps.setString(3, email.username());
+            ps.setString(4, email.token());
+            ps.setTimestamp(5, ahora);
+            ps.setTimestamp(6, ahora);
+        });
+        log.info("📨 {} emails {} encolados", emails.size(), tipo);
+    }
+
+    public record EmailPendiente(String destinatario, String username, String token) {
+    }
+}
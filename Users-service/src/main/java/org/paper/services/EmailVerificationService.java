@@ -2,39 +2,59 @@ package org.paper.services;
 
 import lombok.extern.slf4j.Slf4j;
 import org.paper.clients.KeycloakClient;
+import org.paper.clients.keycloak.KeycloakUser;
+import org.paper.entity.EmailTipo;
+import org.paper.entity.Usuario;
 import org.paper.exception.ValidationException;
 import org.paper.security.JwtUtil;
+import org.paper.security.TokenClaims;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class EmailVerificationService {
 
     private final JwtUtil jwtUtil;
-    private final EmailService emailService;
+    private final EmailOutboxService emailOutboxService;
     private final KeycloakAdminService keycloakAdminService;
     private final KeycloakClient keycloakClient;
+    private final TokenUsoUnicoService tokenUsoUnicoService;
 
     public EmailVerificationService(JwtUtil jwtUtil,
-                                    EmailService emailService,
+                                    EmailOutboxService emailOutboxService,
                                     KeycloakAdminService keycloakAdminService,
-                                    KeycloakClient keycloakClient) {
+                                    KeycloakClient keycloakClient,
+                                    TokenUsoUnicoService tokenUsoUnicoService) {
         this.jwtUtil = jwtUtil;
-        this.emailService = emailService;
+        this.emailOutboxService = emailOutboxService;
         this.keycloakAdminService = keycloakAdminService;
         this.keycloakClient = keycloakClient;
+        this.tokenUsoUnicoService = tokenUsoUnicoService;
     }
 
     /**
-     * Genera token y envía email de activación de cuenta
-     * (Se llama al crear un usuario nuevo)
+     * Genera token y encola el email de activación de cuenta
+     * (Se llama al crear un usuario nuevo, dentro de su transacción)
      */
     public void createAndSendActivation(String userId, String username, String email) {
         String token = jwtUtil.generateVerificationToken(userId, email);
-        emailService.enviarEmailActivacion(email, username, token);
-        log.info("Token de activación generado y email enviado para userId {}", userId);
+        emailOutboxService.encolar(EmailTipo.ACTIVACION, email, username, token);
+        log.info("Token de activación generado y email encolado para userId {}", userId);
+    }
+
+    /**
+     * Igual que createAndSendActivation para un alta masiva: un token por usuario
+     * y todos los emails al outbox en un solo batch (dentro de la transacción del alta)
+     */
+    public void createAndSendActivations(List<Usuario> usuarios) {
+        List<EmailOutboxService.EmailPendiente> emails = usuarios.stream()
+                .map(u -> new EmailOutboxService.EmailPendiente(u.getEmail(), u.getUsername(),
+                        jwtUtil.generateVerificationToken(u.getId().toString(), u.getEmail())))
+                .collect(Collectors.toList());
+        emailOutboxService.encolarLote(EmailTipo.ACTIVACION, emails);
     }
 
     /**
@@ -45,24 +65,29 @@ public class EmailVerificationService {
      * 4. Elimina la required action UPDATE_PASSWORD
      */
     public void activateAccount(String token, String newPassword) {
+        TokenClaims claims = null;
+        boolean pendiente = false;
         try {
-            // 1. Validar token y obtener userId
-            String userId = jwtUtil.validateAndGetUserId(token);
-            String email = jwtUtil.getEmailFromToken(token);
+            // 1. Validar token (una sola verificación) y reservarlo: cada link sirve una vez
+            claims = jwtUtil.parse(token, TokenClaims.EMAIL_VERIFICATION);
+            tokenUsoUnicoService.consumir(claims);
+            pendiente = true;
+
+            String userId = claims.userId();
+            String email = claims.email();
 
             log.info("Activando cuenta para userId: {}", userId);
 
             String adminToken = keycloakAdminService.getAdminToken();
 
             // 2. Verificar que el usuario existe
-            Map<String, Object> user = keycloakClient.obtenerUsuarioPorId(userId, adminToken);
+            KeycloakUser user = keycloakClient.obtenerUsuarioPorId(userId, adminToken);
             if (user == null) {
                 throw new ValidationException("Usuario no encontrado");
             }
 
             // 3. Verificar que el email no esté ya verificado (evitar reactivaciones)
-            Boolean emailVerified = (Boolean) user.get("emailVerified");
-            if (Boolean.TRUE.equals(emailVerified)) {
+            if (user.isEmailVerificado()) {
                 throw new ValidationException("Esta cuenta ya fue activada previamente");
             }
 
@@ -73,18 +98,23 @@ public class EmailVerificationService {
             // 5. Establecer contraseña definitiva (NO temporal)
             keycloakClient.cambiarPassword(userId, newPassword, false, adminToken);
             log.info("Contraseña definitiva establecida para userId: {}", userId);
+            pendiente = false;
 
             // 6. Eliminar la required action UPDATE_PASSWORD (si existe)
             keycloakClient.eliminarRequiredAction(userId, "UPDATE_PASSWORD", adminToken);
             log.info("Required action UPDATE_PASSWORD eliminada para userId: {}", userId);
 
-            // 7. Enviar email de confirmación
-            String username = (String) user.get("username");
-            emailService.enviarEmailCuentaActivada(email, username);
+            // 7. Encolar email de confirmación
+            String username = user.username();
+            emailOutboxService.encolar(EmailTipo.CUENTA_ACTIVADA, email, username, null);
 
             log.info("✅ Cuenta activada completamente para userId: {}", userId);
 
         } catch (Exception e) {
+            if (pendiente) {
+                // No se llegó a activar: el mismo link se puede volver a usar
+                tokenUsoUnicoService.liberar(claims);
+            }
             log.error("❌ Error activando cuenta: {}", e.getMessage(), e);
             throw new RuntimeException("No se pudo activar la cuenta: " + e.getMessage(), e);
         }
@@ -100,7 +130,7 @@ public class EmailVerificationService {
 
         try {
             // Buscar usuario por email
-            Map<String, Object> user = keycloakClient.buscarUsuarioPorEmail(email, adminToken);
+            KeycloakUser user = keycloakClient.buscarUsuarioPorEmail(email, adminToken);
 
             if (user == null) {
                 // Por seguridad, no revelar si el email existe o no
@@ -108,21 +138,20 @@ public class EmailVerificationService {
                 return;
             }
 
-            String userId = (String) user.get("id");
-            String username = (String) user.get("username");
-            Boolean emailVerified = (Boolean) user.get("emailVerified");
+            String userId = user.id();
+            String username = user.username();
 
             // Verificar que el usuario NO esté ya activado
-            if (Boolean.TRUE.equals(emailVerified)) {
+            if (user.isEmailVerificado()) {
                 log.warn("Usuario {} ya tiene email verificado, no se reenvía activación", username);
                 throw new ValidationException("Esta cuenta ya fue activada. Podés iniciar sesión normalmente.");
             }
 
             // Generar nuevo token y reenviar email
             String newToken = jwtUtil.generateVerificationToken(userId, email);
-            emailService.enviarEmailActivacion(email, username, newToken);
+            emailOutboxService.encolar(EmailTipo.ACTIVACION, email, username, newToken);
 
-            log.info("Email de activación reenviado a: {}", email);
+            log.info("Email de activación reencolado para: {}", email);
 
         } catch (ValidationException e) {
             throw e; // Propagar validaciones
@@ -138,7 +167,7 @@ public class EmailVerificationService {
      */
     @Deprecated
     public void verifyTokenAndMarkEmail(String token) {
-        String userId = jwtUtil.validateAndGetUserId(token);
+        String userId = jwtUtil.parse(token, TokenClaims.EMAIL_VERIFICATION).userId();
         String adminToken = keycloakAdminService.getAdminToken();
         keycloakAdminService.marcarEmailComoVerificado(userId, adminToken);
         log.warn("⚠️ Método verifyTokenAndMarkEmail() está deprecado. Usar activateAccount() en su lugar.");
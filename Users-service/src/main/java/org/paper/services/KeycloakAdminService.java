@@ -1,90 +1,222 @@
 package org.paper.services;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.paper.clients.keycloak.KeycloakToken;
+import org.paper.clients.keycloak.KeycloakUser;
+import org.paper.exception.KeycloakException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 
-import java.util.Map;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token de administrador (client_credentials) para la Admin API de Keycloak.
+ * La lectura no toma ningún lock: el token vigente está en una referencia volátil inmutable.
+ * Se renueva en segundo plano al llegar a una fracción de expires_in; si esa renovación falla
+ * se sigue usando el token actual mientras no venza. Nunca hay más de una renovación en vuelo.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class KeycloakAdminService {
 
+    // Margen para no entregar un token a punto de expirar
+    private static final long MARGEN_EXPIRACION_MS = 10_000;
+    // Espera antes de reintentar una renovación en segundo plano fallida
+    private static final long REINTENTO_MS = 5_000;
+
     private final WebClient webClient;
+    private final TaskScheduler taskScheduler;
+    private final String realm;
+    private final String clientId;
+    private final String clientSecret;
+    private final double refreshRatio;
+    private final MeterRegistry meterRegistry;
+
+    private volatile TokenVigente tokenVigente;
+    private final AtomicReference<CompletableFuture<TokenVigente>> renovacionEnCurso = new AtomicReference<>();
+
+    public KeycloakAdminService(WebClient webClient,
+                                TaskScheduler taskScheduler,
+                                MeterRegistry meterRegistry,
+                                @Value("${keycloak.realm}") String realm,
+                                @Value("${keycloak.client-id}") String clientId,
+                                @Value("${keycloak.client-secret}") String clientSecret,
+                                @Value("${keycloak.admin-token.refresh-ratio:0.75}") double refreshRatio) {
+        this.webClient = webClient;
+        this.taskScheduler = taskScheduler;
+        this.meterRegistry = meterRegistry;
+        this.realm = realm;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.refreshRatio = refreshRatio;
+
+        Gauge.builder("keycloak.admin-token.remaining", this, service -> {
+                    TokenVigente actual = service.tokenVigente;
+                    return actual == null ? 0 : Math.max(0, actual.expiraEn - System.currentTimeMillis()) / 1000.0;
+                })
+                .baseUnit("seconds")
+                .description("Segundos de validez restantes del token de administrador")
+                .register(meterRegistry);
+    }
 
-    @Value("${keycloak.realm}")
-    private String realm;
+    public String getAdminToken() {
+        TokenVigente actual = tokenVigente;
+        if (actual != null && System.currentTimeMillis() < actual.expiraEn) {
+            // Aunque ya haya pasado renovarEn: la renovación en segundo plano (o su reintento) está programada
+            return actual.valor;
+        }
 
-    @Value("${keycloak.client-id}")
-    private String clientId;
+        // Sin token válido: todos los threads esperan la misma renovación
+        try {
+            return renovar("a-demanda").join().valor;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    //revisar
+
+    public void marcarEmailComoVerificado(String userId, String token) {
+        webClient.put()
+                .uri("/admin/realms/tesina/users/{id}", userId)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(KeycloakUser.conEmailVerificado(true))
+                .retrieve()
+                .toBodilessEntity()
+                .block();
 
-    @Value("${keycloak.client-secret}")
-    private String clientSecret;
+        log.info("Usuario {} marcado como email verificado en Keycloak", userId);
+    }
 
-    private volatile String cachedToken;
-    private volatile long tokenExpiryTime;
+    // ==================== MÉTODOS PRIVADOS ====================
 
-    public synchronized String getAdminToken() {
-        // Verificar si el token aún es válido
-        if (cachedToken != null && System.currentTimeMillis() < tokenExpiryTime) {
-            log.debug("Usando token en caché (expira en {}ms)",
-                    tokenExpiryTime - System.currentTimeMillis());
-            return cachedToken;
+    /**
+     * Single-flight: el primero que llega pide el token, el resto se cuelga de su future
+     */
+    private CompletableFuture<TokenVigente> renovar(String origen) {
+        CompletableFuture<TokenVigente> nueva = new CompletableFuture<>();
+        CompletableFuture<TokenVigente> existente = renovacionEnCurso.compareAndExchange(null, nueva);
+        if (existente != null) {
+            return existente;
         }
 
-        log.info("Solicitando nuevo token de administrador a Keycloak");
+        try {
+            // Puede haberse renovado entre que el llamador vio el token vencido y llegó acá
+            TokenVigente actual = tokenVigente;
+            if (actual != null && System.currentTimeMillis() < actual.renovarEn) {
+                nueva.complete(actual);
+                return nueva;
+            }
+
+            TokenVigente token = solicitarToken(origen);
+            tokenVigente = token;
+            programarRenovacion(token);
+            nueva.complete(token);
+        } catch (RuntimeException e) {
+            nueva.completeExceptionally(e);
+        } finally {
+            renovacionEnCurso.set(null);
+        }
+        return nueva;
+    }
 
+    private void programarRenovacion(TokenVigente token) {
+        taskScheduler.schedule(this::renovacionProgramada, Instant.ofEpochMilli(token.renovarEn));
+    }
+
+    private void renovacionProgramada() {
+        TokenVigente actual = tokenVigente;
+        if (actual != null && System.currentTimeMillis() < actual.renovarEn) {
+            // Otro thread ya lo renovó
+            return;
+        }
         try {
-            Map<String, Object> response = webClient.post()
+            renovar("proactiva").join();
+        } catch (CompletionException | KeycloakException e) {
+            TokenVigente vigente = tokenVigente;
+            long restante = vigente == null ? 0 : vigente.expiraEn - System.currentTimeMillis();
+            log.warn("⚠️ Falló la renovación del token de Keycloak; se sigue usando el actual ({}ms restantes): {}",
+                    restante, e.getMessage());
+            if (restante > 0) {
+                taskScheduler.schedule(this::renovacionProgramada,
+                        Instant.now().plusMillis(Math.min(REINTENTO_MS, restante / 2)));
+            }
+        }
+    }
+
+    private TokenVigente solicitarToken(String origen) {
+        log.info("Solicitando nuevo token de administrador a Keycloak ({})", origen);
+        long inicio = System.nanoTime();
+        String resultado = "error";
+
+        try {
+            KeycloakToken response = webClient.post()
                     .uri("/realms/{realm}/protocol/openid-connect/token", realm)
                     .contentType(MediaType.APPLICATION_FORM_URLENCODED)
                     .body(BodyInserters.fromFormData("client_id", clientId)
                             .with("client_secret", clientSecret)
                             .with("grant_type", "client_credentials"))
                     .retrieve()
-                    .bodyToMono(Map.class)
+                    .bodyToMono(KeycloakToken.class)
                     .block();
 
-            if (response == null || !response.containsKey("access_token")) {
+            if (response == null || response.accessToken() == null) {
                 log.error("Respuesta inválida de Keycloak: {}", response);
-                throw new RuntimeException("No se pudo obtener access_token de Keycloak");
+                throw new KeycloakException("obtener token", "No se pudo obtener access_token de Keycloak");
             }
 
-            cachedToken = (String) response.get("access_token");
-            Integer expiresIn = (Integer) response.get("expires_in");
-
-            // Restar 10 segundos para evitar usar un token a punto de expirar
-            tokenExpiryTime = System.currentTimeMillis() + (expiresIn - 10) * 1000L;
-
-            log.info("Token obtenido correctamente (válido por {} segundos)", expiresIn);
+            long expiresInMs = response.expiresIn() * 1000L;
+            long emitido = System.currentTimeMillis();
+            long expiraEn = emitido + expiresInMs - MARGEN_EXPIRACION_MS;
+            long renovarEn = Math.min(emitido + (long) (expiresInMs * refreshRatio), expiraEn);
 
-            return cachedToken;
+            resultado = "ok";
+            log.info("Token obtenido correctamente (válido por {} segundos)", expiresInMs / 1000);
+            return new TokenVigente(response.accessToken(), expiraEn, renovarEn);
 
+        } catch (KeycloakException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error al obtener token de Keycloak: {}", e.getMessage(), e);
-            throw new RuntimeException("No se pudo obtener token de administrador", e);
+            throw new KeycloakException("obtener token", "No se pudo obtener token de administrador", e);
+        } finally {
+            Timer.builder("keycloak.admin-token.refresh")
+                    .description("Latencia de la renovación del token de administrador")
+                    .tag("origen", origen)
+                    .tag("resultado", resultado)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
         }
     }
 
-
-
-    //revisar
-
-    public void marcarEmailComoVerificado(String userId, String token) {
-        webClient.put()
-                .uri("/admin/realms/tesina/users/{id}", userId)
-                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(Map.of("emailVerified", true))
-                .retrieve()
-                .toBodilessEntity()
-                .block();
-
-        log.info("Usuario {} marcado como email verificado en Keycloak", userId);
+    /**
+     * Token y sus vencimientos; inmutable para poder publicarlo con una sola escritura volátil
+     */
+    private static final class TokenVigente {
+        final String valor;
+        final long expiraEn;
+        final long renovarEn;
+
+        TokenVigente(String valor, long expiraEn, long renovarEn) {
+            this.valor = valor;
+            this.expiraEn = expiraEn;
+            this.renovarEn = renovarEn;
+        }
     }
 }
@@ -2,11 +2,13 @@ package org.paper.services;
 
 import lombok.extern.slf4j.Slf4j;
 import org.paper.clients.KeycloakClient;
+import org.paper.clients.keycloak.KeycloakUser;
+import org.paper.entity.EmailTipo;
 import org.paper.exception.UsuarioNotFoundException;
 import org.paper.security.JwtUtil;
+import org.paper.security.TokenClaims;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
 
 /**
  * Servicio para recuperación y cambio de contraseñas.
@@ -17,18 +19,21 @@ import java.util.Map;
 public class PasswordRecoveryService {
 
     private final JwtUtil jwtUtil;
-    private final EmailService emailService;
+    private final EmailOutboxService emailOutboxService;
     private final KeycloakAdminService keycloakAdminService;
     private final KeycloakClient keycloakClient;
+    private final TokenUsoUnicoService tokenUsoUnicoService;
 
     public PasswordRecoveryService(JwtUtil jwtUtil,
-                                   EmailService emailService,
+                                   EmailOutboxService emailOutboxService,
                                    KeycloakAdminService keycloakAdminService,
-                                   KeycloakClient keycloakClient) {
+                                   KeycloakClient keycloakClient,
+                                   TokenUsoUnicoService tokenUsoUnicoService) {
         this.jwtUtil = jwtUtil;
-        this.emailService = emailService;
+        this.emailOutboxService = emailOutboxService;
         this.keycloakAdminService = keycloakAdminService;
         this.keycloakClient = keycloakClient;
+        this.tokenUsoUnicoService = tokenUsoUnicoService;
     }
 
     /**
@@ -42,7 +47,7 @@ public class PasswordRecoveryService {
 
         try {
             // Buscar usuario por email en Keycloak
-            Map<String, Object> user = keycloakClient.buscarUsuarioPorEmail(email, token);
+            KeycloakUser user = keycloakClient.buscarUsuarioPorEmail(email, token);
 
             if (user == null) {
                 // Por seguridad, no revelar si el email existe o no
@@ -50,16 +55,16 @@ public class PasswordRecoveryService {
                 return;
             }
 
-            String userId = (String) user.get("id");
-            String username = (String) user.get("username");
+            String userId = user.id();
+            String username = user.username();
 
             // Generar token JWT de recuperación (válido por 1 hora)
             String recoveryToken = jwtUtil.generatePasswordRecoveryToken(userId, email);
 
-            // Enviar email con el link de recuperación
-            emailService.enviarEmailRecuperacionPassword(email, username, recoveryToken);
+            // Encolar email con el link de recuperación
+            emailOutboxService.encolar(EmailTipo.RECUPERACION_PASSWORD, email, username, recoveryToken);
 
-            log.info("Email de recuperación enviado a: {}", email);
+            log.info("Email de recuperación encolado para: {}", email);
 
         } catch (Exception e) {
             log.error("Error al procesar solicitud de recuperación para {}: {}", email, e.getMessage(), e);
@@ -73,10 +78,16 @@ public class PasswordRecoveryService {
     public void resetearPassword(String token, String newPassword) {
         log.info("Intento de reseteo de contraseña con token");
 
+        TokenClaims claims = null;
+        boolean pendiente = false;
         try {
-            // Validar y obtener userId del token
-            String userId = jwtUtil.validateAndGetUserId(token);
-            String email = jwtUtil.getEmailFromToken(token);
+            // Validar el token una sola vez (firma, vencimiento y tipo) y reservarlo: cada link sirve una vez
+            claims = jwtUtil.parse(token, TokenClaims.PASSWORD_RECOVERY);
+            tokenUsoUnicoService.consumir(claims);
+            pendiente = true;
+
+            String userId = claims.userId();
+            String email = claims.email();
 
             log.info("Token válido para userId: {}", userId);
 
@@ -85,19 +96,23 @@ public class PasswordRecoveryService {
 
             // Cambiar password en Keycloak (NO temporal)
             keycloakClient.cambiarPassword(userId, newPassword, false, adminToken);
+            pendiente = false;
 
             // Obtener username para el email
-            Map<String, Object> user = keycloakClient.obtenerUsuarioPorId(userId, adminToken);
-            String username = (String) user.get("username");
+            String username = keycloakClient.obtenerUsuarioPorId(userId, adminToken).username();
 
-            // Enviar email de confirmación
-            emailService.enviarEmailPasswordCambiada(email, username);
+            // Encolar email de confirmación
+            emailOutboxService.encolar(EmailTipo.PASSWORD_CAMBIADA, email, username, null);
 
             log.info("Contraseña reseteada exitosamente para userId: {}", userId);
 
         } catch (Exception e) {
+            if (pendiente) {
+                // La contraseña no cambió: el mismo link se puede volver a usar
+                tokenUsoUnicoService.liberar(claims);
+            }
             log.error("Error al resetear contraseña: {}", e.getMessage(), e);
-            throw new RuntimeException("No se pudo resetear la contraseña. El token puede estar expirado.");
+            throw new RuntimeException("No se pudo resetear la contraseña. El token puede estar expirado o ya fue usado.");
         }
     }
 }
\ No newline at end of file
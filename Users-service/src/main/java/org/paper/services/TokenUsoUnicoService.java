@@ -0,0 +1,69 @@
+package org.paper.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.exception.ValidationException;
+import org.paper.security.TokenClaims;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+
+/**
+ * Registro de tokens de un solo uso (activación y recuperación de contraseña), por jti.
+ *
+ * - consumir reserva el jti con un INSERT ... ON CONFLICT DO NOTHING: de dos requests
+ *   simultáneos con el mismo link solo uno lo obtiene
+ * - Si la operación falla después de reservar, liberar lo devuelve para que el link se pueda reintentar
+ * - Las filas de tokens ya vencidos se borran periódicamente (el JWT vencido se rechaza igual)
+ */
+@Slf4j
+@Service
+public class TokenUsoUnicoService {
+
+    private static final String RESERVAR = """
+            INSERT INTO tokens_usados (jti, tipo, usado_en, expira_en)
+            VALUES (?, ?, NOW(), ?)
+            ON CONFLICT (jti) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TokenUsoUnicoService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Marca el token como usado; lanza ValidationException si ya lo estaba.
+     * Los tokens emitidos antes de tener jti se aceptan (vencen solos en 24 horas como máximo).
+     */
+    public void consumir(TokenClaims claims) {
+        if (claims.jti() == null) {
+            log.warn("⚠️ Token {} sin jti (emitido antes del registro de uso único) para userId {}",
+                    claims.type(), claims.userId());
+            return;
+        }
+        int insertados = jdbcTemplate.update(RESERVAR, claims.jti(), claims.type(), Timestamp.from(claims.expiraEn()));
+        if (insertados == 0) {
+            log.warn("⛔ Token {} reutilizado para userId {}", claims.type(), claims.userId());
+            throw new ValidationException("Este link ya fue usado");
+        }
+    }
+
+    /**
+     * Deshace consumir cuando la operación no llegó a completarse
+     */
+    public void liberar(TokenClaims claims) {
+        if (claims.jti() != null) {
+            jdbcTemplate.update("DELETE FROM tokens_usados WHERE jti = ?", claims.jti());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.used-tokens.cleanup-interval-ms:3600000}")
+    public void limpiarVencidos() {
+        int borrados = jdbcTemplate.update("DELETE FROM tokens_usados WHERE expira_en < NOW()");
+        if (borrados > 0) {
+            log.info("🧹 {} tokens usados ya vencidos eliminados", borrados);
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package org.paper.services;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.paper.clients.KeycloakClient;
+import org.paper.clients.keycloak.KeycloakRole;
+import org.paper.clients.KeycloakFanOut;
+import org.paper.clients.KeycloakRoleCache;
+import org.paper.dto.ImportacionUsuariosResponseDTO;
+import org.paper.dto.ResultadoFilaDTO;
+import org.paper.dto.UsuarioCreateDTO;
+import org.paper.entity.Usuario;
+import org.paper.entity.UsuarioStatus;
+import org.paper.exception.KeycloakException;
+import org.paper.exception.ValidationException;
+import org.paper.repository.UsuarioRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Alta masiva de usuarios (onboarding de clientes corporativos).
+ *
+ * 1. Se validan todas las filas antes de llamar a Keycloak (formato, repetidos, diseñador asignado)
+ * 2. Las altas en Keycloak corren en paralelo con KeycloakFanOut (concurrencia acotada)
+ * 3. Las filas locales se insertan en un solo batch JDBC y los emails de activación se encolan
+ *    en el outbox, todo en una transacción; si falla, se borran de Keycloak los usuarios creados
+ *
+ * Una fila que falla no frena al resto: el resultado de cada una vuelve en el reporte.
+ */
+@Slf4j
+@Service
+public class UsuarioImportService {
+
+    private static final String COLUMNA_DISENADOR = "disenadorId";
+    private static final List<String> COLUMNAS_OBLIGATORIAS = List.of("username", "email", "razonSocial", "rol");
+    private static final Integer HTTP_CONFLICT = 409;
+    private static final String INSERT_USUARIO = """
+            INSERT INTO usuarios (id, fecha_registro, status, disenador_id, username, email, razon_social, rol, en_keycloak, sincronizado_en)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, TRUE, ?)
+            """;
+
+    private final KeycloakAdminService keycloakAdminService;
+    private final KeycloakClient keycloakClient;
+    private final KeycloakFanOut keycloakFanOut;
+    private final KeycloakRoleCache keycloakRoleCache;
+    private final UsuarioRepository usuarioRepository;
+    private final UsuarioSyncService usuarioSyncService;
+    private final EmailVerificationService emailVerificationService;
+    private final Validator validator;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate alta;
+    private final int maxFilas;
+
+    public UsuarioImportService(KeycloakAdminService keycloakAdminService,
+                                KeycloakClient keycloakClient,
+                                KeycloakFanOut keycloakFanOut,
+                                KeycloakRoleCache keycloakRoleCache,
+                                UsuarioRepository usuarioRepository,
+                                UsuarioSyncService usuarioSyncService,
+                                EmailVerificationService emailVerificationService,
+                                Validator validator,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${app.bulk-import.max-rows:1000}") int maxFilas) {
+        this.keycloakAdminService = keycloakAdminService;
+        this.keycloakClient = keycloakClient;
+        this.keycloakFanOut = keycloakFanOut;
+        this.keycloakRoleCache = keycloakRoleCache;
+        this.usuarioRepository = usuarioRepository;
+        this.usuarioSyncService = usuarioSyncService;
+        this.emailVerificationService = emailVerificationService;
+        this.validator = validator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.alta = new TransactionTemplate(transactionManager);
+        this.maxFilas = maxFilas;
+    }
+
+    /**
+     * Importa usuarios recibidos como array JSON
+     */
+    public ImportacionUsuariosResponseDTO importar(List<UsuarioCreateDTO> usuarios) {
+        if (usuarios == null || usuarios.isEmpty()) {
+            throw new ValidationException("usuarios", "La importación no tiene filas");
+        }
+        validarCantidad(usuarios.size());
+
+        List<Fila> filas = new ArrayList<>(usuarios.size());
+        for (int i = 0; i < usuarios.size(); i++) {
+            filas.add(new Fila(i + 1, usuarios.get(i) != null ? usuarios.get(i) : new UsuarioCreateDTO()));
+        }
+        return procesar(filas);
+    }
+
+    /**
+     * Importa usuarios desde un CSV con cabecera (username,email,razonSocial,rol[,disenadorId]).
+     * Acepta coma o punto y coma como separador y valores entre comillas dobles.
+     * Se lee línea a línea del body del request, sin cargar el archivo entero.
+     */
+    public ImportacionUsuariosResponseDTO importarCsv(InputStream csv) {
+        List<Fila> filas = leerCsv(csv);
+        if (filas.isEmpty()) {
+            throw new ValidationException("archivo", "El CSV no tiene filas de datos");
+        }
+        return procesar(filas);
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private ImportacionUsuariosResponseDTO procesar(List<Fila> filas) {
+        long inicio = System.currentTimeMillis();
+        log.info("📥 Importación masiva de {} usuarios", filas.size());
+
+        // 1. Validar todo antes de crear nada
+        validar(filas);
+
+        // 2. Altas en Keycloak en paralelo; cada fila registra su propio resultado
+        List<Fila> validas = pendientes(filas);
+        if (!validas.isEmpty()) {
+            validarRoles(validas);
+            keycloakFanOut.map(validas, fila -> {
+                crearEnKeycloak(fila);
+                return fila;
+            });
+        }
+
+        // 3. BD + emails de activación en una sola transacción
+        List<Fila> creadas = pendientes(filas);
+        if (!creadas.isEmpty()) {
+            guardar(creadas);
+        }
+
+        List<ResultadoFilaDTO> resultados = filas.stream().map(Fila::toDto).collect(Collectors.toList());
+        int creados = (int) resultados.stream().filter(r -> r.getEstado() == ResultadoFilaDTO.Estado.CREADO).count();
+
+        log.info("✅ Importación masiva terminada en {} ms: {} creados, {} con error de {}",
+                System.currentTimeMillis() - inicio, creados, filas.size() - creados, filas.size());
+
+        return ImportacionUsuariosResponseDTO.builder()
+                .total(filas.size())
+                .creados(creados)
+                .fallidos(filas.size() - creados)
+                .filas(resultados)
+                .build();
+    }
+
+    private void validar(List<Fila> filas) {
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+
+        for (Fila fila : pendientes(filas)) {
+            UsuarioCreateDTO dto = fila.dto;
+            Set<ConstraintViolation<UsuarioCreateDTO>> violaciones = validator.validate(dto);
+
+            if (!violaciones.isEmpty()) {
+                fila.marcar(ResultadoFilaDTO.Estado.INVALIDO, violaciones.stream()
+                        .sorted(Comparator.comparing(v -> v.getPropertyPath().toString()))
+                        .map(ConstraintViolation::getMessage)
+                        .collect(Collectors.joining("; ")));
+            } else if (dto.getDisenadorId() != null && !"CLIENTE".equals(dto.getRol())) {
+                fila.marcar(ResultadoFilaDTO.Estado.INVALIDO, "Solo se puede asignar un diseñador a usuarios con rol CLIENTE");
+            } else if (!usernames.add(dto.getUsername().toLowerCase(Locale.ROOT))) {
+                fila.marcar(ResultadoFilaDTO.Estado.INVALIDO, "El username está repetido en la importación");
+            } else if (!emails.add(dto.getEmail().toLowerCase(Locale.ROOT))) {
+                fila.marcar(ResultadoFilaDTO.Estado.INVALIDO, "El email está repetido en la importación");
+            }
+        }
+
+        // Cada diseñador se valida una sola vez aunque lo compartan muchas filas
+        Set<UUID> disenadores = pendientes(filas).stream()
+                .map(fila -> fila.dto.getDisenadorId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<UUID, String> erroresDisenador = validarDisenadores(disenadores);
+
+        for (Fila fila : pendientes(filas)) {
+            String error = fila.dto.getDisenadorId() != null ? erroresDisenador.get(fila.dto.getDisenadorId()) : null;
+            if (error != null) {
+                fila.marcar(ResultadoFilaDTO.Estado.INVALIDO, error);
+            }
+        }
+    }
+
+    /**
+     * @return diseñador → motivo por el que no se puede asignar (sin entrada si es válido)
+     */
+    private Map<UUID, String> validarDisenadores(Set<UUID> disenadores) {
+        if (disenadores.isEmpty()) {
+            return Map.of();
+        }
+        Set<UUID> enBd = usuarioRepository.findAllById(disenadores).stream()
+                .map(Usuario::getId)
+                .collect(Collectors.toSet());
+
+        List<UUID> ids = new ArrayList<>(disenadores);
+        List<String> errores = keycloakFanOut.map(ids, id -> {
+            if (!enBd.contains(id)) {
+                return "El diseñador con ID " + id + " no existe";
+            }
+            List<KeycloakRole> roles = keycloakRoleCache.rolesDeUsuario(id.toString(), keycloakAdminService.getAdminToken());
+            boolean esDisenador = roles.stream().anyMatch(r -> "DISEÑADOR".equals(r.name()));
+            return esDisenador ? "" : "El usuario asignado no tiene el rol de DISEÑADOR";
+        });
+
+        Map<UUID, String> resultado = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (!errores.get(i).isEmpty()) {
+                resultado.put(ids.get(i), errores.get(i));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Cada rol usado en la importación tiene que existir (queda cargado en el catálogo de KeycloakRoleCache)
+     */
+    private void validarRoles(List<Fila> filas) {
+        String token = keycloakAdminService.getAdminToken();
+        for (String nombre : filas.stream().map(fila -> fila.dto.getRol()).collect(Collectors.toCollection(TreeSet::new))) {
+            if (keycloakRoleCache.rol(nombre, token) == null) {
+                throw new ValidationException("rol", "El rol '" + nombre + "' no existe");
+            }
+        }
+    }
+
+    /**
+     * Crea el usuario en Keycloak y le asigna el rol. No lanza excepciones: el resultado queda en la fila
+     * (una excepción cancelaría el resto del fan-out).
+     */
+    private void crearEnKeycloak(Fila fila) {
+        String token = keycloakAdminService.getAdminToken();
+        String userId;
+        try {
+            userId = keycloakClient.crearUsuario(fila.dto, token);
+        } catch (KeycloakException e) {
+            if (HTTP_CONFLICT.equals(e.getStatusCode())) {
+                fila.marcar(ResultadoFilaDTO.Estado.EXISTENTE, "Ya existe un usuario con ese username o email");
+            } else {
+                log.error("❌ Error creando {} en Keycloak: {}", fila.dto.getUsername(), e.getMessage());
+                fila.marcar(ResultadoFilaDTO.Estado.ERROR, e.getMessage());
+            }
+            return;
+        } catch (RuntimeException e) {
+            log.error("❌ Error creando {} en Keycloak: {}", fila.dto.getUsername(), e.getMessage());
+            fila.marcar(ResultadoFilaDTO.Estado.ERROR, e.getMessage());
+            return;
+        }
+
+        try {
+            // Usuario recién creado: no tiene roles de la aplicación que quitar antes.
+            // Con el catálogo de KeycloakRoleCache (reintenta si el id del rol quedó viejo)
+            keycloakRoleCache.asignarRol(userId, fila.dto.getRol(), token);
+            fila.userId = userId;
+        } catch (RuntimeException e) {
+            log.error("❌ Error configurando {} en Keycloak: {}", fila.dto.getUsername(), e.getMessage());
+            eliminarDeKeycloak(userId);
+            fila.marcar(ResultadoFilaDTO.Estado.ERROR, e.getMessage());
+        }
+    }
+
+    private void guardar(List<Fila> filas) {
+        OffsetDateTime ahora = OffsetDateTime.now();
+        List<Usuario> usuarios = new ArrayList<>(filas.size());
+        for (Fila fila : filas) {
+            fila.usuario = new Usuario();
+            fila.usuario.setId(UUID.fromString(fila.userId));
+            fila.usuario.setFechaRegistro(ahora);
+            fila.usuario.setStatus(UsuarioStatus.PENDING);
+            usuarioSyncService.copiarDatos(fila.usuario, fila.dto.getUsername(), fila.dto.getEmail(),
+                    fila.dto.getRazonSocial(), fila.dto.getRol());
+            usuarios.add(fila.usuario);
+        }
+
+        try {
+            alta.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_USUARIO, filas, filas.size(), (ps, fila) -> {
+                    Usuario usuario = fila.usuario;
+                    ps.setObject(1, usuario.getId());
+                    ps.setObject(2, usuario.getFechaRegistro());
+                    ps.setString(3, usuario.getStatus().name());
+                    ps.setObject(4, fila.dto.getDisenadorId(), Types.OTHER);
+                    ps.setString(5, usuario.getUsername());
+                    ps.setString(6, usuario.getEmail());
+                    ps.setString(7, usuario.getRazonSocial());
+                    ps.setString(8, usuario.getRol());
+                    ps.setObject(9, usuario.getSincronizadoEn());
+                });
+                emailVerificationService.createAndSendActivations(usuarios);
+            });
+            filas.forEach(fila -> fila.marcar(ResultadoFilaDTO.Estado.CREADO, null));
+            log.info("💾 {} usuarios guardados en BD con estado PENDING y emails de activación encolados", filas.size());
+
+        } catch (RuntimeException e) {
+            log.error("❌ Error guardando la importación en BD, se eliminan {} usuarios de Keycloak: {}",
+                    filas.size(), e.getMessage(), e);
+            keycloakFanOut.map(filas, fila -> {
+                eliminarDeKeycloak(fila.userId);
+                return fila;
+            });
+            filas.forEach(fila -> {
+                fila.userId = null;
+                fila.marcar(ResultadoFilaDTO.Estado.ERROR,
+                        "No se pudo guardar en la base de datos (se revirtió el alta en Keycloak)");
+            });
+        }
+    }
+
+    private void eliminarDeKeycloak(String userId) {
+        try {
+            keycloakClient.eliminarUsuario(userId, keycloakAdminService.getAdminToken());
+            log.info("Rollback ejecutado: usuario {} eliminado de Keycloak", userId);
+        } catch (Exception e) {
+            log.error("Error en rollback del usuario {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private void validarCantidad(int cantidad) {
+        if (cantidad > maxFilas) {
+            throw new ValidationException("usuarios", "La importación admite como máximo " + maxFilas + " filas");
+        }
+    }
+
+    private static List<Fila> pendientes(List<Fila> filas) {
+        return filas.stream().filter(fila -> fila.estado == null).collect(Collectors.toList());
+    }
+
+    // ==================== LECTURA DE CSV ====================
+
+    private List<Fila> leerCsv(InputStream csv) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            String cabecera = reader.readLine();
+            if (cabecera == null || cabecera.isBlank()) {
+                throw new ValidationException("archivo", "El CSV está vacío");
+            }
+            // BOM que agrega Excel al guardar como "CSV UTF-8"
+            if (cabecera.charAt(0) == '\uFEFF') {
+                cabecera = cabecera.substring(1);
+            }
+            // Excel con configuración regional en español separa con punto y coma
+            char separador = cabecera.indexOf(';') >= 0 && cabecera.indexOf(',') < 0 ? ';' : ',';
+
+            Map<String, Integer> columnas = new HashMap<>();
+            List<String> nombres = parsearLinea(cabecera, separador);
+            for (int i = 0; i < nombres.size(); i++) {
+                columnas.put(nombres.get(i), i);
+            }
+            for (String obligatoria : COLUMNAS_OBLIGATORIAS) {
+                if (!columnas.containsKey(obligatoria)) {
+                    throw new ValidationException("archivo", "Falta la columna '" + obligatoria + "' en la cabecera");
+                }
+            }
+
+            List<Fila> filas = new ArrayList<>();
+            String linea;
+            while ((linea = reader.readLine()) != null) {
+                if (linea.isBlank()) {
+                    continue;
+                }
+                validarCantidad(filas.size() + 1);
+                filas.add(leerFila(filas.size() + 1, linea, separador, columnas));
+            }
+            return filas;
+
+        } catch (IOException e) {
+            throw new ValidationException("archivo", "No se pudo leer el CSV: " + e.getMessage());
+        }
+    }
+
+    private static Fila leerFila(int numero, String linea, char separador, Map<String, Integer> columnas) {
+        UsuarioCreateDTO dto = new UsuarioCreateDTO();
+        List<String> valores;
+        try {
+            valores = parsearLinea(linea, separador);
+        } catch (IllegalArgumentException e) {
+            Fila fila = new Fila(numero, dto);
+            fila.marcar(ResultadoFilaDTO.Estado.INVALIDO, e.getMessage());
+            return fila;
+        }
+
+        dto.setUsername(valor(valores, columnas, "username"));
+        dto.setEmail(valor(valores, columnas, "email"));
+        dto.setRazonSocial(valor(valores, columnas, "razonSocial"));
+        dto.setRol(valor(valores, columnas, "rol"));
+        Fila fila = new Fila(numero, dto);
+
+        String disenadorId = valor(valores, columnas, COLUMNA_DISENADOR);
+        if (disenadorId != null) {
+            try {
+                dto.setDisenadorId(UUID.fromString(disenadorId));
+            } catch (IllegalArgumentException e) {
+                fila.marcar(ResultadoFilaDTO.Estado.INVALIDO, "El disenadorId '" + disenadorId + "' no es un UUID válido");
+            }
+        }
+        return fila;
+    }
+
+    private static String valor(List<String> valores, Map<String, Integer> columnas, String columna) {
+        Integer indice = columnas.get(columna);
+        if (indice == null || indice >= valores.size() || valores.get(indice).isEmpty()) {
+            return null;
+        }
+        return valores.get(indice);
+    }
+
+    /**
+     * Separa una línea CSV: valores entre comillas dobles pueden contener el separador
+     * y "" representa una comilla. No admite saltos de línea dentro de un valor.
+     */
+    static List<String> parsearLinea(String linea, char separador) {
+        List<String> valores = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        boolean entreComillas = false;
+
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c != '"') {
+                    actual.append(c);
+                } else if (i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    actual.append('"');
+                    i++;
+                } else {
+                    entreComillas = false;
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == separador) {
+                valores.add(actual.toString().trim());
+                actual.setLength(0);
+            } else {
+                actual.append(c);
+            }
+        }
+        if (entreComillas) {
+            throw new IllegalArgumentException("Fila con comillas sin cerrar");
+        }
+        valores.add(actual.toString().trim());
+        return valores;
+    }
+
+    /**
+     * Estado de una fila durante la importación (estado null = sigue en proceso)
+     */
+    private static class Fila {
+        final int numero;
+        final UsuarioCreateDTO dto;
+        volatile ResultadoFilaDTO.Estado estado;
+        volatile String mensaje;
+        volatile String userId;
+        Usuario usuario;
+
+        Fila(int numero, UsuarioCreateDTO dto) {
+            this.numero = numero;
+            this.dto = dto;
+        }
+
+        void marcar(ResultadoFilaDTO.Estado estado, String mensaje) {
+            this.estado = estado;
+            this.mensaje = mensaje;
+        }
+
+        ResultadoFilaDTO toDto() {
+            return ResultadoFilaDTO.builder()
+                    .fila(numero)
+                    .username(dto.getUsername())
+                    .estado(estado)
+                    .userId(userId)
+                    .mensaje(mensaje)
+                    .build();
+        }
+    }
+}
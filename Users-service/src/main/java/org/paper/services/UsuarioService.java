@@ -1,7 +1,13 @@
 package org.paper.services;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.paper.clients.KeycloakClient;
+import org.paper.clients.keycloak.KeycloakRole;
+import org.paper.clients.keycloak.KeycloakUser;
+import org.paper.clients.KeycloakFanOut;
+import org.paper.clients.KeycloakRoleCache;
 import org.paper.dto.UsuarioCreateDTO;
 import org.paper.dto.UsuarioResponseDTO;
 import org.paper.entity.Usuario;
@@ -11,13 +17,29 @@ import org.paper.exception.UsuarioNotFoundException;
 import org.paper.exception.UsuarioYaExisteException;
 import org.paper.exception.ValidationException;
 import org.paper.repository.UsuarioRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Servicio de lógica de negocio para usuarios.
@@ -27,19 +49,46 @@ import java.util.stream.Collectors;
 @Service
 public class UsuarioService {
 
+    private static final List<String> ROLES_APLICACION = UsuarioSyncService.ROLES_APLICACION;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final List<String> CAMPOS_ORDEN = List.of("username", "email", "razonSocial");
+    private static final String HEADER_TOTAL = "X-Total-Count";
+    private static final int FLUSH_CADA = 100;
+    // Tamaño máximo de un IN (ver obtenerDisenadores)
+    private static final int LOTE_IDS = 1000;
+
     private final KeycloakAdminService keycloakAdminService;
     private final UsuarioRepository usuarioRepository;
     private final EmailVerificationService emailVerificationService;
     private final KeycloakClient keycloakClient;
+    private final KeycloakFanOut keycloakFanOut;
+    private final KeycloakRoleCache keycloakRoleCache;
+    private final UsuarioSyncService usuarioSyncService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate lecturaListado;
+    private final int maxConcurrency;
 
     public UsuarioService(KeycloakAdminService keycloakAdminService,
                           UsuarioRepository usuarioRepository,
                           EmailVerificationService emailVerificationService,
-                          KeycloakClient keycloakClient) {
+                          KeycloakClient keycloakClient,
+                          KeycloakFanOut keycloakFanOut,
+                          KeycloakRoleCache keycloakRoleCache,
+                          UsuarioSyncService usuarioSyncService,
+                          ObjectMapper objectMapper,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${app.keycloak.fan-out.max-concurrency:16}") int maxConcurrency) {
         this.keycloakAdminService = keycloakAdminService;
         this.usuarioRepository = usuarioRepository;
         this.emailVerificationService = emailVerificationService;
         this.keycloakClient = keycloakClient;
+        this.keycloakFanOut = keycloakFanOut;
+        this.keycloakRoleCache = keycloakRoleCache;
+        this.usuarioSyncService = usuarioSyncService;
+        this.objectMapper = objectMapper;
+        this.lecturaListado = new TransactionTemplate(transactionManager);
+        this.lecturaListado.setReadOnly(true);
+        this.maxConcurrency = maxConcurrency;
     }
 
     /**
@@ -51,31 +100,30 @@ public class UsuarioService {
         log.info("Iniciando creación de usuario: {} con rol: {}", usuario.getUsername(), usuario.getRol());
         String token = keycloakAdminService.getAdminToken();
 
-        // Verificar que el usuario no exista
-        String existingUserId = keycloakClient.obtenerUserId(usuario.getUsername(), token);
-        if (existingUserId != null) {
-            throw new UsuarioYaExisteException(usuario.getUsername());
-        }
-
-        // 1. Crear usuario en Keycloak (sin contraseña aún)
-        keycloakClient.crearUsuario(usuario, token);
-
-        String userId = keycloakClient.obtenerUserId(usuario.getUsername(), token);
-        if (userId == null) {
-            throw new KeycloakException("obtener UUID", "No se pudo obtener el identificador del usuario creado");
+        // 1. Crear usuario en Keycloak (sin contraseña aún).
+        // No se busca antes si existe: Keycloak responde 409 si el username o el email están en uso
+        String userId;
+        try {
+            userId = keycloakClient.crearUsuario(usuario, token);
+        } catch (KeycloakException e) {
+            if (Integer.valueOf(HttpStatus.CONFLICT.value()).equals(e.getStatusCode())) {
+                throw new UsuarioYaExisteException(usuario.getUsername(), e);
+            }
+            throw e;
         }
-        log.info("Usuario creado en Keycloak con ID: {}", userId);
 
         try {
 
-            // 2. Asignar el rol especificado
-            cambiarRolUsuario(userId, usuario.getRol(), token);
+            // 2. Asignar el rol especificado (usuario recién creado: no hay roles anteriores que quitar)
+            asignarRol(userId, usuario.getRol(), false, token);
 
             // 3. Guardar en la base de datos con estado PENDING (pendiente de activación)
             Usuario entity = new Usuario();
             entity.setId(UUID.fromString(userId));
             entity.setFechaRegistro(OffsetDateTime.now());
             entity.setStatus(UsuarioStatus.PENDING);
+            usuarioSyncService.copiarDatos(entity, usuario.getUsername(), usuario.getEmail(),
+                    usuario.getRazonSocial(), usuario.getRol());
 
             // NUEVA LÓGICA: Asignación de Diseñador
             if (usuario.getDisenadorId() != null) {
@@ -88,14 +136,8 @@ public class UsuarioService {
             usuarioRepository.save(entity);
             log.info("Usuario {} guardado en BD con estado PENDING", usuario.getUsername());
 
-            // 4. Enviar email de ACTIVACIÓN (no solo verificación)
-            try {
-                emailVerificationService.createAndSendActivation(userId, usuario.getUsername(), usuario.getEmail());
-                log.info("✅ Email de activación enviado a {}", usuario.getEmail());
-            } catch (Exception emailEx) {
-                log.warn("⚠️ No se pudo enviar email de activación a {}: {}. Usuario creado de todas formas.",
-                        usuario.getEmail(), emailEx.getMessage());
-            }
+            // 4. Encolar email de ACTIVACIÓN en la misma transacción: sale solo si el alta se confirma
+            emailVerificationService.createAndSendActivation(userId, usuario.getUsername(), usuario.getEmail());
 
             return ResponseEntity.ok("✅ Usuario creado correctamente. Se ha enviado un email de activación a " +
                     usuario.getEmail() + ". El usuario debe activar su cuenta y establecer su contraseña desde el link del email.");
@@ -141,18 +183,35 @@ public class UsuarioService {
 
     /**
      * NUEVO: Listar clientes de un diseñador específico
+     * Los ids salen de una sola consulta a la BD (el diseñador ya se conoce: no se busca por cliente).
+     * Los datos de Keycloak se piden en un pipeline no bloqueante: usuario y roles de cada cliente
+     * a la vez, con hasta maxConcurrency clientes en vuelo. Un cliente borrado en Keycloak se omite.
      */
     public List<UsuarioResponseDTO> listarMisClientes(String disenadorId) {
         String token = keycloakAdminService.getAdminToken();
 
-        // Buscar en BD local usando la relación
-        List<Usuario> clientes = usuarioRepository.findByDisenadorId(UUID.fromString(disenadorId));
+        List<UUID> clientes = usuarioRepository.findClienteIdsByDisenadorId(UUID.fromString(disenadorId));
+        if (clientes.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        // Convertir a DTOs trayendo datos de Keycloak
-        return clientes.stream().map(cliente -> {
-            Map<String, Object> kcUser = keycloakClient.obtenerUsuarioPorId(cliente.getId().toString(), token);
-            return mapearUsuarioResponse(kcUser, token);
-        }).collect(Collectors.toList());
+        // flatMapSequential: respeta el orden de la consulta aunque las respuestas lleguen desordenadas.
+        // Primero el usuario y después sus roles: un cliente borrado en Keycloak (404 en cualquiera
+        // de las dos llamadas) se omite en lugar de cortar todo el listado
+        return Flux.fromIterable(clientes)
+                .map(UUID::toString)
+                .flatMapSequential(clienteId -> keycloakClient.obtenerUsuarioPorIdAsync(clienteId, token)
+                                .flatMap(user -> keycloakRoleCache.rolesDeUsuarioAsync(clienteId, token)
+                                        .map(roles -> mapearUsuarioResponse(user,
+                                                roles.stream().map(KeycloakRole::name).collect(Collectors.toList()),
+                                                disenadorId)))
+                                .onErrorResume(WebClientResponseException.NotFound.class, e -> {
+                                    log.warn("⚠️ Cliente {} ya no existe en Keycloak, se omite del listado", clienteId);
+                                    return Mono.empty();
+                                }),
+                        maxConcurrency)
+                .collectList()
+                .block();
     }
 
     // --- MÉTODOS PRIVADOS ---
@@ -163,8 +222,8 @@ public class UsuarioService {
                 .orElseThrow(() -> new ValidationException("disenadorId", "El diseñador con ID " + disenadorId + " no existe"));
 
         // Verificar en Keycloak que tenga el rol DISEÑADOR
-        List<Map<String, Object>> roles = keycloakClient.listarRolesDeUsuario(disenadorId.toString(), token);
-        boolean esDisenador = roles.stream().anyMatch(r -> "DISEÑADOR".equals(r.get("name")));
+        List<KeycloakRole> roles = keycloakRoleCache.rolesDeUsuario(disenadorId.toString(), token);
+        boolean esDisenador = roles.stream().anyMatch(r -> "DISEÑADOR".equals(r.name()));
 
         if (!esDisenador) {
             throw new ValidationException("disenadorId", "El usuario asignado no tiene el rol de DISEÑADOR");
@@ -197,6 +256,8 @@ public class UsuarioService {
             log.error("Error eliminando en Keycloak. Restaurando backup en DB.", e);
             backup.ifPresent(usuarioRepository::save);
             throw e;
+        } finally {
+            keycloakRoleCache.invalidar(userId);
         }
 
         return ResponseEntity.ok("Usuario eliminado correctamente");
@@ -215,97 +276,295 @@ public class UsuarioService {
      */
     public void cambiarRolUsuario(String userId, String nuevoRol, String token) {
         log.debug("Cambiando rol para usuario {}: {}", userId, nuevoRol);
+        asignarRol(userId, nuevoRol, true, token);
+
+        // Write-through a la copia local
+        usuarioRepository.findById(UUID.fromString(userId)).ifPresent(local -> {
+            local.setRol(nuevoRol);
+            local.setSincronizadoEn(OffsetDateTime.now());
+            usuarioRepository.save(local);
+        });
+        log.info("Rol {} asignado correctamente al usuario {}", nuevoRol, userId);
+    }
 
+    /**
+     * Lista usuarios (todos o los de un rol) paginado, ordenado y con búsqueda por prefijo
+     * en username, email o razón social. El JSON se escribe a medida que se leen las filas,
+     * así la memoria no depende del tamaño del realm.
+     * Se sirve desde la copia local una vez hecha la primera sincronización; antes, desde Keycloak.
+     * En ese caso una página de un rol sin búsqueda y ordenada por username (el orden de Keycloak)
+     * se pide con first/max; como Keycloak no cuenta los miembros de un rol, X-Total-Count solo
+     * se envía si la página es la última.
+     *
+     * @param rol  ADMIN, CLIENTE, DISEÑADOR o null para todos
+     * @param q    prefijo a buscar (sin distinguir mayúsculas), opcional
+     * @param sort campo[,asc|desc] con campo username, email o razonSocial (por defecto username)
+     */
+    public ResponseEntity<StreamingResponseBody> listarUsuarios(String rol, String q, String sort, Integer page, Integer size) {
+        if (rol != null && !ROLES_APLICACION.contains(rol)) {
+            throw new ValidationException("rol", "El rol debe ser ADMIN, CLIENTE o DISEÑADOR");
+        }
+        if ((page == null) != (size == null)) {
+            throw new ValidationException("page", "page y size deben enviarse juntos");
+        }
+        if (size != null && (page < 0 || size < 1 || size > MAX_PAGE_SIZE)) {
+            throw new ValidationException("size", "page debe ser >= 0 y size entre 1 y " + MAX_PAGE_SIZE);
+        }
+        Sort orden = parsearOrden(sort);
+        String prefijo = q == null || q.isBlank() ? null : q.trim().toLowerCase(Locale.ROOT);
+
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+
+        if (usuarioSyncService.isSincronizado()) {
+            String patron = prefijo == null ? "%" : escaparLike(prefijo) + "%";
+            if (size != null) {
+                respuesta.header(HEADER_TOTAL, String.valueOf(usuarioRepository.contarListado(rol, patron)));
+            }
+            // Corre en el thread de escritura de la respuesta: el stream necesita su propia transacción
+            return respuesta.body(out -> lecturaListado.executeWithoutResult(status -> {
+                try (Stream<UsuarioRepository.UsuarioListado> filas = size == null
+                        ? usuarioRepository.streamListado(rol, patron, orden)
+                        : usuarioRepository.streamListado(rol, patron, PageRequest.of(page, size, orden))) {
+                    escribirJson(out, filas.map(this::mapearListado).iterator());
+                }
+            }));
+        }
+
+        Sort.Order primero = orden.iterator().next();
+        if (size != null && rol != null && prefijo == null
+                && primero.getProperty().equals(CAMPOS_ORDEN.get(0)) && primero.isAscending()) {
+            long desde = (long) page * size;
+            List<UsuarioResponseDTO> pagina = desde > Integer.MAX_VALUE
+                    ? List.of()
+                    : listarPaginaDesdeKeycloak(rol, (int) desde, size);
+            if (pagina.size() < size && (pagina.size() > 0 || desde == 0)) {
+                respuesta.header(HEADER_TOTAL, String.valueOf(desde + pagina.size()));
+            }
+            return respuesta.body(out -> escribirJson(out, pagina.iterator()));
+        }
+
+        List<UsuarioResponseDTO> todos = listarDesdeKeycloak(rol).stream()
+                .filter(u -> prefijo == null || empiezaCon(u.getUsername(), prefijo)
+                        || empiezaCon(u.getEmail(), prefijo) || empiezaCon(u.getRazonSocial(), prefijo))
+                .sorted(comparador(orden))
+                .collect(Collectors.toList());
+        // En long: page * size puede pasarse de int
+        List<UsuarioResponseDTO> pagina = size == null
+                ? todos
+                : todos.subList((int) Math.min((long) page * size, todos.size()),
+                        (int) Math.min(((long) page + 1) * size, todos.size()));
+        if (size != null) {
+            respuesta.header(HEADER_TOTAL, String.valueOf(todos.size()));
+        }
+        return respuesta.body(out -> escribirJson(out, pagina.iterator()));
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    /**
+     * Asigna el rol en Keycloak. Con quitarActuales se eliminan antes los roles que ya tenía
+     * (cambio de rol); en un alta se omite, el usuario recién creado no tiene roles que quitar.
+     */
+    private void asignarRol(String userId, String nuevoRol, boolean quitarActuales, String token) {
         // Validar que el rol sea válido
         if (!nuevoRol.matches("^(ADMIN|CLIENTE|DISEÑADOR)$")) {
             throw new ValidationException("rol", "El rol debe ser ADMIN, CLIENTE o DISEÑADOR");
         }
 
-        // Eliminar roles actuales
-        List<Map<String, Object>> rolesActuales = keycloakClient.listarRolesDeUsuario(userId, token);
-        if (rolesActuales != null && !rolesActuales.isEmpty()) {
-            keycloakClient.eliminarRolesDeUsuario(userId, rolesActuales, token);
+        if (keycloakRoleCache.rol(nuevoRol, token) == null) {
+            throw new ValidationException("rol", "El rol '" + nuevoRol + "' no existe");
+        }
+
+        try {
+            if (quitarActuales) {
+                // Se leen de Keycloak, no de la cache: hay que quitar exactamente los que tiene ahora
+                List<KeycloakRole> rolesActuales = keycloakClient.listarRolesDeUsuario(userId, token);
+                if (rolesActuales != null && !rolesActuales.isEmpty()) {
+                    keycloakClient.eliminarRolesDeUsuario(userId, rolesActuales, token);
+                }
+            }
+            keycloakRoleCache.asignarRol(userId, nuevoRol, token);
+        } finally {
+            // También si falla a mitad de camino: los roles pueden haber cambiado igual
+            keycloakRoleCache.invalidar(userId);
         }
+    }
+
+    /**
+     * Listado completo armado desde Keycloak, mientras la copia local no está sincronizada.
+     * Sin rol: roles con una consulta por rol (no por usuario). Con rol: los miembros del rol directamente.
+     */
+    private List<UsuarioResponseDTO> listarDesdeKeycloak(String rol) {
+        String token = keycloakAdminService.getAdminToken();
 
-        // Asignar nuevo rol
-        Map<String, Object> rol = keycloakClient.obtenerRolPorNombre(nuevoRol, token);
         if (rol == null) {
-            throw new ValidationException("rol", "El rol '" + nuevoRol + "' no existe");
+            List<KeycloakUser> users = keycloakClient.listarUsuarios(token);
+            if (users == null || users.isEmpty()) {
+                return new ArrayList<>();
+            }
+            Map<String, List<String>> rolesPorUsuario = obtenerRolesPorUsuario(token);
+            Map<UUID, UUID> disenadorPorUsuario = obtenerDisenadores(users);
+            return users.stream()
+                    .map(user -> {
+                        String userId = user.id();
+                        UUID disenadorId = disenadorPorUsuario.get(UUID.fromString(userId));
+                        return mapearUsuarioResponse(user,
+                                rolesPorUsuario.getOrDefault(userId, List.of()),
+                                disenadorId != null ? disenadorId.toString() : null);
+                    })
+                    .collect(Collectors.toList());
         }
 
-        keycloakClient.agregarRolesAUsuario(userId, List.of(rol), token);
-        log.info("Rol {} asignado correctamente al usuario {}", nuevoRol, userId);
+        return mapearMiembros(keycloakClient.listarUsuariosConRol(rol, token), rol);
     }
 
     /**
-     * Lista todos los usuarios del sistema
+     * Una página de los miembros de un rol, pedida a Keycloak con first/max
      */
-    public ResponseEntity<List<UsuarioResponseDTO>> listarUsuarios() {
+    private List<UsuarioResponseDTO> listarPaginaDesdeKeycloak(String rol, int first, int max) {
         String token = keycloakAdminService.getAdminToken();
-        List<Map<String, Object>> users = keycloakClient.listarUsuarios(token);
+        return mapearMiembros(keycloakClient.listarUsuariosConRol(rol, first, max, token), rol);
+    }
 
-        if (users == null) {
-            return ResponseEntity.ok(new ArrayList<>());
+    private List<UsuarioResponseDTO> mapearMiembros(List<KeycloakUser> miembros, String rol) {
+        if (miembros == null || miembros.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        List<UsuarioResponseDTO> response = users.stream()
-                .map(user -> mapearUsuarioResponse(user, token))
+        // El listado ya viene con briefRepresentation=false: un miembro sin atributos no los tiene
+        // (Keycloak omite el mapa vacío), no hace falta pedirlo de a uno
+        Map<UUID, UUID> disenadorPorUsuario = obtenerDisenadores(miembros);
+
+        // La aplicación asigna un único rol por usuario (ver cambiarRolUsuario)
+        List<String> roles = List.of(rol);
+        return miembros.stream()
+                .map(user -> {
+                    UUID disenadorId = disenadorPorUsuario.get(UUID.fromString(user.id()));
+                    return mapearUsuarioResponse(user, roles, disenadorId != null ? disenadorId.toString() : null);
+                })
                 .collect(Collectors.toList());
+    }
 
-        return ResponseEntity.ok(response);
+    private UsuarioResponseDTO mapearListado(UsuarioRepository.UsuarioListado fila) {
+        return new UsuarioResponseDTO(
+                fila.getId().toString(),
+                fila.getUsername(),
+                fila.getEmail(),
+                fila.getRazonSocial() != null ? fila.getRazonSocial() : "",
+                fila.getRol() != null ? List.of(fila.getRol()) : List.of(),
+                fila.getDisenadorId() != null ? fila.getDisenadorId().toString() : null);
     }
 
     /**
-     * Lista usuarios filtrados por rol
+     * Escribe un array JSON elemento por elemento, vaciando el buffer cada tantas filas
      */
-    public ResponseEntity<List<UsuarioResponseDTO>> listarUsuariosPorRol(String rolBuscado) {
-        ResponseEntity<List<UsuarioResponseDTO>> allUsersResponse = listarUsuarios();
+    private void escribirJson(OutputStream out, Iterator<UsuarioResponseDTO> usuarios) {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            // El stream de la respuesta lo cierra Spring
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartArray();
+            int escritos = 0;
+            while (usuarios.hasNext()) {
+                json.writeObject(usuarios.next());
+                if (++escritos % FLUSH_CADA == 0) {
+                    json.flush();
+                }
+            }
+            json.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error escribiendo el listado de usuarios", e);
+        }
+    }
 
-        if (!allUsersResponse.getStatusCode().is2xxSuccessful() || allUsersResponse.getBody() == null) {
-            throw new KeycloakException("listar usuarios por rol", "No se pudo obtener la lista de usuarios");
+    private Sort parsearOrden(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return Sort.by(CAMPOS_ORDEN.get(0)).and(Sort.by("id"));
+        }
+        String[] partes = sort.split(",");
+        String campo = partes[0].trim();
+        if (!CAMPOS_ORDEN.contains(campo)) {
+            throw new ValidationException("sort", "El orden debe ser por " + String.join(", ", CAMPOS_ORDEN));
         }
+        Sort.Direction direccion = partes.length > 1
+                ? Sort.Direction.fromOptionalString(partes[1].trim())
+                        .orElseThrow(() -> new ValidationException("sort", "La dirección debe ser asc o desc"))
+                : Sort.Direction.ASC;
+        // id como desempate: el orden tiene que ser estable para que las páginas no se solapen
+        return Sort.by(direccion, campo).and(Sort.by("id"));
+    }
 
-        List<UsuarioResponseDTO> filtrados = allUsersResponse.getBody().stream()
-                .filter(u -> u.getRoles() != null && u.getRoles().contains(rolBuscado))
-                .collect(Collectors.toList());
+    private Comparator<UsuarioResponseDTO> comparador(Sort orden) {
+        Sort.Order primero = orden.iterator().next();
+        Function<UsuarioResponseDTO, String> campo = switch (primero.getProperty()) {
+            case "email" -> UsuarioResponseDTO::getEmail;
+            case "razonSocial" -> UsuarioResponseDTO::getRazonSocial;
+            default -> UsuarioResponseDTO::getUsername;
+        };
+        Comparator<UsuarioResponseDTO> comparador = Comparator.comparing(campo,
+                Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+        if (primero.isDescending()) {
+            comparador = comparador.reversed();
+        }
+        return comparador.thenComparing(UsuarioResponseDTO::getId);
+    }
 
-        return ResponseEntity.ok(filtrados);
+    private static boolean empiezaCon(String valor, String prefijo) {
+        return valor != null && valor.toLowerCase(Locale.ROOT).startsWith(prefijo);
     }
 
-    // ==================== MÉTODOS PRIVADOS ====================
+    /**
+     * Escapa los comodines de LIKE (el escape por defecto de PostgreSQL es '\')
+     */
+    private static String escaparLike(String valor) {
+        return valor.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
 
     /**
-     * Mapea un usuario de Keycloak a DTO de respuesta
+     * Roles de la aplicación de cada usuario, armados desde los miembros de cada rol:
+     * tantas consultas a Keycloak como roles, sin importar la cantidad de usuarios
      */
-    private UsuarioResponseDTO mapearUsuarioResponse(Map<String, Object> user, String token) {
-        String userId = (String) user.get("id");
+    private Map<String, List<String>> obtenerRolesPorUsuario(String token) {
+        List<List<KeycloakUser>> miembrosPorRol = keycloakFanOut.map(ROLES_APLICACION,
+                rol -> keycloakClient.listarUsuariosConRol(rol, token));
+
+        Map<String, List<String>> rolesPorUsuario = new HashMap<>();
+        for (int i = 0; i < ROLES_APLICACION.size(); i++) {
+            String rol = ROLES_APLICACION.get(i);
+            for (KeycloakUser miembro : miembrosPorRol.get(i)) {
+                rolesPorUsuario.computeIfAbsent(miembro.id(), id -> new ArrayList<>()).add(rol);
+            }
+        }
+        return rolesPorUsuario;
+    }
 
-        // Obtener roles
-        List<Map<String, Object>> rolesMap = keycloakClient.listarRolesDeUsuario(userId, token);
-        List<String> roles = rolesMap.stream()
-                .map(role -> (String) role.get("name"))
+    private Map<UUID, UUID> obtenerDisenadores(List<KeycloakUser> users) {
+        List<UUID> ids = users.stream()
+                .map(user -> UUID.fromString(user.id()))
                 .collect(Collectors.toList());
 
-        // Obtener razón social de attributes
-        String razonSocial = "";
-        Map<String, Object> attributes = (Map<String, Object>) user.get("attributes");
-        if (attributes != null && attributes.get("razonSocial") instanceof List) {
-            List<String> rsList = (List<String>) attributes.get("razonSocial");
-            if (!rsList.isEmpty()) {
-                razonSocial = rsList.get(0);
+        // De a LOTE_IDS: el driver de Postgres acepta a lo sumo 32767 parámetros por sentencia
+        // (con el padding de Hibernate cada lote reusa una de pocas sentencias preparadas)
+        Map<UUID, UUID> disenadores = new HashMap<>();
+        for (int desde = 0; desde < ids.size(); desde += LOTE_IDS) {
+            List<UUID> lote = ids.subList(desde, Math.min(desde + LOTE_IDS, ids.size()));
+            for (UsuarioRepository.DisenadorAsignado fila : usuarioRepository.findDisenadoresByIdIn(lote)) {
+                if (fila.getDisenadorId() != null) {
+                    disenadores.put(fila.getId(), fila.getDisenadorId());
+                }
             }
         }
-        // Buscar info local para ver si tiene diseñador
-        Usuario usuarioLocal = usuarioRepository.findById(UUID.fromString(userId)).orElse(null);
-        String disenadorId = (usuarioLocal != null && usuarioLocal.getDisenador() != null)
-                ? usuarioLocal.getDisenador().getId().toString()
-                : null;
+        return disenadores;
+    }
 
+    /**
+     * Mapea un usuario de Keycloak a DTO de respuesta con roles y diseñador ya resueltos
+     */
+    private UsuarioResponseDTO mapearUsuarioResponse(KeycloakUser user, List<String> roles, String disenadorId) {
         return new UsuarioResponseDTO(
-                userId,
-                (String) user.get("username"),
-                (String) user.get("email"),
-                razonSocial,
+                user.id(),
+                user.username(),
+                user.email(),
+                user.razonSocial(),
                 roles,
                 disenadorId
 
@@ -0,0 +1,336 @@
+package org.paper.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.paper.clients.KeycloakClient;
+import org.paper.clients.KeycloakFanOut;
+import org.paper.clients.keycloak.KeycloakAdminEvent;
+import org.paper.clients.keycloak.KeycloakRole;
+import org.paper.clients.keycloak.KeycloakUser;
+import org.paper.entity.Usuario;
+import org.paper.entity.UsuarioStatus;
+import org.paper.exception.KeycloakException;
+import org.paper.repository.UsuarioRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Mantiene la copia de lectura de Keycloak en la tabla usuarios (username, email, razón social y rol).
+ * UsuarioService la actualiza al escribir (write-through); este servicio corrige lo que cambie
+ * por fuera de la aplicación (consola de Keycloak): una reconciliación completa al arrancar y
+ * cada cierta cantidad de ciclos, y en el medio solo los usuarios tocados según los eventos de
+ * administración del realm (si están habilitados).
+ *
+ * La reconciliación no guarda las entidades enteras: un upsert escribe solo las columnas de la copia,
+ * y únicamente en las filas que nadie actualizó desde que se empezó a leer Keycloak. Así no pisa el
+ * estado, el diseñador ni una escritura write-through más nueva que corrió en paralelo.
+ */
+@Slf4j
+@Service
+public class UsuarioSyncService {
+
+    // Roles de realm que maneja la aplicación, en orden de prioridad si un usuario tuviera más de uno
+    static final List<String> ROLES_APLICACION = List.of("ADMIN", "CLIENTE", "DISEÑADOR");
+
+    // Alta o actualización de la copia de lectura; la fila se pisa solo si no se escribió después de leer Keycloak
+    private static final String UPSERT_COPIA = """
+            INSERT INTO usuarios (id, fecha_registro, status, username, email, razon_social, rol, en_keycloak, sincronizado_en)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (id) DO UPDATE SET
+                username = EXCLUDED.username,
+                email = EXCLUDED.email,
+                razon_social = EXCLUDED.razon_social,
+                rol = EXCLUDED.rol,
+                en_keycloak = EXCLUDED.en_keycloak,
+                sincronizado_en = EXCLUDED.sincronizado_en
+            WHERE usuarios.sincronizado_en IS NULL OR usuarios.sincronizado_en < ?
+            """;
+
+    private final KeycloakAdminService keycloakAdminService;
+    private final KeycloakClient keycloakClient;
+    private final KeycloakFanOut keycloakFanOut;
+    private final UsuarioRepository usuarioRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final boolean adminEventsEnabled;
+    private final int fullEvery;
+
+    // true recién cuando terminó la primera reconciliación completa: antes se lista desde Keycloak
+    private final AtomicBoolean sincronizado = new AtomicBoolean(false);
+    private final AtomicBoolean enCurso = new AtomicBoolean(false);
+    private volatile long ultimoEventoMs;
+    private int ciclosIncrementales;
+
+    public UsuarioSyncService(KeycloakAdminService keycloakAdminService,
+                              KeycloakClient keycloakClient,
+                              KeycloakFanOut keycloakFanOut,
+                              UsuarioRepository usuarioRepository,
+                              JdbcTemplate jdbcTemplate,
+                              @Value("${app.user-sync.enabled:true}") boolean enabled,
+                              @Value("${app.user-sync.admin-events.enabled:false}") boolean adminEventsEnabled,
+                              @Value("${app.user-sync.full-every:12}") int fullEvery) {
+        this.keycloakAdminService = keycloakAdminService;
+        this.keycloakClient = keycloakClient;
+        this.keycloakFanOut = keycloakFanOut;
+        this.usuarioRepository = usuarioRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.adminEventsEnabled = adminEventsEnabled;
+        this.fullEvery = fullEvery;
+    }
+
+    /**
+     * true si los listados pueden servirse desde la base de datos
+     */
+    public boolean isSincronizado() {
+        return enabled && sincronizado.get();
+    }
+
+    @Scheduled(initialDelayString = "${app.user-sync.initial-delay-ms:10000}",
+            fixedDelayString = "${app.user-sync.interval-ms:300000}")
+    public void reconciliar() {
+        if (!enabled || !enCurso.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (adminEventsEnabled && sincronizado.get() && ciclosIncrementales < fullEvery) {
+                aplicarEventos();
+                ciclosIncrementales++;
+            } else {
+                reconciliacionCompleta();
+                ciclosIncrementales = 0;
+            }
+        } catch (Exception e) {
+            log.error("❌ Error sincronizando usuarios con Keycloak: {}", e.getMessage(), e);
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    /**
+     * Actualiza la copia de lectura de un usuario con los datos recién escritos en Keycloak.
+     * No guarda: el llamador persiste la entidad dentro de su transacción.
+     */
+    public void copiarDatos(Usuario usuario, String username, String email, String razonSocial, String rol) {
+        usuario.setUsername(username);
+        usuario.setEmail(email);
+        usuario.setRazonSocial(razonSocial);
+        usuario.setRol(rol);
+        usuario.setEnKeycloak(true);
+        usuario.setSincronizadoEn(OffsetDateTime.now());
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    /**
+     * Recorre todo el realm (paginado) y los miembros de cada rol, y solo escribe las filas que cambiaron
+     */
+    private void reconciliacionCompleta() {
+        long inicio = System.currentTimeMillis();
+        String token = keycloakAdminService.getAdminToken();
+
+        List<KeycloakUser> users = keycloakClient.listarUsuarios(token);
+        Map<String, String> rolPorUsuario = obtenerRolPorUsuario(token);
+        Map<UUID, Usuario> locales = usuarioRepository.findAll().stream()
+                .collect(Collectors.toMap(Usuario::getId, Function.identity()));
+
+        OffsetDateTime ahora = OffsetDateTime.now();
+        List<Usuario> cambios = new ArrayList<>();
+        int altas = 0;
+
+        for (KeycloakUser user : users) {
+            String userId = user.id();
+            Usuario local = locales.remove(UUID.fromString(userId));
+            if (local == null) {
+                local = nuevoUsuario(user);
+                aplicar(local, user, rolPorUsuario.get(userId), ahora);
+                cambios.add(local);
+                altas++;
+            } else if (aplicar(local, user, rolPorUsuario.get(userId), ahora)) {
+                cambios.add(local);
+            }
+        }
+
+        // Lo que quedó existe en la base pero ya no en Keycloak: se oculta, no se borra (tiene diseños asociados).
+        // Las filas escritas después de leer Keycloak son altas nuevas, no huérfanas
+        int bajas = 0;
+        for (Usuario huerfano : locales.values()) {
+            boolean anterior = huerfano.getSincronizadoEn() == null
+                    || huerfano.getSincronizadoEn().toInstant().toEpochMilli() < inicio;
+            if (huerfano.isEnKeycloak() && anterior) {
+                huerfano.setEnKeycloak(false);
+                huerfano.setSincronizadoEn(ahora);
+                cambios.add(huerfano);
+                bajas++;
+            }
+        }
+
+        // Un alta o un cambio hecho por la aplicación mientras corría la reconciliación no se pisa
+        guardar(cambios, Instant.ofEpochMilli(inicio));
+        ultimoEventoMs = inicio;
+        sincronizado.set(true);
+
+        log.info("🔄 Reconciliación completa con Keycloak: {} usuarios, {} actualizados ({} nuevos, {} ausentes) en {}ms",
+                users.size(), cambios.size(), altas, bajas, System.currentTimeMillis() - inicio);
+    }
+
+    /**
+     * Re-sincroniza solo los usuarios que aparecen en eventos de administración posteriores al último procesado
+     */
+    private void aplicarEventos() {
+        long desde = ultimoEventoMs;
+        String token = keycloakAdminService.getAdminToken();
+        LocalDate fechaDesde = Instant.ofEpochMilli(desde).atZone(ZoneOffset.UTC).toLocalDate().minusDays(1);
+
+        Set<String> afectados = new LinkedHashSet<>();
+        long maximo = desde;
+        for (KeycloakAdminEvent evento : keycloakClient.listarEventosAdmin(fechaDesde, token)) {
+            long time = evento.time();
+            String path = evento.resourcePath();
+            if (time <= desde || path == null || !path.startsWith("users/")) {
+                continue;
+            }
+            String resto = path.substring("users/".length());
+            int barra = resto.indexOf('/');
+            afectados.add(barra < 0 ? resto : resto.substring(0, barra));
+            maximo = Math.max(maximo, time);
+        }
+
+        if (afectados.isEmpty()) {
+            return;
+        }
+
+        OffsetDateTime ahora = OffsetDateTime.now();
+        List<Usuario> cambios = keycloakFanOut.map(new ArrayList<>(afectados), userId -> resincronizar(userId, token, ahora))
+                .stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        guardar(cambios, ahora.toInstant());
+        ultimoEventoMs = maximo;
+        log.info("🔄 Sincronización incremental: {} usuarios con eventos, {} actualizados", afectados.size(), cambios.size());
+    }
+
+    /**
+     * Trae un usuario y sus roles de Keycloak; devuelve la entidad solo si hubo cambios
+     */
+    private Usuario resincronizar(String userId, String token, OffsetDateTime ahora) {
+        UUID id = UUID.fromString(userId);
+        Optional<Usuario> existente = usuarioRepository.findById(id);
+
+        KeycloakUser user;
+        try {
+            user = keycloakClient.obtenerUsuarioPorId(userId, token);
+        } catch (KeycloakException e) {
+            if (!Integer.valueOf(404).equals(e.getStatusCode())) {
+                throw e;
+            }
+            // Borrado en Keycloak
+            return existente.filter(Usuario::isEnKeycloak).map(local -> {
+                local.setEnKeycloak(false);
+                local.setSincronizadoEn(ahora);
+                return local;
+            }).orElse(null);
+        }
+
+        List<String> roles = keycloakClient.listarRolesDeUsuario(userId, token).stream()
+                .map(KeycloakRole::name)
+                .collect(Collectors.toList());
+        String rol = ROLES_APLICACION.stream().filter(roles::contains).findFirst().orElse(null);
+
+        Usuario local = existente.orElseGet(() -> nuevoUsuario(user));
+        return aplicar(local, user, rol, ahora) ? local : null;
+    }
+
+    /**
+     * Escribe la copia de lectura en un batch JDBC. Las filas actualizadas desde leidoDesde
+     * (write-through de UsuarioService) se dejan como están: la próxima reconciliación las revisa
+     */
+    private void guardar(List<Usuario> cambios, Instant leidoDesde) {
+        if (cambios.isEmpty()) {
+            return;
+        }
+        Timestamp desde = Timestamp.from(leidoDesde);
+        jdbcTemplate.batchUpdate(UPSERT_COPIA, cambios, cambios.size(), (ps, usuario) -> {
+            ps.setObject(1, usuario.getId());
+            ps.setTimestamp(2, Timestamp.from(usuario.getFechaRegistro().toInstant()));
+            ps.setString(3, usuario.getStatus().name());
+            ps.setString(4, usuario.getUsername());
+            ps.setString(5, usuario.getEmail());
+            ps.setString(6, usuario.getRazonSocial());
+            ps.setString(7, usuario.getRol());
+            ps.setBoolean(8, usuario.isEnKeycloak());
+            ps.setTimestamp(9, Timestamp.from(usuario.getSincronizadoEn().toInstant()));
+            ps.setTimestamp(10, desde);
+        });
+    }
+
+    /**
+     * Rol de la aplicación de cada usuario, armado desde los miembros de cada rol
+     */
+    private Map<String, String> obtenerRolPorUsuario(String token) {
+        List<List<KeycloakUser>> miembrosPorRol = keycloakFanOut.map(ROLES_APLICACION,
+                rol -> keycloakClient.listarUsuariosConRol(rol, token));
+
+        Map<String, String> rolPorUsuario = new HashMap<>();
+        for (int i = 0; i < ROLES_APLICACION.size(); i++) {
+            String rol = ROLES_APLICACION.get(i);
+            for (KeycloakUser miembro : miembrosPorRol.get(i)) {
+                rolPorUsuario.putIfAbsent(miembro.id(), rol);
+            }
+        }
+        return rolPorUsuario;
+    }
+
+    /**
+     * Usuario creado desde la consola de Keycloak, sin fila local todavía
+     */
+    private Usuario nuevoUsuario(KeycloakUser user) {
+        Usuario usuario = new Usuario();
+        usuario.setId(UUID.fromString(user.id()));
+
+        usuario.setFechaRegistro(user.createdTimestamp() != null
+                ? Instant.ofEpochMilli(user.createdTimestamp()).atOffset(ZoneOffset.UTC)
+                : OffsetDateTime.now());
+        usuario.setStatus(user.isEmailVerificado() ? UsuarioStatus.ACTIVE : UsuarioStatus.PENDING);
+        return usuario;
+    }
+
+    /**
+     * Copia los datos de Keycloak sobre la entidad; devuelve true si algo cambió
+     */
+    private boolean aplicar(Usuario local, KeycloakUser user, String rol, OffsetDateTime ahora) {
+        String username = user.username();
+        String email = user.email();
+        String razonSocial = user.razonSocial();
+
+        boolean igual = local.getSincronizadoEn() != null
+                && local.isEnKeycloak()
+                && Objects.equals(local.getUsername(), username)
+                && Objects.equals(local.getEmail(), email)
+                && Objects.equals(local.getRazonSocial(), razonSocial)
+                && Objects.equals(local.getRol(), rol);
+        if (igual) {
+            return false;
+        }
+
+        local.setUsername(username);
+        local.setEmail(email);
+        local.setRazonSocial(razonSocial);
+        local.setRol(rol);
+        local.setEnKeycloak(true);
+        local.setSincronizadoEn(ahora);
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.paper.entity.EmailOutbox;
+import org.paper.entity.EmailOutboxEstado;
+import org.paper.entity.EmailTipo;
+import org.paper.repository.EmailOutboxRepository;
+import org.paper.security.JwtUtil;
+import org.paper.services.EmailOutboxDispatcher;
+import org.paper.services.EmailService;
+import org.springframework.mail.MailSendException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Ciclo del outbox con el repositorio y el EmailService de mentira:
+ * reserva del lote, reintento con backoff, dead-letter y descarte de links vencidos.
+ */
+class EmailOutboxDispatcherTest {
+
+    private static final String SECRETO = "secreto-de-prueba-de-al-menos-32-bytes!!";
+    private static final int MAX_INTENTOS = 3;
+    private static final long BACKOFF_BASE_MS = 30000;
+    private static final long RESERVA_MS = 300000;
+
+    private final EmailOutboxRepository repository = mock(EmailOutboxRepository.class);
+    private final EmailService emailService = mock(EmailService.class);
+    private final JwtUtil jwtUtil = new JwtUtil(SECRETO, 86400000);
+    // Próximo intento de cada email al momento de guardar la reserva
+    private final List<OffsetDateTime> reservados = new ArrayList<>();
+
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<EmailOutbox> lote = invocation.getArgument(0);
+            lote.forEach(email -> reservados.add(email.getProximoIntento()));
+            return lote;
+        });
+        dispatcher = new EmailOutboxDispatcher(repository, emailService, jwtUtil,
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+                2, 20, MAX_INTENTOS, BACKOFF_BASE_MS, 3600000, RESERVA_MS, 7);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void envioExitoso_QuedaEnviadoSinToken() {
+        EmailOutbox email = activacion(1L, jwtUtil.generateVerificationToken("id-1", "a@mail.com"), 0);
+
+        EmailOutbox guardado = despacharUno(email);
+
+        verify(emailService).enviarEmailActivacion(eq("a@mail.com"), eq("usuario"), anyString());
+        assertEquals(EmailOutboxEstado.ENVIADO, guardado.getEstado());
+        assertNull(guardado.getToken());
+        assertNotNull(guardado.getEnviadoEn());
+    }
+
+    @Test
+    void reservarLote_CorreElProximoIntentoPorLaReserva() {
+        OffsetDateTime antes = OffsetDateTime.now();
+
+        despachar(activacion(1L, jwtUtil.generateVerificationToken("id-1", "a@mail.com"), 0));
+
+        assertEquals(1, reservados.size());
+        assertFalse(reservados.get(0).isBefore(antes.plus(Duration.ofMillis(RESERVA_MS))));
+    }
+
+    @Test
+    void envioFallido_SiguePendienteConBackoffExponencial() {
+        falla();
+        OffsetDateTime antes = OffsetDateTime.now();
+
+        List<EmailOutbox> guardados = despachar(
+                activacion(1L, jwtUtil.generateVerificationToken("id-1", "a@mail.com"), 0),
+                activacion(2L, jwtUtil.generateVerificationToken("id-2", "b@mail.com"), 1));
+        EmailOutbox primero = guardados.get(0);
+        EmailOutbox segundo = guardados.get(1);
+
+        assertEquals(EmailOutboxEstado.PENDIENTE, primero.getEstado());
+        assertEquals(1, primero.getIntentos());
+        assertEquals("SMTP caído", primero.getUltimoError());
+        assertNotNull(primero.getToken());
+        assertEntre(antes.plus(Duration.ofMillis(BACKOFF_BASE_MS)), primero.getProximoIntento());
+
+        // Segundo intento fallido: el doble de espera
+        assertEquals(EmailOutboxEstado.PENDIENTE, segundo.getEstado());
+        assertEquals(2, segundo.getIntentos());
+        assertEntre(antes.plus(Duration.ofMillis(2 * BACKOFF_BASE_MS)), segundo.getProximoIntento());
+    }
+
+    @Test
+    void agotaLosIntentos_QuedaFallido() {
+        falla();
+
+        EmailOutbox guardado = despacharUno(cuentaActivada(MAX_INTENTOS - 1));
+
+        assertEquals(EmailOutboxEstado.FALLIDO, guardado.getEstado());
+        assertEquals(MAX_INTENTOS, guardado.getIntentos());
+    }
+
+    @Test
+    void linkVencido_SeDescartaSinEnviar() {
+        String vencido = new JwtUtil(SECRETO, -1000).generateVerificationToken("id-1", "a@mail.com");
+
+        EmailOutbox guardado = despacharUno(activacion(1L, vencido, 0));
+
+        verifyNoInteractions(emailService);
+        assertEquals(EmailOutboxEstado.FALLIDO, guardado.getEstado());
+        assertNull(guardado.getToken());
+        assertEquals(0, guardado.getIntentos());
+    }
+
+    @Test
+    void linkVenceAntesDelReintento_SeDescarta() {
+        falla();
+        // El link vence en 10 s y el próximo intento sería en 30 s
+        String porVencer = new JwtUtil(SECRETO, 10000).generateVerificationToken("id-1", "a@mail.com");
+
+        EmailOutbox guardado = despacharUno(activacion(1L, porVencer, 0));
+
+        assertEquals(EmailOutboxEstado.FALLIDO, guardado.getEstado());
+        assertNull(guardado.getToken());
+        assertEquals(1, guardado.getIntentos());
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    /**
+     * Corre un ciclo con un lote y devuelve lo que quedó guardado, en el orden del lote
+     */
+    private List<EmailOutbox> despachar(EmailOutbox... lote) {
+        when(repository.reservarPendientes(anyInt())).thenReturn(new ArrayList<>(List.of(lote)));
+
+        dispatcher.despachar();
+
+        ArgumentCaptor<EmailOutbox> guardados = ArgumentCaptor.forClass(EmailOutbox.class);
+        verify(repository, timeout(5000).times(lote.length)).save(guardados.capture());
+        // Los envíos corren en paralelo: se guardan en cualquier orden
+        return guardados.getAllValues().stream()
+                .sorted(Comparator.comparing(EmailOutbox::getId))
+                .collect(Collectors.toList());
+    }
+
+    private EmailOutbox despacharUno(EmailOutbox email) {
+        return despachar(email).get(0);
+    }
+
+    private void falla() {
+        MailSendException error = new MailSendException("SMTP caído");
+        doThrow(error).when(emailService).enviarEmailActivacion(anyString(), anyString(), anyString());
+        doThrow(error).when(emailService).enviarEmailCuentaActivada(anyString(), anyString());
+    }
+
+    private static void assertEntre(OffsetDateTime esperado, OffsetDateTime real) {
+        // Tolerancia por el tiempo que tarda el ciclo
+        assertFalse(real.isBefore(esperado), "Próximo intento " + real + " antes de " + esperado);
+        assertTrue(real.isBefore(esperado.plusSeconds(5)), "Próximo intento " + real + " después de " + esperado);
+    }
+
+    private static EmailOutbox activacion(Long id, String token, int intentos) {
+        return email(id, EmailTipo.ACTIVACION, token, intentos);
+    }
+
+    private static EmailOutbox cuentaActivada(int intentos) {
+        return email(1L, EmailTipo.CUENTA_ACTIVADA, null, intentos);
+    }
+
+    private static EmailOutbox email(Long id, EmailTipo tipo, String token, int intentos) {
+        EmailOutbox email = new EmailOutbox();
+        email.setId(id);
+        email.setTipo(tipo);
+        email.setDestinatario("a@mail.com");
+        email.setUsername("usuario");
+        email.setToken(token);
+        email.setEstado(EmailOutboxEstado.PENDIENTE);
+        email.setIntentos(intentos);
+        email.setProximoIntento(OffsetDateTime.now());
+        email.setCreadoEn(OffsetDateTime.now());
+        return email;
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.paper.clients.KeycloakFanOut;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeycloakFanOutTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void respetaElOrdenYLaConcurrenciaMaxima() {
+        KeycloakFanOut fanOut = new KeycloakFanOut(executor, 2);
+        AtomicInteger enVuelo = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+
+        List<Integer> resultado = fanOut.map(rango(20), i -> {
+            maximo.accumulateAndGet(enVuelo.incrementAndGet(), Math::max);
+            dormir(5);
+            enVuelo.decrementAndGet();
+            return i * 10;
+        });
+
+        assertEquals(rango(20).stream().map(i -> i * 10).collect(Collectors.toList()), resultado);
+        assertTrue(maximo.get() <= 2, "Concurrencia máxima: " + maximo.get());
+    }
+
+    @Test
+    void fanOutAnidadoNoSeTraba() {
+        // Pool y permisos chicos: con el fan-out interno encolado en el mismo pool esto no terminaba
+        KeycloakFanOut fanOut = new KeycloakFanOut(executor, 2);
+
+        List<List<Integer>> resultado = assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                fanOut.map(rango(4), i -> fanOut.map(rango(3), j -> {
+                    dormir(5);
+                    return i * 10 + j;
+                })));
+
+        assertEquals(List.of(0, 1, 2), resultado.get(0));
+        assertEquals(List.of(30, 31, 32), resultado.get(3));
+    }
+
+    private static List<Integer> rango(int n) {
+        return IntStream.range(0, n).boxed().collect(Collectors.toList());
+    }
+
+    private static void dormir(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
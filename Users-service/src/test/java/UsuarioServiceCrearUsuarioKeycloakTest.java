@@ -0,0 +1,253 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.paper.clients.KeycloakClient;
+import org.paper.clients.KeycloakFanOut;
+import org.paper.clients.KeycloakRoleCache;
+import org.paper.clients.keycloak.KeycloakJson;
+import org.paper.dto.ImportacionUsuariosResponseDTO;
+import org.paper.dto.UsuarioCreateDTO;
+import org.paper.exception.UsuarioYaExisteException;
+import org.paper.repository.UsuarioRepository;
+import org.paper.services.EmailVerificationService;
+import org.paper.services.KeycloakAdminService;
+import org.paper.services.UsuarioImportService;
+import org.paper.services.UsuarioService;
+import org.paper.services.UsuarioSyncService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Alta de usuario contra un Keycloak de mentira (un HttpServer local que imita la Admin API):
+ * cuenta las llamadas que hace cada alta (individual o importación masiva) a través del KeycloakClient real.
+ */
+class UsuarioServiceCrearUsuarioKeycloakTest {
+
+    private static final String REALM = "test";
+    private static final String TOKEN = "admin-token";
+
+    private HttpServer keycloak;
+    private final List<String> llamadas = new CopyOnWriteArrayList<>();
+    private final Set<String> usernames = ConcurrentHashMap.newKeySet();
+    private final Map<String, UUID> idsDeRoles = new ConcurrentHashMap<>();
+    private volatile boolean enviarLocation = true;
+
+    private UsuarioService usuarioService;
+    private UsuarioImportService usuarioImportService;
+    private EmailVerificationService emailVerificationService;
+    private ExecutorService keycloakExecutor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        keycloak = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        keycloak.createContext("/admin/realms/" + REALM, this::responder);
+        keycloak.start();
+
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://127.0.0.1:" + keycloak.getAddress().getPort())
+                .exchangeStrategies(KeycloakJson.exchangeStrategies())
+                .build();
+        KeycloakAdminService keycloakAdminService = mock(KeycloakAdminService.class);
+        when(keycloakAdminService.getAdminToken()).thenReturn(TOKEN);
+        KeycloakClient keycloakClient = new KeycloakClient(webClient, REALM, 500);
+        KeycloakRoleCache keycloakRoleCache = new KeycloakRoleCache(keycloakClient, keycloakAdminService, 30000, 10000);
+        emailVerificationService = mock(EmailVerificationService.class);
+
+        usuarioService = new UsuarioService(keycloakAdminService, mock(UsuarioRepository.class),
+                emailVerificationService, keycloakClient, mock(KeycloakFanOut.class),
+                keycloakRoleCache, mock(UsuarioSyncService.class), new ObjectMapper(),
+                mock(PlatformTransactionManager.class), 16);
+
+        keycloakExecutor = Executors.newFixedThreadPool(4);
+        usuarioImportService = new UsuarioImportService(keycloakAdminService, keycloakClient,
+                new KeycloakFanOut(keycloakExecutor, 4), keycloakRoleCache, mock(UsuarioRepository.class),
+                mock(UsuarioSyncService.class), emailVerificationService,
+                Validation.buildDefaultValidatorFactory().getValidator(), mock(JdbcTemplate.class),
+                mock(PlatformTransactionManager.class), 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        keycloak.stop(0);
+        keycloakExecutor.shutdownNow();
+    }
+
+    @Test
+    void crearUsuario_UsaLocationSinBuscarPorUsername() {
+        usuarioService.crearUsuario(alta("cliente01"));
+
+        assertEquals(List.of(
+                "POST /users",
+                "GET /roles/CLIENTE",
+                "POST /users/{id}/role-mappings/realm"), llamadas);
+        verify(emailVerificationService).createAndSendActivation(anyString(), eq("cliente01"), eq("cliente01@mail.com"));
+    }
+
+    @Test
+    void crearUsuario_ConRolEnCache_DosLlamadasPorAlta() {
+        usuarioService.crearUsuario(alta("cliente01"));
+        llamadas.clear();
+
+        usuarioService.crearUsuario(alta("cliente02"));
+
+        assertEquals(List.of("POST /users", "POST /users/{id}/role-mappings/realm"), llamadas);
+    }
+
+    @Test
+    void crearUsuario_Duplicado_Usa409DeKeycloak() {
+        usuarioService.crearUsuario(alta("cliente01"));
+        llamadas.clear();
+
+        assertThrows(UsuarioYaExisteException.class, () -> usuarioService.crearUsuario(alta("cliente01")));
+        assertEquals(List.of("POST /users"), llamadas);
+    }
+
+    @Test
+    void crearUsuario_SinLocation_BuscaPorUsername() {
+        enviarLocation = false;
+
+        usuarioService.crearUsuario(alta("cliente01"));
+
+        assertEquals(List.of(
+                "POST /users",
+                "GET /users?username",
+                "GET /roles/CLIENTE",
+                "POST /users/{id}/role-mappings/realm"), llamadas);
+    }
+
+    @Test
+    void crearUsuario_RolRecreadoEnKeycloak_ReleeElCatalogoYReintenta() {
+        usuarioService.crearUsuario(alta("cliente01"));
+        // Se borra y se vuelve a crear el rol desde la consola: cambia su id
+        idsDeRoles.put("CLIENTE", UUID.randomUUID());
+        llamadas.clear();
+
+        usuarioService.crearUsuario(alta("cliente02"));
+        assertEquals(List.of(
+                "POST /users",
+                "POST /users/{id}/role-mappings/realm 404",
+                "GET /roles/CLIENTE",
+                "POST /users/{id}/role-mappings/realm"), llamadas);
+
+        // El catálogo quedó con el id nuevo
+        llamadas.clear();
+        usuarioService.crearUsuario(alta("cliente03"));
+        assertEquals(List.of("POST /users", "POST /users/{id}/role-mappings/realm"), llamadas);
+    }
+
+    @Test
+    void importar_RolRecreadoEnKeycloak_ReintentaSinRevertirLasAltas() {
+        usuarioService.crearUsuario(alta("cliente00"));
+        idsDeRoles.put("CLIENTE", UUID.randomUUID());
+        llamadas.clear();
+
+        List<UsuarioCreateDTO> filas = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            filas.add(alta("cliente0" + i));
+        }
+        ImportacionUsuariosResponseDTO resultado = usuarioImportService.importar(filas);
+
+        assertEquals(8, resultado.getCreados());
+        assertTrue(llamadas.stream().noneMatch(llamada -> llamada.startsWith("DELETE")), llamadas.toString());
+        // Cada fila reintenta a lo sumo una vez
+        assertTrue(llamadas.stream().filter(llamada -> llamada.endsWith(" 404")).count() <= 8, llamadas.toString());
+
+        // El catálogo quedó con el id nuevo: la siguiente importación no falla ninguna asignación
+        llamadas.clear();
+        usuarioImportService.importar(List.of(alta("cliente09")));
+        assertEquals(List.of("POST /users", "POST /users/{id}/role-mappings/realm"), llamadas);
+    }
+
+    // ==================== KEYCLOAK DE MENTIRA ====================
+
+    private void responder(HttpExchange exchange) throws IOException {
+        String metodo = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath().substring(("/admin/realms/" + REALM).length());
+        String query = exchange.getRequestURI().getQuery();
+        String cuerpo = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+        if (metodo.equals("POST") && path.equals("/users")) {
+            llamadas.add("POST /users");
+            String username = new ObjectMapper().readTree(cuerpo).get("username").asText();
+            if (!usernames.add(username)) {
+                enviar(exchange, 409, "{\"errorMessage\":\"User exists with same username\"}");
+                return;
+            }
+            if (enviarLocation) {
+                exchange.getResponseHeaders().add("Location",
+                        "http://keycloak/admin/realms/" + REALM + "/users/" + idDe(username));
+            }
+            enviar(exchange, 201, null);
+        } else if (metodo.equals("GET") && path.equals("/users") && query != null && query.contains("username=")) {
+            llamadas.add("GET /users?username");
+            String username = query.replaceAll(".*username=([^&]*).*", "$1");
+            enviar(exchange, 200, "[{\"id\":\"" + idDe(username) + "\",\"username\":\"" + username + "\"}]");
+        } else if (metodo.equals("GET") && path.startsWith("/roles/")) {
+            llamadas.add("GET " + path);
+            String nombre = path.substring("/roles/".length());
+            UUID id = idsDeRoles.computeIfAbsent(nombre, k -> UUID.randomUUID());
+            enviar(exchange, 200, "{\"id\":\"" + id + "\",\"name\":\"" + nombre + "\"}");
+        } else if (path.matches("/users/[^/]+/role-mappings/realm")) {
+            // Como Keycloak: un rol con un id que ya no existe es un 404
+            for (JsonNode rol : new ObjectMapper().readTree(cuerpo)) {
+                if (!rol.get("id").asText().equals(String.valueOf(idsDeRoles.get(rol.get("name").asText())))) {
+                    llamadas.add(metodo + " /users/{id}/role-mappings/realm 404");
+                    enviar(exchange, 404, "{\"error\":\"Role not found\"}");
+                    return;
+                }
+            }
+            llamadas.add(metodo + " /users/{id}/role-mappings/realm");
+            enviar(exchange, 204, null);
+        } else {
+            llamadas.add(metodo + " " + path);
+            enviar(exchange, 404, null);
+        }
+    }
+
+    private static void enviar(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+
+    private static UUID idDe(String username) {
+        return UUID.nameUUIDFromBytes(username.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static UsuarioCreateDTO alta(String username) {
+        return UsuarioCreateDTO.builder()
+                .username(username)
+                .email(username + "@mail.com")
+                .razonSocial("Razón " + username)
+                .rol("CLIENTE")
+                .build();
+    }
+}
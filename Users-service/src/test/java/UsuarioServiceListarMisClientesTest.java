@@ -0,0 +1,134 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.paper.clients.KeycloakClient;
+import org.paper.clients.KeycloakFanOut;
+import org.paper.clients.KeycloakRoleCache;
+import org.paper.clients.keycloak.KeycloakRole;
+import org.paper.clients.keycloak.KeycloakUser;
+import org.paper.dto.UsuarioResponseDTO;
+import org.paper.repository.UsuarioRepository;
+import org.paper.services.EmailVerificationService;
+import org.paper.services.KeycloakAdminService;
+import org.paper.services.UsuarioService;
+import org.paper.services.UsuarioSyncService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UsuarioServiceListarMisClientesTest {
+
+    private static final int CLIENTES = 500;
+    private static final int MAX_CONCURRENCY = 16;
+    private static final String TOKEN = "admin-token";
+
+    @Mock
+    private KeycloakAdminService keycloakAdminService;
+
+    @Mock
+    private UsuarioRepository usuarioRepository;
+
+    @Mock
+    private KeycloakClient keycloakClient;
+
+    @Mock
+    private KeycloakRoleCache keycloakRoleCache;
+
+    private UsuarioService usuarioService;
+    private UUID disenadorId;
+    private List<UUID> clientes;
+    private final AtomicInteger enVuelo = new AtomicInteger();
+    private final AtomicInteger maximoEnVuelo = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        usuarioService = new UsuarioService(keycloakAdminService, usuarioRepository,
+                mock(EmailVerificationService.class), keycloakClient, mock(KeycloakFanOut.class),
+                keycloakRoleCache, mock(UsuarioSyncService.class), new ObjectMapper(),
+                mock(PlatformTransactionManager.class), MAX_CONCURRENCY);
+
+        disenadorId = UUID.randomUUID();
+        clientes = new ArrayList<>();
+        for (int i = 0; i < CLIENTES; i++) {
+            clientes.add(UUID.randomUUID());
+        }
+
+        when(keycloakAdminService.getAdminToken()).thenReturn(TOKEN);
+        when(usuarioRepository.findClienteIdsByDisenadorId(disenadorId)).thenReturn(clientes);
+        lenient().when(keycloakRoleCache.rolesDeUsuarioAsync(anyString(), eq(TOKEN)))
+                .thenAnswer(inv -> conLatencia(Mono.just(List.of(new KeycloakRole(null, "CLIENTE", null, false, false, null)))));
+    }
+
+    @Test
+    void listarMisClientes_500Clientes_RespetaOrdenYConcurrencia() {
+        when(keycloakClient.obtenerUsuarioPorIdAsync(anyString(), eq(TOKEN)))
+                .thenAnswer(inv -> conLatencia(Mono.just(usuario(inv.getArgument(0)))));
+
+        List<UsuarioResponseDTO> resultado = usuarioService.listarMisClientes(disenadorId.toString());
+
+        assertEquals(CLIENTES, resultado.size());
+        assertEquals(clientes.stream().map(UUID::toString).collect(Collectors.toList()),
+                resultado.stream().map(UsuarioResponseDTO::getId).collect(Collectors.toList()));
+        assertTrue(resultado.stream().allMatch(u -> u.getRoles().equals(List.of("CLIENTE"))));
+        assertTrue(maximoEnVuelo.get() <= MAX_CONCURRENCY, "En vuelo: " + maximoEnVuelo.get());
+    }
+
+    @Test
+    void listarMisClientes_ClienteBorradoEnKeycloak_SeOmite() {
+        String borrado = clientes.get(10).toString();
+        String borradoEntreLlamadas = clientes.get(20).toString();
+
+        when(keycloakClient.obtenerUsuarioPorIdAsync(anyString(), eq(TOKEN)))
+                .thenAnswer(inv -> borrado.equals(inv.getArgument(0))
+                        ? Mono.empty()
+                        : conLatencia(Mono.just(usuario(inv.getArgument(0)))));
+        when(keycloakRoleCache.rolesDeUsuarioAsync(eq(borradoEntreLlamadas), eq(TOKEN)))
+                .thenReturn(Mono.error(WebClientResponseException.create(404, "Not Found", HttpHeaders.EMPTY, new byte[0], null)));
+
+        List<UsuarioResponseDTO> resultado = usuarioService.listarMisClientes(disenadorId.toString());
+
+        assertEquals(CLIENTES - 2, resultado.size());
+        assertTrue(resultado.stream().noneMatch(u -> u.getId().equals(borrado) || u.getId().equals(borradoEntreLlamadas)));
+        verify(keycloakRoleCache, never()).rolesDeUsuarioAsync(eq(borrado), any());
+    }
+
+    @Test
+    void listarMisClientes_SinClientes_NoLlamaAKeycloak() {
+        when(usuarioRepository.findClienteIdsByDisenadorId(disenadorId)).thenReturn(List.of());
+
+        assertTrue(usuarioService.listarMisClientes(disenadorId.toString()).isEmpty());
+        verifyNoInteractions(keycloakClient);
+    }
+
+    // Simula la latencia de Keycloak y cuenta cuántas llamadas están en curso a la vez
+    private <T> Mono<T> conLatencia(Mono<T> respuesta) {
+        return Mono.delay(Duration.ofMillis(2))
+                .doOnSubscribe(s -> maximoEnVuelo.accumulateAndGet(enVuelo.incrementAndGet(), Math::max))
+                .then(respuesta)
+                // Antes de emitir: la llamada siguiente del mismo cliente no se cuenta como simultánea
+                .doOnSuccess(v -> enVuelo.decrementAndGet())
+                .doOnError(e -> enVuelo.decrementAndGet());
+    }
+
+    private static KeycloakUser usuario(String id) {
+        return new KeycloakUser(id, "user-" + id, id + "@mail.com", true, true, null, null, null);
+    }
+}
@@ -0,0 +1,90 @@
+package org.paper.clients;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.paper.config.KeycloakExecutorConfig;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Listado que trae el detalle de N usuarios de Keycloak: una llamada bloqueante por usuario
+ * (simulada con la latencia de un round-trip) de a una contra KeycloakFanOut.
+ * virtual=true usa virtual threads solo con un JRE 21+; con Java 17 cae al pool de threads.
+ *
+ * Correr con: mvn test-compile y luego el main de esta clase con el classpath de test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class KeycloakFanOutBenchmark {
+
+    @Param({"20", "100"})
+    public int usuarios;
+
+    @Param({"5"})
+    public long latenciaMs;
+
+    @Param({"false", "true"})
+    public boolean virtual;
+
+    private ExecutorService executor;
+    private KeycloakFanOut fanOut;
+    private List<Integer> ids;
+
+    @Setup
+    public void setUp() {
+        executor = new KeycloakExecutorConfig().keycloakExecutor(virtual, 16);
+        fanOut = new KeycloakFanOut(executor, 16);
+        ids = IntStream.range(0, usuarios).boxed().collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public List<Integer> secuencial() {
+        return ids.stream().map(this::llamada).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Integer> fanOut() {
+        return fanOut.map(ids, this::llamada);
+    }
+
+    private Integer llamada(Integer id) {
+        try {
+            Thread.sleep(latenciaMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return id;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(KeycloakFanOutBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
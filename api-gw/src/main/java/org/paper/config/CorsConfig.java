@@ -40,7 +40,8 @@ public class CorsConfig {
         // Headers expuestos al cliente
         corsConfig.setExposedHeaders(Arrays.asList(
                 "Authorization",
-                "X-Correlation-Id"
+                "X-Correlation-Id",
+                "X-Total-Count"
         ));
 
         // Tiempo de caché de la respuesta preflight (en segundos)
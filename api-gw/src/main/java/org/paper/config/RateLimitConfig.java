@@ -19,9 +19,34 @@ public class RateLimitConfig {
     // Límites personalizados por ruta
     private Map<String, RouteLimit> routes = new HashMap<>();
 
+    // Dónde viven los buckets: local (por instancia), redis (compartidos entre réplicas)
+    // o memory-cas (el camino distribuido contra un mapa en memoria, para pruebas sin Redis)
+    private String store = "local";
+
+    private Redis redis = new Redis();
+
+    private Local local = new Local();
+
     @Data
     public static class RouteLimit {
         private long capacity;
         private long refillTokens;
     }
-}
\ No newline at end of file
+
+    @Data
+    public static class Redis {
+        private String uri = "redis://localhost:6379";
+        // Si Redis no responde en este tiempo el request pasa (se prioriza la disponibilidad)
+        private long timeoutMs = 200;
+    }
+
+    @Data
+    public static class Local {
+        // Un bucket sin uso durante este tiempo se descarta (ya se habría rellenado entero)
+        private long idleTtlMs = 600000;
+        // Resolución de la rueda de expiración: un bucket vencido vive a lo sumo esto de más
+        private long tickMs = 10000;
+        // Tope de buckets en memoria (~300 bytes cada uno); al llegar se descartan los más viejos
+        private int maxEntries = 100000;
+    }
+}
@@ -0,0 +1,62 @@
+package org.paper.config;
+
+import io.github.bucket4j.distributed.ExpirationAfterWriteStrategy;
+import io.github.bucket4j.redis.lettuce.cas.LettuceBasedProxyManager;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.paper.ratelimit.BucketStore;
+import org.paper.ratelimit.DistributedBucketStore;
+import org.paper.ratelimit.InMemoryCasProxyManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Almacenes de buckets distribuidos (el local es un @Component, ver LocalBucketStore).
+ *
+ * - redis: estado en Redis con compare-and-swap (Lettuce asíncrono, no bloquea el event loop)
+ * - memory-cas: el mismo camino contra un mapa en memoria, para pruebas sin Redis
+ */
+@Slf4j
+@Configuration
+public class RateLimitStoreConfig {
+
+    // Un bucket sin uso se borra de Redis cuando ya se habría rellenado entero, más este margen
+    private static final Duration MARGEN_EXPIRACION = Duration.ofSeconds(10);
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "redis")
+    public RedisClient rateLimitRedisClient(RateLimitConfig config) {
+        return RedisClient.create(config.getRedis().getUri());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "redis")
+    public StatefulRedisConnection<byte[], byte[]> rateLimitRedisConnection(RedisClient rateLimitRedisClient) {
+        return rateLimitRedisClient.connect(ByteArrayCodec.INSTANCE);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "redis")
+    public BucketStore redisBucketStore(StatefulRedisConnection<byte[], byte[]> rateLimitRedisConnection,
+                                        RateLimitConfig config) {
+        LettuceBasedProxyManager proxyManager = LettuceBasedProxyManager.builderFor(rateLimitRedisConnection)
+                .withExpirationStrategy(ExpirationAfterWriteStrategy.basedOnTimeForRefillingBucketUpToMax(MARGEN_EXPIRACION))
+                .build();
+        log.info("🚦 Rate limiting distribuido en Redis: {}", config.getRedis().getUri());
+        return new DistributedBucketStore("redis", proxyManager.asAsync(),
+                Duration.ofMillis(config.getRedis().getTimeoutMs()));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "memory-cas")
+    public BucketStore memoryCasBucketStore(RateLimitConfig config) {
+        log.warn("⚠️ Rate limiting con el almacén memory-cas (sustituto de Redis): solo para pruebas");
+        return new DistributedBucketStore("memory-cas", new InMemoryCasProxyManager().asAsync(),
+                Duration.ofMillis(config.getRedis().getTimeoutMs()));
+    }
+}
@@ -26,6 +26,8 @@ public class SecurityConfig {
                     config.setAllowedMethods(List.of("*"));
                     config.setAllowedHeaders(List.of("*"));
                     config.setAllowCredentials(true);
+                    // Total de los listados paginados
+                    config.setExposedHeaders(List.of("X-Correlation-Id", "X-Total-Count"));
                     return config;
                 }))
                 .authorizeExchange(exchanges -> exchanges
@@ -43,7 +45,9 @@ public class SecurityConfig {
                                 "/api/tipos-bolsa/**",
                                 "/api/plantillas/**",
                                 "/api/disenos/**",
-                                "/api/ia/*"
+                                "/api/ia/*",
+                                "/api/ia/jobs/**",
+                                "/api/ia/batches/**"
                         ).permitAll()
                         .anyExchange().authenticated()
                 )
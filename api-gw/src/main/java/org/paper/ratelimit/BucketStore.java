@@ -0,0 +1,27 @@
+package org.paper.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Almacén de buckets del rate limiting.
+ * Permite cambiar los buckets por instancia (LocalBucketStore) por buckets compartidos
+ * entre réplicas del gateway (DistributedBucketStore) sin tocar RateLimitFilter.
+ *
+ * Se elige con app.rate-limit.store (ver RateLimitStoreConfig).
+ */
+public interface BucketStore {
+
+    /**
+     * Consume un token del bucket del cliente para la regla; si el bucket no existe se crea
+     * con la configuración de la regla. Hay un bucket por (cliente, patrón de la regla):
+     * /api/disenos/123 y /api/disenos/124 comparten el de "/api/disenos/**"
+     *
+     * @return true si el request está dentro del límite
+     */
+    Mono<Boolean> tryConsume(String clientId, RouteLimitRule rule);
+
+    /**
+     * Nombre legible del almacén (para logs)
+     */
+    String getName();
+}
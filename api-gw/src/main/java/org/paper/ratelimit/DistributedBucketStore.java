@@ -0,0 +1,52 @@
+package org.paper.ratelimit;
+
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.proxy.AsyncProxyManager;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Buckets compartidos entre réplicas del gateway: el estado de cada bucket vive en un almacén
+ * externo y Bucket4j lo actualiza con compare-and-swap (leer estado, consumir, escribir solo si
+ * nadie lo cambió en el medio; si no, reintentar). Así dos réplicas no duplican el límite.
+ *
+ * No guarda nada en memoria: el proxy de cada request es un objeto liviano sobre la clave.
+ * Si el almacén falla o tarda más que el timeout, el request pasa (fail-open) para que una
+ * caída de Redis no tire abajo el gateway.
+ */
+@Slf4j
+public class DistributedBucketStore implements BucketStore {
+
+    private final String name;
+    private final AsyncProxyManager<byte[]> proxyManager;
+    private final Duration timeout;
+
+    public DistributedBucketStore(String name, AsyncProxyManager<byte[]> proxyManager, Duration timeout) {
+        this.name = name;
+        this.proxyManager = proxyManager;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public Mono<Boolean> tryConsume(String clientId, RouteLimitRule rule) {
+        byte[] remoteKey = (clientId + ":" + rule.pattern()).getBytes(StandardCharsets.UTF_8);
+        CompletableFuture<BucketConfiguration> configuration = CompletableFuture.completedFuture(rule.configuration());
+        return Mono.fromFuture(() -> proxyManager.builder()
+                        .build(remoteKey, () -> configuration)
+                        .tryConsume(1))
+                .timeout(timeout)
+                .onErrorResume(e -> {
+                    log.warn("⚠️ Rate limit {} no disponible para {}, se deja pasar el request: {}", name, clientId, e.toString());
+                    return Mono.just(true);
+                });
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
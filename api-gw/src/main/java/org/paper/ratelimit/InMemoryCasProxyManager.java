@@ -0,0 +1,90 @@
+package org.paper.ratelimit;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sustituto en memoria de Redis para el camino distribuido (app.rate-limit.store=memory-cas).
+ * Ejecuta exactamente lo mismo que LettuceBasedProxyManager (estado serializado y
+ * compare-and-swap con reintentos) contra un ConcurrentMap, así la corrección y el throughput
+ * del modo distribuido se pueden probar sin levantar Redis.
+ *
+ * No expira entradas: es solo para pruebas, no para producción.
+ */
+public class InMemoryCasProxyManager extends AbstractCompareAndSwapBasedProxyManager<byte[]> {
+
+    // byte[] no sirve como clave de mapa (equals por identidad): se envuelve en ByteBuffer
+    private final ConcurrentMap<ByteBuffer, byte[]> estados = new ConcurrentHashMap<>();
+
+    public InMemoryCasProxyManager() {
+        super(ClientSideConfig.getDefault());
+    }
+
+    @Override
+    protected CompareAndSwapOperation beginCompareAndSwapOperation(byte[] key) {
+        ByteBuffer clave = ByteBuffer.wrap(key);
+        return new CompareAndSwapOperation() {
+            @Override
+            public Optional<byte[]> getStateData() {
+                return Optional.ofNullable(estados.get(clave));
+            }
+
+            @Override
+            public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                return swap(clave, originalData, newData);
+            }
+        };
+    }
+
+    @Override
+    protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(byte[] key) {
+        CompareAndSwapOperation operacion = beginCompareAndSwapOperation(key);
+        return new AsyncCompareAndSwapOperation() {
+            @Override
+            public CompletableFuture<Optional<byte[]>> getStateData() {
+                return CompletableFuture.completedFuture(operacion.getStateData());
+            }
+
+            @Override
+            public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                return CompletableFuture.completedFuture(operacion.compareAndSwap(originalData, newData, newState));
+            }
+        };
+    }
+
+    @Override
+    public void removeProxy(byte[] key) {
+        estados.remove(ByteBuffer.wrap(key));
+    }
+
+    @Override
+    protected CompletableFuture<Void> removeAsync(byte[] key) {
+        removeProxy(key);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    /**
+     * Cada escritura guarda un array nuevo, así que comparar por identidad con el array leído
+     * equivale a comparar la versión del estado (igual que el GET + SET condicional de Redis)
+     */
+    private boolean swap(ByteBuffer clave, byte[] originalData, byte[] newData) {
+        if (originalData == null) {
+            return estados.putIfAbsent(clave, newData) == null;
+        }
+        return estados.replace(clave, originalData, newData);
+    }
+}
@@ -0,0 +1,235 @@
+package org.paper.ratelimit;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.local.LocalBucketBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.paper.config.RateLimitConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Buckets en memoria de esta instancia. Con varias réplicas del gateway cada una
+ * lleva su propia cuenta (el límite efectivo se multiplica): usar app.rate-limit.store=redis.
+ *
+ * Expiración con una rueda de tiempo (hashed timing wheel):
+ * - Cada bucket se anota en la ranura del tick en que vencería; usarlo solo actualiza su último uso
+ * - En cada tick se revisa únicamente la ranura que venció: lo que no se usó se descarta y lo que
+ *   se usó se vuelve a anotar según su nuevo vencimiento. Costo O(1) por bucket, sin recorrer el mapa
+ * - Tope de tamaño (app.rate-limit.local.max-entries): al llegar se descartan primero los más
+ *   cercanos a vencer, con una segunda oportunidad para los que se usaron desde que se anotaron
+ *
+ * Métricas: gateway.ratelimit.buckets (vivos) y gateway.ratelimit.buckets.evicted (cause=expired|capacity).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "local", matchIfMissing = true)
+public class LocalBucketStore implements BucketStore {
+
+    private static final Mono<Boolean> PERMITIDO = Mono.just(true);
+    private static final Mono<Boolean> RECHAZADO = Mono.just(false);
+    // Entradas que puede revisar un alta con el cache lleno (acota la latencia de ese request)
+    private static final int MAX_REVISADAS_POR_ALTA = 256;
+
+    private final long ttlMs;
+    private final long tickMs;
+    private final int maxEntries;
+    // Al desalojar por tamaño se deja este margen para no hacerlo en cada alta
+    private final int margen;
+
+    private final Map<Clave, Entrada> cache = new ConcurrentHashMap<>();
+    private final List<Queue<Entrada>> rueda;
+    // Último tick procesado por avanzarRueda
+    private volatile long tickProcesado;
+
+    private final Counter vencidos;
+    private final Counter desalojados;
+
+    public LocalBucketStore(RateLimitConfig config, MeterRegistry meterRegistry) {
+        RateLimitConfig.Local local = config.getLocal();
+        this.ttlMs = local.getIdleTtlMs();
+        this.tickMs = local.getTickMs();
+        this.maxEntries = local.getMaxEntries();
+        this.margen = Math.max(1, maxEntries / 100);
+
+        // Una vuelta de la rueda tiene que cubrir más que el TTL para que dos vencimientos no caigan en la misma ranura
+        int ranuras = (int) (ttlMs / tickMs) + 2;
+        this.rueda = new ArrayList<>(ranuras);
+        for (int i = 0; i < ranuras; i++) {
+            rueda.add(new ConcurrentLinkedQueue<>());
+        }
+        this.tickProcesado = System.currentTimeMillis() / tickMs - 1;
+
+        Gauge.builder("gateway.ratelimit.buckets", cache, Map::size)
+                .register(meterRegistry);
+        this.vencidos = Counter.builder("gateway.ratelimit.buckets.evicted")
+                .tag("cause", "expired")
+                .register(meterRegistry);
+        this.desalojados = Counter.builder("gateway.ratelimit.buckets.evicted")
+                .tag("cause", "capacity")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Boolean> tryConsume(String clientId, RouteLimitRule rule) {
+        long ahora = System.currentTimeMillis();
+        Clave clave = new Clave(clientId, rule.pattern());
+
+        Entrada entrada = cache.get(clave);
+        if (entrada == null) {
+            if (cache.size() >= maxEntries) {
+                liberarEspacio();
+            }
+            entrada = cache.computeIfAbsent(clave, k -> {
+                Entrada nueva = new Entrada(k, crearBucket(rule.configuration()), ahora);
+                programar(nueva);
+                return nueva;
+            });
+        } else {
+            entrada.ultimoUso = ahora;
+        }
+
+        return entrada.bucket.tryConsume(1) ? PERMITIDO : RECHAZADO;
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    /**
+     * Procesa las ranuras de los ticks que ya pasaron
+     * (Solo se ejecuta si @EnableScheduling está habilitado en ApiGateWay)
+     */
+    @Scheduled(fixedRateString = "${app.rate-limit.local.tick-ms:10000}")
+    public void avanzarRueda() {
+        long ahora = System.currentTimeMillis();
+        long hasta = ahora / tickMs - 1;
+        // Tras una pausa larga alcanza con una vuelta: el vencimiento se decide por hora, no por ranura
+        long desde = Math.max(tickProcesado + 1, hasta - rueda.size() + 1);
+
+        int removidos = 0;
+        for (long tick = desde; tick <= hasta; tick++) {
+            removidos += procesarRanura(tick, ahora);
+        }
+        tickProcesado = Math.max(tickProcesado, hasta);
+
+        if (removidos > 0) {
+            vencidos.increment(removidos);
+            log.info("Cache limpiado: {} buckets removidos. Buckets activos: {}", removidos, cache.size());
+        }
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private int procesarRanura(long tick, long ahora) {
+        // Se vacía primero: lo que se reprograma no puede volver a la misma cola mientras se recorre
+        Queue<Entrada> ranura = rueda.get((int) (tick % rueda.size()));
+        List<Entrada> pendientes = new ArrayList<>();
+        Entrada entrada;
+        while ((entrada = ranura.poll()) != null) {
+            pendientes.add(entrada);
+        }
+
+        int removidos = 0;
+        for (Entrada pendiente : pendientes) {
+            if (cache.get(pendiente.clave) != pendiente) {
+                continue; // ya desalojada (por tamaño) o reemplazada
+            }
+            if (pendiente.ultimoUso + ttlMs <= ahora) {
+                if (cache.remove(pendiente.clave, pendiente)) {
+                    removidos++;
+                }
+            } else {
+                programar(pendiente);
+            }
+        }
+        return removidos;
+    }
+
+    /**
+     * Desaloja empezando por las ranuras más próximas a vencer hasta dejar un margen bajo el tope.
+     * Cada alta que encuentra el cache lleno libera su propio lugar (las colas y el remove del mapa
+     * son concurrentes): si solo liberara un thread a la vez, las altas de los demás pasarían el tope
+     * sin límite durante un barrido de IPs. El tope se puede pasar a lo sumo por una entrada por thread
+     */
+    private void liberarEspacio() {
+        int objetivo = maxEntries - margen;
+        int revisadas = 0;
+        long tick = tickProcesado + 1;
+        for (int vuelta = 0; vuelta < rueda.size() && revisadas < MAX_REVISADAS_POR_ALTA && cache.size() > objetivo; vuelta++) {
+            Queue<Entrada> ranura = rueda.get((int) ((tick + vuelta) % rueda.size()));
+            Entrada entrada;
+            while (revisadas < MAX_REVISADAS_POR_ALTA && cache.size() > objetivo && (entrada = ranura.poll()) != null) {
+                revisadas++;
+                if (cache.get(entrada.clave) != entrada) {
+                    continue;
+                }
+                // Segunda oportunidad (solo en la primera mitad): si se usó desde que se anotó, se reprograma
+                boolean usada = vencimiento(entrada) > entrada.tickProgramado;
+                if (usada && revisadas < MAX_REVISADAS_POR_ALTA / 2) {
+                    programar(entrada);
+                } else if (cache.remove(entrada.clave, entrada)) {
+                    desalojados.increment();
+                }
+            }
+        }
+        if (cache.size() >= maxEntries) {
+            log.warn("⚠️ Cache de rate limiting lleno ({} buckets, tope {})", cache.size(), maxEntries);
+        }
+    }
+
+    private void programar(Entrada entrada) {
+        long tick = vencimiento(entrada);
+        entrada.tickProgramado = tick;
+        rueda.get((int) (tick % rueda.size())).offer(entrada);
+    }
+
+    private long vencimiento(Entrada entrada) {
+        return (entrada.ultimoUso + ttlMs) / tickMs;
+    }
+
+    private static Bucket crearBucket(BucketConfiguration configuration) {
+        LocalBucketBuilder builder = Bucket.builder();
+        for (Bandwidth bandwidth : configuration.getBandwidths()) {
+            builder.addLimit(bandwidth);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Clave del bucket: sin concatenar strings por request (el hash del patrón ya está cacheado)
+     */
+    private record Clave(String clientId, String pattern) {
+    }
+
+    /**
+     * Bucket con su último uso (escrito desde varios event loops: volatile)
+     * y el tick de la ranura en la que está anotado
+     */
+    private static final class Entrada {
+        final Clave clave;
+        final Bucket bucket;
+        volatile long ultimoUso;
+        volatile long tickProgramado;
+
+        Entrada(Clave clave, Bucket bucket, long ultimoUso) {
+            this.clave = clave;
+            this.bucket = bucket;
+            this.ultimoUso = ultimoUso;
+        }
+    }
+}
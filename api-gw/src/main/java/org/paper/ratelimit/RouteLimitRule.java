@@ -0,0 +1,10 @@
+package org.paper.ratelimit;
+
+import io.github.bucket4j.BucketConfiguration;
+
+/**
+ * Límite de una ruta ya compilado: el patrón con el que se configuró (también es parte de la
+ * clave del bucket) y la configuración de Bucket4j, armada una sola vez al arrancar.
+ */
+public record RouteLimitRule(String pattern, long capacity, BucketConfiguration configuration) {
+}
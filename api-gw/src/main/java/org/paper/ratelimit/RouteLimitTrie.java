@@ -0,0 +1,165 @@
+package org.paper.ratelimit;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import lombok.extern.slf4j.Slf4j;
+import org.paper.config.RateLimitConfig;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Límites de app.rate-limit.routes compilados en un trie por segmento de path al arrancar.
+ *
+ * - "/api/logos" aplica solo a ese path; "/api/logos/**" a ese path y todo lo que cuelga de él
+ * - Gana el patrón más específico: el exacto, y si no el "/**" más largo
+ * - Sin coincidencia se usa el límite por defecto, con un bucket por servicio: los dos primeros
+ *   segmentos del path (patrón "default:/api/logos"). Solo se conocen los prefijos que aparecen en
+ *   app.rate-limit.routes; cualquier otro path comparte el bucket "default" del cliente
+ *
+ * La resolución recorre el path comparando regiones del String: no crea substrings ni objetos por request.
+ */
+@Slf4j
+@Component
+public class RouteLimitTrie {
+
+    public static final String DEFAULT_PATTERN = "default";
+
+    private static final String WILDCARD = "**";
+    // Segmentos que identifican al servicio (/api/<recurso>)
+    private static final int SEGMENTOS_SERVICIO = 2;
+
+    private final Nodo raiz = new Nodo("");
+    private final RouteLimitRule defaultRule;
+    private final long defaultCapacity;
+    private final long defaultRefillTokens;
+
+    public RouteLimitTrie(RateLimitConfig config) {
+        this.defaultCapacity = config.getDefaultCapacity();
+        this.defaultRefillTokens = config.getDefaultRefillTokens();
+        this.defaultRule = regla(DEFAULT_PATTERN, defaultCapacity, defaultRefillTokens);
+        for (Map.Entry<String, RateLimitConfig.RouteLimit> entry : config.getRoutes().entrySet()) {
+            RateLimitConfig.RouteLimit limit = entry.getValue();
+            agregar(regla(entry.getKey(), limit.getCapacity(), limit.getRefillTokens()));
+        }
+        log.info("🚦 {} límites de rate limiting por ruta compilados", config.getRoutes().size());
+    }
+
+    /**
+     * Regla que corresponde al path (nunca null)
+     */
+    public RouteLimitRule resolve(String path) {
+        Nodo nodo = raiz;
+        RouteLimitRule comodin = nodo.comodin;
+        RouteLimitRule servicio = null;
+        int profundidad = 0;
+        int inicio = 0;
+        int largo = path.length();
+
+        while (nodo != null) {
+            // Saltear las barras (vacías, dobles o finales)
+            while (inicio < largo && path.charAt(inicio) == '/') {
+                inicio++;
+            }
+            if (inicio == largo) {
+                if (nodo.exacta != null) {
+                    return nodo.exacta;
+                }
+                break;
+            }
+            int fin = path.indexOf('/', inicio);
+            if (fin < 0) {
+                fin = largo;
+            }
+
+            nodo = nodo.hijo(path, inicio, fin - inicio);
+            profundidad++;
+            if (nodo != null) {
+                if (nodo.comodin != null) {
+                    comodin = nodo.comodin;
+                }
+                if (profundidad == SEGMENTOS_SERVICIO) {
+                    servicio = nodo.porDefecto;
+                }
+            }
+            inicio = fin;
+        }
+        if (comodin != null) {
+            return comodin;
+        }
+        return servicio != null ? servicio : defaultRule;
+    }
+
+    // ==================== MÉTODOS PRIVADOS ====================
+
+    private void agregar(RouteLimitRule regla) {
+        Nodo nodo = raiz;
+        String[] segmentos = Arrays.stream(regla.pattern().split("/"))
+                .filter(segmento -> !segmento.isEmpty())
+                .toArray(String[]::new);
+
+        for (int i = 0; i < segmentos.length; i++) {
+            String segmento = segmentos[i];
+            if (WILDCARD.equals(segmento)) {
+                if (i != segmentos.length - 1) {
+                    throw new IllegalArgumentException("Rate limit: '**' solo puede ir al final del patrón: " + regla.pattern());
+                }
+                nodo.comodin = regla;
+                return;
+            }
+            nodo = nodo.hijoOCrear(segmento);
+            if (i == SEGMENTOS_SERVICIO - 1 && nodo.porDefecto == null) {
+                nodo.porDefecto = regla(DEFAULT_PATTERN + ":/" + segmentos[0] + "/" + segmento,
+                        defaultCapacity, defaultRefillTokens);
+            }
+        }
+        nodo.exacta = regla;
+    }
+
+    private static RouteLimitRule regla(String pattern, long capacity, long refillTokens) {
+        BucketConfiguration configuration = BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(capacity, Refill.intervally(refillTokens, Duration.ofSeconds(1))))
+                .build();
+        return new RouteLimitRule(pattern, capacity, configuration);
+    }
+
+    /**
+     * Pocos hijos por nodo (un puñado de recursos por servicio): un array recorrido
+     * linealmente es más barato que un HashMap y no obliga a cortar el segmento
+     */
+    private static final class Nodo {
+        final String segmento;
+        Nodo[] hijos = new Nodo[0];
+        RouteLimitRule exacta;
+        RouteLimitRule comodin;
+        // Límite por defecto del servicio (solo en los nodos del segundo nivel)
+        RouteLimitRule porDefecto;
+
+        Nodo(String segmento) {
+            this.segmento = segmento;
+        }
+
+        Nodo hijo(String path, int inicio, int largo) {
+            for (Nodo hijo : hijos) {
+                if (hijo.segmento.length() == largo && path.regionMatches(inicio, hijo.segmento, 0, largo)) {
+                    return hijo;
+                }
+            }
+            return null;
+        }
+
+        Nodo hijoOCrear(String segmento) {
+            Nodo existente = hijo(segmento, 0, segmento.length());
+            if (existente != null) {
+                return existente;
+            }
+            Nodo nuevo = new Nodo(segmento);
+            hijos = Arrays.copyOf(hijos, hijos.length + 1);
+            hijos[hijos.length - 1] = nuevo;
+            return nuevo;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.paper.config.RateLimitConfig;
+import org.paper.config.RateLimitStoreConfig;
+import org.paper.ratelimit.BucketStore;
+import org.paper.ratelimit.DistributedBucketStore;
+import org.paper.ratelimit.InMemoryCasProxyManager;
+import org.paper.ratelimit.RouteLimitRule;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dos réplicas del gateway (dos DistributedBucketStore) contra el mismo almacén, consumiendo
+ * en paralelo del mismo bucket: entre las dos no pueden dejar pasar más que la capacidad.
+ *
+ * El caso de Redis corre solo con RATE_LIMIT_REDIS_URI definida (ej. redis://localhost:6379).
+ */
+class DistributedBucketStoreTest {
+
+    private static final int CAPACIDAD = 20;
+    private static final int REQUESTS = 400;
+
+    private final RouteLimitRule regla = new RouteLimitRule("/api/test", CAPACIDAD, BucketConfiguration.builder()
+            .addLimit(Bandwidth.classic(CAPACIDAD, Refill.intervally(CAPACIDAD, Duration.ofHours(1))))
+            .build());
+
+    @Test
+    void memoryCas_DosReplicasNoSuperanLaCapacidad() throws Exception {
+        InMemoryCasProxyManager almacen = new InMemoryCasProxyManager();
+        BucketStore replica1 = new DistributedBucketStore("memory-cas", almacen.asAsync(), Duration.ofSeconds(5));
+        BucketStore replica2 = new DistributedBucketStore("memory-cas", almacen.asAsync(), Duration.ofSeconds(5));
+
+        assertEquals(CAPACIDAD, consumirEnParalelo(replica1, replica2, "10.0.0.1"));
+        // Otro cliente tiene su propio bucket
+        assertEquals(CAPACIDAD, consumirEnParalelo(replica1, replica2, "10.0.0.2"));
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "RATE_LIMIT_REDIS_URI", matches = ".+")
+    void redis_DosReplicasNoSuperanLaCapacidad() throws Exception {
+        RateLimitConfig config = new RateLimitConfig();
+        config.getRedis().setUri(System.getenv("RATE_LIMIT_REDIS_URI"));
+        config.getRedis().setTimeoutMs(2000);
+        RateLimitStoreConfig storeConfig = new RateLimitStoreConfig();
+
+        RedisClient client = storeConfig.rateLimitRedisClient(config);
+        try (StatefulRedisConnection<byte[], byte[]> conexion1 = client.connect(ByteArrayCodec.INSTANCE);
+             StatefulRedisConnection<byte[], byte[]> conexion2 = client.connect(ByteArrayCodec.INSTANCE)) {
+            BucketStore replica1 = storeConfig.redisBucketStore(conexion1, config);
+            BucketStore replica2 = storeConfig.redisBucketStore(conexion2, config);
+
+            // Cliente único por corrida: el bucket de una corrida anterior puede seguir en Redis
+            assertEquals(CAPACIDAD, consumirEnParalelo(replica1, replica2, "test-" + UUID.randomUUID()));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private int consumirEnParalelo(BucketStore replica1, BucketStore replica2, String clientId) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Callable<Boolean>> tareas = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                BucketStore replica = i % 2 == 0 ? replica1 : replica2;
+                tareas.add(() -> replica.tryConsume(clientId, regla).block());
+            }
+            int permitidos = 0;
+            for (Future<Boolean> resultado : executor.invokeAll(tareas)) {
+                if (resultado.get()) {
+                    permitidos++;
+                }
+            }
+            return permitidos;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.paper.config.RateLimitConfig;
+import org.paper.ratelimit.LocalBucketStore;
+import org.paper.ratelimit.RouteLimitRule;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalBucketStoreTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RouteLimitRule regla = new RouteLimitRule("/api/test", 20, BucketConfiguration.builder()
+            .addLimit(Bandwidth.classic(20, Refill.intervally(10, Duration.ofSeconds(1))))
+            .build());
+
+    @Test
+    void barridoDeIps_ElCacheNoPasaDelTope() throws Exception {
+        LocalBucketStore store = new LocalBucketStore(config(600000, 10000, 1000), meterRegistry);
+
+        // 200.000 IPs distintas desde 8 threads (un escaneo): el tope se pasa a lo sumo por una entrada por thread
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Double>> maximos = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int desde = t * 25000;
+            maximos.add(executor.submit(() -> {
+                double maximo = 0;
+                for (int i = desde; i < desde + 25000; i++) {
+                    store.tryConsume("10." + (i >> 16) + "." + ((i >> 8) & 255) + "." + (i & 255), regla).block();
+                    maximo = Math.max(maximo, buckets());
+                }
+                return maximo;
+            }));
+        }
+        executor.shutdown();
+        for (Future<Double> maximo : maximos) {
+            assertTrue(maximo.get(60, TimeUnit.SECONDS) <= 1000 + 8, "Máximo de buckets: " + maximo.get());
+        }
+
+        assertTrue(buckets() <= 1000);
+        assertTrue(desalojados("capacity") >= 200000 - 1000 - 8);
+    }
+
+    @Test
+    void bucketsSinUso_SeVencenEnElTick() throws Exception {
+        LocalBucketStore store = new LocalBucketStore(config(300, 100, 100000), meterRegistry);
+        for (int i = 0; i < 500; i++) {
+            store.tryConsume("cliente-" + i, regla).block();
+        }
+        assertEquals(500, buckets());
+
+        // El cliente 0 se sigue usando: su bucket sobrevive
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(100);
+            store.tryConsume("cliente-0", regla).block();
+            store.avanzarRueda();
+        }
+
+        assertEquals(1, buckets());
+        assertEquals(499, desalojados("expired"));
+    }
+
+    private double buckets() {
+        return meterRegistry.get("gateway.ratelimit.buckets").gauge().value();
+    }
+
+    private double desalojados(String causa) {
+        return meterRegistry.get("gateway.ratelimit.buckets.evicted").tag("cause", causa).counter().count();
+    }
+
+    private static RateLimitConfig config(long ttlMs, long tickMs, int maxEntries) {
+        RateLimitConfig config = new RateLimitConfig();
+        config.getLocal().setIdleTtlMs(ttlMs);
+        config.getLocal().setTickMs(tickMs);
+        config.getLocal().setMaxEntries(maxEntries);
+        return config;
+    }
+}
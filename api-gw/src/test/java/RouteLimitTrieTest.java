@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.paper.config.RateLimitConfig;
+import org.paper.ratelimit.RouteLimitRule;
+import org.paper.ratelimit.RouteLimitTrie;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteLimitTrieTest {
+
+    private RouteLimitTrie trie;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitConfig config = new RateLimitConfig();
+        config.setDefaultCapacity(20);
+        config.setDefaultRefillTokens(10);
+        config.getRoutes().put("/api/logos", limite(15));
+        config.getRoutes().put("/api/logos/usuario/**", limite(30));
+        config.getRoutes().put("/api/ia/jobs", limite(10));
+        config.getRoutes().put("/api/ia/**", limite(40));
+        config.getRoutes().put("/api/usuarios/create", limite(5));
+        trie = new RouteLimitTrie(config);
+    }
+
+    @Test
+    void exactoGanaAlComodin() {
+        assertEquals("/api/ia/jobs", trie.resolve("/api/ia/jobs").pattern());
+        assertEquals("/api/ia/**", trie.resolve("/api/ia/jobs/abc").pattern());
+        assertEquals("/api/logos", trie.resolve("/api/logos/").pattern());
+    }
+
+    @Test
+    void comodinMasLargo() {
+        RouteLimitRule regla = trie.resolve("/api/logos/usuario/123");
+
+        assertEquals("/api/logos/usuario/**", regla.pattern());
+        assertEquals(30, regla.capacity());
+    }
+
+    @Test
+    void sinReglaUsaElDefaultDeSuServicio() {
+        RouteLimitRule logo = trie.resolve("/api/logos/42");
+        RouteLimitRule otroLogo = trie.resolve("/api/logos/43/archivo");
+        RouteLimitRule usuario = trie.resolve("/api/usuarios/list");
+
+        assertEquals("default:/api/logos", logo.pattern());
+        assertSame(logo, otroLogo);
+        assertEquals("default:/api/usuarios", usuario.pattern());
+        assertEquals(20, usuario.capacity());
+    }
+
+    @Test
+    void servicioDesconocidoUsaElDefaultCompartido() {
+        assertEquals(RouteLimitTrie.DEFAULT_PATTERN, trie.resolve("/api/desconocido/1").pattern());
+        assertEquals(RouteLimitTrie.DEFAULT_PATTERN, trie.resolve("/").pattern());
+        assertEquals(RouteLimitTrie.DEFAULT_PATTERN, trie.resolve("/api/logosX").pattern());
+    }
+
+    private static RateLimitConfig.RouteLimit limite(long capacity) {
+        RateLimitConfig.RouteLimit limit = new RateLimitConfig.RouteLimit();
+        limit.setCapacity(capacity);
+        limit.setRefillTokens(capacity / 2);
+        return limit;
+    }
+}
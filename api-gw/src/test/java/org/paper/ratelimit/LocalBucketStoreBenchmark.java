@@ -0,0 +1,78 @@
+package org.paper.ratelimit;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.paper.config.RateLimitConfig;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LocalBucketStore bajo carga con el cache lleno (tope de 10.000 buckets), desde 8 threads:
+ * - clienteConocido: el camino normal, un cliente que ya tiene bucket
+ * - clienteNuevo: un barrido de IPs, cada request es un alta que tiene que desalojar
+ *
+ * Correr con: mvn test-compile y luego el main de esta clase con el classpath de test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class LocalBucketStoreBenchmark {
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private final RouteLimitRule regla = new RouteLimitRule("/api/test", 1000000, BucketConfiguration.builder()
+            .addLimit(Bandwidth.classic(1000000, Refill.greedy(1000000, Duration.ofSeconds(1))))
+            .build());
+    private final AtomicLong siguienteIp = new AtomicLong();
+
+    private LocalBucketStore store;
+
+    @Setup
+    public void setUp() {
+        RateLimitConfig config = new RateLimitConfig();
+        config.getLocal().setMaxEntries(MAX_ENTRIES);
+        store = new LocalBucketStore(config, new SimpleMeterRegistry());
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            store.tryConsume("cliente-" + i, regla).block();
+        }
+    }
+
+    @Benchmark
+    public Boolean clienteConocido() {
+        return store.tryConsume("cliente-" + ThreadLocalRandom.current().nextInt(100), regla).block();
+    }
+
+    @Benchmark
+    public Boolean clienteNuevo() {
+        return store.tryConsume("ip-" + siguienteIp.incrementAndGet(), regla).block();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LocalBucketStoreBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,91 @@
+package org.paper.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.paper.config.RateLimitConfig;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolución del límite de un path: RouteLimitTrie contra el recorrido lineal de
+ * app.rate-limit.routes que hacía RateLimitFilter antes (primer patrón que coincide).
+ * Usa las rutas reales de application.properties.
+ *
+ * Correr con: mvn test-compile y luego el main de esta clase con el classpath de test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteLimitTrieBenchmark {
+
+    @Param({
+            "/api/usuarios/create",
+            "/api/disenos/usuario/3f2a9c4e-1b7d-4e2a-9c1f-0a1b2c3d4e5f",
+            "/api/ia/jobs/8d3e0b7a-5c1f-4a2e-b9d8-1e2f3a4b5c6d/events",
+            "/api/logos/42",
+            "/api/desconocido/x/y"
+    })
+    public String path;
+
+    private RateLimitConfig config;
+    private RouteLimitTrie trie;
+
+    @Setup
+    public void setUp() throws IOException {
+        Binder binder = new Binder(new MapConfigurationPropertySource(
+                PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"))));
+        config = binder.bind("app.rate-limit", RateLimitConfig.class).get();
+        trie = new RouteLimitTrie(config);
+    }
+
+    @Benchmark
+    public RouteLimitRule trie() {
+        return trie.resolve(path);
+    }
+
+    @Benchmark
+    public RateLimitConfig.RouteLimit recorridoLineal() {
+        for (Map.Entry<String, RateLimitConfig.RouteLimit> entry : config.getRoutes().entrySet()) {
+            if (pathMatches(path, entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    // Igual que el RateLimitFilter anterior
+    private static boolean pathMatches(String path, String pattern) {
+        if (pattern.endsWith("/**")) {
+            String prefix = pattern.substring(0, pattern.length() - 3);
+            return path.startsWith(prefix);
+        }
+        return path.equals(pattern);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RouteLimitTrieBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -5,12 +5,19 @@
 -- TABLA: usuarios
 -- ============================================
 -- Tabla que sincroniza con Keycloak
--- Solo almacena el UUID, estado y metadata de sincronización
+-- Además del UUID, estado y metadata de sincronización, guarda una copia de lectura
+-- de los datos de Keycloak para listar y buscar usuarios sin consultar la Admin API
 CREATE TABLE IF NOT EXISTS usuarios (
     id UUID PRIMARY KEY,
     fecha_registro TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
     status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
     disenador_id UUID,
+    username VARCHAR(255),
+    email VARCHAR(255),
+    razon_social VARCHAR(255),
+    rol VARCHAR(20),
+    en_keycloak BOOLEAN NOT NULL DEFAULT TRUE,
+    sincronizado_en TIMESTAMP WITH TIME ZONE,
     
     CONSTRAINT chk_usuarios_status CHECK (status IN ('PENDING', 'ACTIVE', 'FAILED')),
     
@@ -20,10 +27,23 @@ CREATE TABLE IF NOT EXISTS usuarios (
         ON DELETE SET NULL
 );
 
+-- Bases creadas antes de la copia de lectura: CREATE TABLE IF NOT EXISTS no agrega columnas
+ALTER TABLE usuarios ADD COLUMN IF NOT EXISTS username VARCHAR(255);
+ALTER TABLE usuarios ADD COLUMN IF NOT EXISTS email VARCHAR(255);
+ALTER TABLE usuarios ADD COLUMN IF NOT EXISTS razon_social VARCHAR(255);
+ALTER TABLE usuarios ADD COLUMN IF NOT EXISTS rol VARCHAR(20);
+ALTER TABLE usuarios ADD COLUMN IF NOT EXISTS en_keycloak BOOLEAN NOT NULL DEFAULT TRUE;
+ALTER TABLE usuarios ADD COLUMN IF NOT EXISTS sincronizado_en TIMESTAMP WITH TIME ZONE;
+
 -- Índices para mejorar performance
 CREATE INDEX IF NOT EXISTS idx_usuarios_status ON usuarios(status);
 CREATE INDEX IF NOT EXISTS idx_usuarios_fecha_registro ON usuarios(fecha_registro);
 CREATE INDEX IF NOT EXISTS idx_usuarios_disenador ON usuarios(disenador_id);
+CREATE INDEX IF NOT EXISTS idx_usuarios_rol ON usuarios(rol) WHERE en_keycloak;
+-- Búsqueda por prefijo sin distinguir mayúsculas (LIKE 'abc%' sobre lower(...))
+CREATE INDEX IF NOT EXISTS idx_usuarios_username_lower ON usuarios(lower(username) text_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_usuarios_email_lower ON usuarios(lower(email) text_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_usuarios_razon_social_lower ON usuarios(lower(razon_social) text_pattern_ops);
 -- ============================================
 -- TABLA: materiales
 -- ============================================
@@ -164,6 +184,80 @@ CREATE TABLE IF NOT EXISTS usuario_plantilla (
 CREATE INDEX IF NOT EXISTS idx_usuario_plantilla_usuario_id ON usuario_plantilla(usuario_id);
 CREATE INDEX IF NOT EXISTS idx_usuario_plantilla_plantilla_id ON usuario_plantilla(plantilla_id);
 
+-- ============================================
+-- TABLA: disenos_vistas
+-- ============================================
+-- Vistas 3D adicionales de un diseño (otros ángulos de cámara generados por IA).
+-- La vista estándar (3/4) sigue guardándose en disenos.base64_preview
+CREATE TABLE IF NOT EXISTS disenos_vistas (
+    id SERIAL PRIMARY KEY,
+    diseno_id INTEGER NOT NULL,
+    variante VARCHAR(20) NOT NULL,
+    base64_imagen TEXT NOT NULL,
+    prompt_version VARCHAR(100),
+    fecha_creacion TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+
+    CONSTRAINT fk_disenos_vistas_diseno
+        FOREIGN KEY (diseno_id)
+        REFERENCES disenos(id)
+        ON DELETE CASCADE,
+
+    CONSTRAINT uq_disenos_vistas_diseno_variante
+        UNIQUE (diseno_id, variante),
+
+    CONSTRAINT chk_disenos_vistas_variante
+        CHECK (variante IN ('FRONTAL', 'LATERAL', 'SUPERIOR'))
+);
+
+-- ============================================
+-- TABLA: ia_uso
+-- ============================================
+-- Registro append-only de cada llamada al modelo de IA (para costos y cuotas).
+-- Sin FK: el historial de gasto se conserva aunque se borre el diseño o el usuario
+CREATE TABLE IF NOT EXISTS ia_uso (
+    id BIGSERIAL PRIMARY KEY,
+    usuario_id UUID NOT NULL,
+    diseno_id INTEGER NOT NULL,
+    variante VARCHAR(20) NOT NULL,
+    proveedor VARCHAR(100) NOT NULL,
+    prompt_version VARCHAR(100),
+    input_tokens INTEGER NOT NULL DEFAULT 0,
+    output_tokens INTEGER NOT NULL DEFAULT 0,
+    input_bytes INTEGER NOT NULL DEFAULT 0,
+    output_bytes INTEGER NOT NULL DEFAULT 0,
+    latencia_ms BIGINT NOT NULL DEFAULT 0,
+    costo_usd NUMERIC(12, 6) NOT NULL DEFAULT 0,
+    exito BOOLEAN NOT NULL,
+    fecha TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_ia_uso_usuario_fecha ON ia_uso(usuario_id, fecha);
+CREATE INDEX IF NOT EXISTS idx_ia_uso_fecha ON ia_uso(fecha);
+
+-- ============================================
+-- TABLA: ia_uso_diario
+-- ============================================
+-- Totales por usuario y día, recalculados periódicamente desde ia_uso
+CREATE TABLE IF NOT EXISTS ia_uso_diario (
+    id BIGSERIAL PRIMARY KEY,
+    usuario_id UUID NOT NULL,
+    dia DATE NOT NULL,
+    llamadas BIGINT NOT NULL DEFAULT 0,
+    fallidas BIGINT NOT NULL DEFAULT 0,
+    input_tokens BIGINT NOT NULL DEFAULT 0,
+    output_tokens BIGINT NOT NULL DEFAULT 0,
+    input_bytes BIGINT NOT NULL DEFAULT 0,
+    output_bytes BIGINT NOT NULL DEFAULT 0,
+    latencia_total_ms BIGINT NOT NULL DEFAULT 0,
+    costo_usd NUMERIC(14, 6) NOT NULL DEFAULT 0,
+    actualizado TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+
+    CONSTRAINT uq_ia_uso_diario_usuario_dia
+        UNIQUE (usuario_id, dia)
+);
+
+CREATE INDEX IF NOT EXISTS idx_ia_uso_diario_dia ON ia_uso_diario(dia);
+
 -- ============================================
 -- DATOS INICIALES (Catálogos)
 -- ============================================
@@ -189,6 +283,44 @@ VALUES
     ('Envoltorio Rectangular')
 ON CONFLICT (nombre) DO NOTHING;
 
+-- ============================================
+-- TABLA: email_outbox
+-- ============================================
+-- Emails pendientes de envío, insertados en la misma transacción que los origina
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    tipo VARCHAR(40) NOT NULL,
+    destinatario VARCHAR(255) NOT NULL,
+    username VARCHAR(255) NOT NULL,
+    token TEXT,
+    estado VARCHAR(20) NOT NULL DEFAULT 'PENDIENTE',
+    intentos INTEGER NOT NULL DEFAULT 0,
+    proximo_intento TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    ultimo_error TEXT,
+    creado_en TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    enviado_en TIMESTAMP WITH TIME ZONE,
+
+    CONSTRAINT chk_email_outbox_estado CHECK (estado IN ('PENDIENTE', 'ENVIADO', 'FALLIDO'))
+);
+
+-- El dispatcher solo recorre los pendientes
+CREATE INDEX IF NOT EXISTS idx_email_outbox_pendientes ON email_outbox(proximo_intento) WHERE estado = 'PENDIENTE';
+CREATE INDEX IF NOT EXISTS idx_email_outbox_estado ON email_outbox(estado);
+
+-- ============================================
+-- TABLA: tokens_usados
+-- ============================================
+-- Tokens de un solo uso (activación, recuperación) ya consumidos, por jti
+CREATE TABLE IF NOT EXISTS tokens_usados (
+    jti VARCHAR(36) PRIMARY KEY,
+    tipo VARCHAR(40) NOT NULL,
+    usado_en TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    -- Pasada esta fecha el token ya no valida por sí solo: la fila se puede borrar
+    expira_en TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_tokens_usados_expira ON tokens_usados(expira_en);
+
 -- ============================================
 -- INFORMACIÓN DE LA BASE DE DATOS
 -- ============================================
@@ -205,13 +337,46 @@ ON CONFLICT (version) DO UPDATE SET
     applied_at = EXCLUDED.applied_at,
     description = EXCLUDED.description;
 
+INSERT INTO schema_version (version, description)
+VALUES (3, 'Tabla disenos_vistas para vistas 3D en otros ángulos de cámara')
+ON CONFLICT (version) DO UPDATE SET
+    applied_at = EXCLUDED.applied_at,
+    description = EXCLUDED.description;
+
+INSERT INTO schema_version (version, description)
+VALUES (4, 'Tablas ia_uso e ia_uso_diario para contabilidad de tokens y costo de IA')
+ON CONFLICT (version) DO UPDATE SET
+    applied_at = EXCLUDED.applied_at,
+    description = EXCLUDED.description;
+
+INSERT INTO schema_version (version, description)
+VALUES (5, 'Copia de lectura de Keycloak en usuarios: username, email, razon_social y rol')
+ON CONFLICT (version) DO UPDATE SET
+    applied_at = EXCLUDED.applied_at,
+    description = EXCLUDED.description;
+
+INSERT INTO schema_version (version, description)
+VALUES (6, 'Tabla email_outbox para el envío asíncrono de emails')
+ON CONFLICT (version) DO UPDATE SET
+    applied_at = EXCLUDED.applied_at,
+    description = EXCLUDED.description;
+
+INSERT INTO schema_version (version, description)
+VALUES (7, 'Tabla tokens_usados: tokens de activación y recuperación de un solo uso')
+ON CONFLICT (version) DO UPDATE SET
+    applied_at = EXCLUDED.applied_at,
+    description = EXCLUDED.description;
+
 -- ============================================
 -- COMENTARIOS EN LAS TABLAS (Documentación)
 -- ============================================
 
-COMMENT ON TABLE usuarios IS 'Tabla que sincroniza con Keycloak. Solo almacena UUID, estado y metadata.';
+COMMENT ON TABLE usuarios IS 'Tabla que sincroniza con Keycloak. Almacena UUID, estado, metadata y una copia de lectura de los datos de Keycloak.';
 COMMENT ON COLUMN usuarios.id IS 'UUID del usuario en Keycloak';
 COMMENT ON COLUMN usuarios.status IS 'Estado del usuario: PENDING (creado pero no verificado), ACTIVE (verificado y activo), FAILED (fallo en sincronización)';
+COMMENT ON COLUMN usuarios.rol IS 'Rol de la aplicación en Keycloak (ADMIN, CLIENTE, DISEÑADOR); copia actualizada por Users-service';
+COMMENT ON COLUMN usuarios.en_keycloak IS 'FALSE si el usuario ya no existe en Keycloak (borrado desde la consola); no se lista';
+COMMENT ON COLUMN usuarios.sincronizado_en IS 'Última vez que la copia de Keycloak se actualizó (alta, cambio de rol o reconciliación)';
 
 COMMENT ON TABLE materiales IS 'Catálogo de materiales disponibles para bolsas';
 COMMENT ON TABLE tipos_bolsa IS 'Catálogo de tipos de bolsa disponibles';
@@ -219,6 +384,13 @@ COMMENT ON TABLE plantillas IS 'Plantillas base para crear diseños de bolsas';
 COMMENT ON TABLE logos IS 'Logos personalizados subidos por los usuarios';
 COMMENT ON TABLE disenos IS 'Diseños creados por usuarios basados en plantillas';
 COMMENT ON TABLE usuario_plantilla IS 'Relación ManyToMany entre usuarios y plantillas habilitadas';
+COMMENT ON TABLE ia_uso IS 'Registro append-only de llamadas al modelo de IA: tokens, bytes, latencia y costo estimado';
+COMMENT ON TABLE ia_uso_diario IS 'Consumo de IA por usuario y día, consolidado periódicamente desde ia_uso';
+COMMENT ON TABLE email_outbox IS 'Outbox transaccional de emails: PENDIENTE, ENVIADO o FALLIDO (reintentos agotados)';
+COMMENT ON TABLE tokens_usados IS 'jti de los tokens de activación y recuperación ya usados (evita reutilizar un link)';
+COMMENT ON TABLE disenos_vistas IS 'Vistas 3D generadas por IA en ángulos distintos al estándar (3/4)';
+
+COMMENT ON COLUMN disenos_vistas.prompt_version IS 'Versión de la plantilla de prompt usada: <versión>/<plantilla>@<hash>';
 
 COMMENT ON COLUMN disenos.estado IS 'Estado del diseño: PROGRESO (en edición), TERMINADO (finalizado y listo)';
 COMMENT ON COLUMN plantillas.base64_plantilla IS 'JSON con la imagen de la plantilla en formato base64';